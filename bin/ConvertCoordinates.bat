@@ -1,3 +1,17 @@
 @rem $Id: ConvertCoordinates.bat 244 2006-01-16 21:33:22Z jsmith $
 
+@rem
+@rem Runs from the jar, with its class-data sharing archive, if they have
+@rem been built (ant cds); otherwise, from the classes in the parent
+@rem directory.
+@rem
+
+set LIB=%~dp0..\dist\lib
+if not exist "%LIB%\ConvertCoordinates.jar" goto classes
+set CDS=
+if exist "%LIB%\ConvertCoordinates-gui.jsa" set CDS=-XX:SharedArchiveFile="%LIB%\ConvertCoordinates-gui.jsa"
+java %CDS% -classpath "%LIB%\ConvertCoordinates.jar" geo.JConvertCoordinates
+goto end
+:classes
 java -classpath .. geo.JConvertCoordinates
+:end
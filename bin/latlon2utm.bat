@@ -3,5 +3,17 @@
 @rem
 @rem java geo.CoordinateUtil -latlon 32.28305 -106.80035
 @rem
+@rem Runs from the jar, with its class-data sharing archive, if they have
+@rem been built (ant cds); otherwise, from the classes in the parent
+@rem directory.
+@rem
 
+set LIB=%~dp0..\dist\lib
+if not exist "%LIB%\ConvertCoordinates.jar" goto classes
+set CDS=
+if exist "%LIB%\ConvertCoordinates-cli.jsa" set CDS=-XX:SharedArchiveFile="%LIB%\ConvertCoordinates-cli.jsa"
+java %CDS% -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -classpath "%LIB%\ConvertCoordinates.jar" geo.CoordinateUtil -latlon %1 %2
+goto end
+:classes
 java -classpath .. geo.CoordinateUtil -latlon %1 %2
+:end
@@ -3,5 +3,18 @@
 #
 # java geo.CoordinateUtil -latlon 32.28305 -106.80035
 #
+# Runs from the jar, with its class-data sharing archive, if they have
+# been built (ant cds); otherwise, from the classes in the parent directory.
+#
 
-java -classpath .. geo.CoordinateUtil -latlon $1 $2
+LIB=`dirname "$0"`/../dist/lib
+if [ -f "$LIB/ConvertCoordinates.jar" ]; then
+  CDS=
+  if [ -f "$LIB/ConvertCoordinates-cli.jsa" ]; then
+    CDS=-XX:SharedArchiveFile=$LIB/ConvertCoordinates-cli.jsa
+  fi
+  java $CDS -XX:TieredStopAtLevel=1 -XX:+UseSerialGC \
+    -classpath "$LIB/ConvertCoordinates.jar" geo.CoordinateUtil -latlon $1 $2
+else
+  java -classpath .. geo.CoordinateUtil -latlon $1 $2
+fi
@@ -0,0 +1,55 @@
+# $Id: startup-bench.sh $
+
+#
+# Measures the startup of the one-shot CLI, i.e., the time to the first
+# (and only) result, as the median of a number of runs (default 21), for
+# the classes directory, the jar, and the jar with its class-data sharing
+# archive.  Build the jar and the archive first:
+#
+# ant cds
+# bin/startup-bench.sh 51
+#
+# The archive is required (-Xshare:on), so that a missing, stale, or
+# unusable archive fails the run instead of being silently ignored.
+#
+
+RUNS=${1:-21}
+BASE=`dirname "$0"`/..
+CLASSES=$BASE/build/classes
+LIB=$BASE/dist/lib
+JAR=$LIB/ConvertCoordinates.jar
+ARCHIVE=$LIB/ConvertCoordinates-cli.jsa
+COMMAND="geo.CoordinateUtil -latlon 32.28305 -106.80035"
+
+for FILE in $CLASSES $JAR $ARCHIVE; do
+  if [ ! -e "$FILE" ]; then
+    echo "Missing $FILE; run ant cds first." >&2
+    exit 1
+  fi
+done
+
+measure() {
+  LABEL=$1
+  shift
+  TIMES=
+  I=0
+  while [ $I -lt $RUNS ]; do
+    START=`date +%s%N`
+    "$@" > /dev/null || exit 1
+    END=`date +%s%N`
+    TIMES="$TIMES `expr \( $END - $START \) / 1000000`"
+    I=`expr $I + 1`
+  done
+  MEDIAN=`echo $TIMES | tr ' ' '\n' | sort -n | \
+    awk '{ t[NR] = $1 } END { print (NR % 2) ? t[(NR + 1) / 2] : \
+      (t[NR / 2] + t[NR / 2 + 1]) / 2 }'`
+  echo "$LABEL $MEDIAN ms"
+}
+
+measure "classes:                  " java -classpath $CLASSES $COMMAND
+measure "jar:                      " java -classpath $JAR $COMMAND
+measure "jar, AppCDS:              " \
+  java -Xshare:on -XX:SharedArchiveFile=$ARCHIVE -classpath $JAR $COMMAND
+measure "jar, AppCDS, C1, SerialGC:" \
+  java -Xshare:on -XX:SharedArchiveFile=$ARCHIVE -XX:TieredStopAtLevel=1 \
+    -XX:+UseSerialGC -classpath $JAR $COMMAND
@@ -3,5 +3,17 @@
 @rem
 @rem java geo.CoordinateUtil -utm 13S 330459 3573233
 @rem
+@rem Runs from the jar, with its class-data sharing archive, if they have
+@rem been built (ant cds); otherwise, from the classes in the parent
+@rem directory.
+@rem
 
+set LIB=%~dp0..\dist\lib
+if not exist "%LIB%\ConvertCoordinates.jar" goto classes
+set CDS=
+if exist "%LIB%\ConvertCoordinates-cli.jsa" set CDS=-XX:SharedArchiveFile="%LIB%\ConvertCoordinates-cli.jsa"
+java %CDS% -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -classpath "%LIB%\ConvertCoordinates.jar" geo.CoordinateUtil -utm %1 %2 %3
+goto end
+:classes
 java -classpath .. geo.CoordinateUtil -utm %1 %2 %3
+:end
@@ -3,5 +3,18 @@
 #
 # java geo.CoordinateUtil -utm 13S 330459 3573233
 #
+# Runs from the jar, with its class-data sharing archive, if they have
+# been built (ant cds); otherwise, from the classes in the parent directory.
+#
 
-java -classpath .. geo.CoordinateUtil -utm $1 $2 $3
+LIB=`dirname "$0"`/../dist/lib
+if [ -f "$LIB/ConvertCoordinates.jar" ]; then
+  CDS=
+  if [ -f "$LIB/ConvertCoordinates-cli.jsa" ]; then
+    CDS=-XX:SharedArchiveFile=$LIB/ConvertCoordinates-cli.jsa
+  fi
+  java $CDS -XX:TieredStopAtLevel=1 -XX:+UseSerialGC \
+    -classpath "$LIB/ConvertCoordinates.jar" geo.CoordinateUtil -utm $1 $2 $3
+else
+  java -classpath .. geo.CoordinateUtil -utm $1 $2 $3
+fi
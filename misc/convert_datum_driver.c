@@ -0,0 +1,129 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include "convert_datum.h"
+
+/*
+ * convert_datum_driver.c
+ *
+ * Batch driver for the reference routines in convert_datum.c, used by
+ * the differential harness (geo.CoordinateDifferential) to compare the
+ * Java conversions with the C original:
+ *
+ *   gcc -O2 -o convert_datum_driver convert_datum_driver.c convert_datum.c -lm
+ *   convert_datum_driver -latlon <datum> <input> <output>
+ *   convert_datum_driver -utm <datum> <input> <output>
+ *
+ * The files are binary, in native byte order.  For -latlon, each input
+ * record is the latitude and longitude (two doubles), and each output
+ * record is the grid zone (four chars, NUL-terminated), easting, and
+ * northing (two doubles).  For -utm, the records are reversed; a UTM
+ * coordinate that cannot be converted yields NaN.  The whole input is read
+ * before the conversions are timed; the elapsed time of the conversions,
+ * in nanoseconds, is written to stdout.
+ */
+
+#define LL_RECORD (2 * sizeof(double))
+#define UTM_RECORD (GRID_ZONE_LENGTH + 2 * sizeof(double))
+
+static char *
+read_file (const char *path, long *size)
+{
+  FILE *file;
+  char *data;
+
+  if ((file = fopen (path, "rb")) == NULL) {
+    perror (path);
+    return(NULL);
+  }
+  fseek (file, 0, SEEK_END);
+  *size = ftell (file);
+  fseek (file, 0, SEEK_SET);
+  data = malloc (*size + 1);
+  if (data == NULL || fread (data, 1, *size, file) != (size_t) *size) {
+    perror (path);
+    fclose (file);
+    return(NULL);
+  }
+  fclose (file);
+  return(data);
+}
+
+static double
+now_nanos (void)
+{
+  struct timespec ts;
+
+  clock_gettime (CLOCK_MONOTONIC, &ts);
+  return(ts.tv_sec * 1e9 + ts.tv_nsec);
+}
+
+int
+main (int argc, char **argv)
+{
+  char *input, *output;
+  long size, count, i;
+  size_t out_size;
+  int datum, forward;
+  double start, elapsed, nan;
+  FILE *file;
+
+  if (argc != 5 ||
+      (strcmp (argv[1], "-latlon") != 0 && strcmp (argv[1], "-utm") != 0)) {
+    fprintf (stderr,
+	     "Usage: %s -latlon|-utm <datum> <input> <output>\n", argv[0]);
+    return(2);
+  }
+  forward = strcmp (argv[1], "-latlon") == 0;
+  datum = atoi (argv[2]);
+  if ((input = read_file (argv[3], &size)) == NULL)
+    return(1);
+
+  count = size / (forward ? LL_RECORD : UTM_RECORD);
+  out_size = count * (forward ? UTM_RECORD : LL_RECORD);
+  output = calloc (out_size + 1, 1);
+  nan = strtod ("NAN", NULL);
+
+  start = now_nanos ();
+  for (i = 0; i < count; i++) {
+    LL ll;
+    UTM utm;
+
+    if (forward) {
+      memcpy (&ll.latitude, input + i * LL_RECORD, sizeof(double));
+      memcpy (&ll.longitude, input + i * LL_RECORD + sizeof(double),
+	      sizeof(double));
+      memset (&utm, 0, sizeof(utm));
+      ll2utm (&ll, &utm, datum);
+      memcpy (output + i * UTM_RECORD, utm.grid_zone, GRID_ZONE_LENGTH);
+      memcpy (output + i * UTM_RECORD + GRID_ZONE_LENGTH, &utm.x,
+	      sizeof(double));
+      memcpy (output + i * UTM_RECORD + GRID_ZONE_LENGTH + sizeof(double),
+	      &utm.y, sizeof(double));
+    } else {
+      memcpy (utm.grid_zone, input + i * UTM_RECORD, GRID_ZONE_LENGTH);
+      memcpy (&utm.x, input + i * UTM_RECORD + GRID_ZONE_LENGTH,
+	      sizeof(double));
+      memcpy (&utm.y, input + i * UTM_RECORD + GRID_ZONE_LENGTH +
+	      sizeof(double), sizeof(double));
+      if (utm2ll (&utm, &ll, datum) != 0)
+	ll.latitude = ll.longitude = nan;
+      memcpy (output + i * LL_RECORD, &ll.latitude, sizeof(double));
+      memcpy (output + i * LL_RECORD + sizeof(double), &ll.longitude,
+	      sizeof(double));
+    }
+  }
+  elapsed = now_nanos () - start;
+
+  if ((file = fopen (argv[4], "wb")) == NULL ||
+      fwrite (output, 1, out_size, file) != out_size) {
+    perror (argv[4]);
+    return(1);
+  }
+  fclose (file);
+  printf ("%.0f\n", elapsed);
+  free (input);
+  free (output);
+  return(0);
+}
@@ -0,0 +1,254 @@
+package geo;
+
+
+/**
+* <p><code>CompactCoordinates</code> provides class-level convenience methods
+* for converting coordinates held in a compact, fixed-point form:
+* latitudes and longitudes as <code>int</code> microdegrees, and eastings
+* and northings as <code>int</code> centimeters.  Together with the packed
+* grid zone, a point takes 20 bytes in place of the 36 bytes of the
+* <code>double</code> columns of {@link CoordinateBatch}, for in-memory
+* point caches and binary files.</p>
+* <p>The conversions themselves are those of <code>CoordinateBatch</code>,
+* in <code>double</code>; the results are rounded to the nearest unit as
+* they are written.  The precision lost is therefore half a unit:  at most
+* 0.5 microdegrees, i.e., 5.6 cm of latitude, or of longitude at the
+* equator, and 0.5 cm of easting or northing; a round trip, from
+* microdegrees to centimeters and back, is within 1 microdegree.  (A
+* <code>float</code> is not precise enough:  at a northing of 10,000 km,
+* its resolution is 1 m.)</p>
+* <p>A value that cannot be represented, e.g., the result of converting an
+* invalid coordinate, is stored as {@link #INVALID}, and an invalid input
+* value yields <code>INVALID</code> results, with a grid zone of -1.</p>
+* @author Jerry Smith
+* @version $Id: CompactCoordinates.java $
+*/
+
+public final class CompactCoordinates {
+  /**
+  * <p>The value of a coordinate that cannot be represented.</p>
+  */
+
+  public static final int INVALID = Integer.MIN_VALUE;
+  /**
+  * <p>The units of a degree:  microdegrees.</p>
+  */
+
+  public static final double MICRODEGREES = 1e6;
+  /**
+  * <p>The units of a meter:  centimeters.</p>
+  */
+
+  public static final double CENTIMETERS = 100.0;
+  //
+  // The conversions are done a block at a time, through scratch columns
+  // that stay in cache.
+  //
+  private static final int BLOCK = 256;
+
+
+  private CompactCoordinates() {
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to compact UTM
+  * coordinates.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings, in centimeters (modified).
+  * @param northings The northings, in centimeters (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTM(double[] latitudes, double[] longitudes,
+      int[] gridZones, int[] eastings, int[] northings, int offset,
+      int length, int datum) {
+    double[] lat = new double[BLOCK];
+    double[] lon = new double[BLOCK];
+    double[] x = new double[BLOCK];
+    double[] y = new double[BLOCK];
+    int[] zones = new int[BLOCK];
+    for (int start = offset, end = offset + length; start < end;
+        start += BLOCK) {
+      int count = Math.min(BLOCK, end - start);
+      System.arraycopy(latitudes, start, lat, 0, count);
+      System.arraycopy(longitudes, start, lon, 0, count);
+      if (!CoordinateBatch.latLonToUTM(lat, lon, zones, x, y, 0, count,
+          datum)) {
+        return false;
+      }
+      for (int j = 0; j < count; j++) {
+        setUTM(zones[j], x[j], y[j], gridZones, eastings, northings,
+          start + j);
+      }
+    }
+    return true;
+  }
+
+  /**
+  * <p>Converts a range of compact lat/lon coordinates to compact UTM
+  * coordinates.</p>
+  * @param latitudes The latitudes, in microdegrees.
+  * @param longitudes The longitudes, in microdegrees.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings, in centimeters (modified).
+  * @param northings The northings, in centimeters (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTM(int[] latitudes, int[] longitudes,
+      int[] gridZones, int[] eastings, int[] northings, int offset,
+      int length, int datum) {
+    double[] lat = new double[BLOCK];
+    double[] lon = new double[BLOCK];
+    double[] x = new double[BLOCK];
+    double[] y = new double[BLOCK];
+    int[] zones = new int[BLOCK];
+    for (int start = offset, end = offset + length; start < end;
+        start += BLOCK) {
+      int count = Math.min(BLOCK, end - start);
+      toDegrees(latitudes, lat, start, 0, count);
+      toDegrees(longitudes, lon, start, 0, count);
+      if (!CoordinateBatch.latLonToUTM(lat, lon, zones, x, y, 0, count,
+          datum)) {
+        return false;
+      }
+      for (int j = 0; j < count; j++) {
+        setUTM(zones[j], x[j], y[j], gridZones, eastings, northings,
+          start + j);
+      }
+    }
+    return true;
+  }
+
+  /**
+  * <p>Converts a range of compact UTM coordinates to compact lat/lon
+  * coordinates.  A coordinate with an invalid grid zone yields
+  * <code>INVALID</code> for its latitude and longitude, and the operation
+  * reports failure after converting the remaining coordinates.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings, in centimeters.
+  * @param northings The northings, in centimeters.
+  * @param latitudes The latitudes, in microdegrees (modified).
+  * @param longitudes The longitudes, in microdegrees (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean utmToLatLon(int[] gridZones, int[] eastings,
+      int[] northings, int[] latitudes, int[] longitudes, int offset,
+      int length, int datum) {
+    if (Ellipsoid.forDatum(datum) == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    int[] zones = new int[BLOCK];
+    double[] x = new double[BLOCK];
+    double[] y = new double[BLOCK];
+    double[] lat = new double[BLOCK];
+    double[] lon = new double[BLOCK];
+    boolean ok = true;
+    for (int start = offset, end = offset + length; start < end;
+        start += BLOCK) {
+      int count = Math.min(BLOCK, end - start);
+      System.arraycopy(gridZones, start, zones, 0, count);
+      toMeters(eastings, x, start, 0, count);
+      toMeters(northings, y, start, 0, count);
+      ok &= CoordinateBatch.utmToLatLon(zones, x, y, lat, lon, 0, count,
+        datum);
+      toMicrodegrees(lat, latitudes, 0, start, count);
+      toMicrodegrees(lon, longitudes, 0, start, count);
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of decimal coordinates to microdegrees.</p>
+  * @param coordinates The decimal coordinates.
+  * @param microdegrees The coordinates in microdegrees (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  */
+
+  public static void toMicrodegrees(double[] coordinates, int[] microdegrees,
+      int offset, int length) {
+    toMicrodegrees(coordinates, microdegrees, offset, offset, length);
+  }
+
+  /**
+  * <p>Converts a range of coordinates in microdegrees to decimal
+  * coordinates; an <code>INVALID</code> coordinate yields
+  * <code>NaN</code>.</p>
+  * @param microdegrees The coordinates in microdegrees.
+  * @param coordinates The decimal coordinates (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  */
+
+  public static void toDegrees(int[] microdegrees, double[] coordinates,
+      int offset, int length) {
+    toDegrees(microdegrees, coordinates, offset, offset, length);
+  }
+
+  //
+  // Conversions between the scratch columns, indexed from 0, and the
+  // compact columns.
+  //
+
+  private static void setUTM(int zone, double x, double y, int[] gridZones,
+      int[] eastings, int[] northings, int i) {
+    int easting = round(x * CENTIMETERS);
+    int northing = round(y * CENTIMETERS);
+    if (easting == INVALID || northing == INVALID) {
+      gridZones[i] = -1;
+      eastings[i] = northings[i] = INVALID;
+    }
+    else {
+      gridZones[i] = zone;
+      eastings[i] = easting;
+      northings[i] = northing;
+    }
+  }
+
+  private static void toMicrodegrees(double[] from, int[] to, int fromIndex,
+      int toIndex, int length) {
+    for (int j = 0; j < length; j++) {
+      to[toIndex + j] = round(from[fromIndex + j] * MICRODEGREES);
+    }
+  }
+
+  private static void toDegrees(int[] from, double[] to, int fromIndex,
+      int toIndex, int length) {
+    for (int j = 0; j < length; j++) {
+      int value = from[fromIndex + j];
+      to[toIndex + j] = value == INVALID ? Double.NaN : value / MICRODEGREES;
+    }
+  }
+
+  private static void toMeters(int[] from, double[] to, int fromIndex,
+      int toIndex, int length) {
+    for (int j = 0; j < length; j++) {
+      int value = from[fromIndex + j];
+      to[toIndex + j] = value == INVALID ? Double.NaN : value / CENTIMETERS;
+    }
+  }
+
+  //
+  // Rounds to the nearest unit; INVALID if the value is not a number or
+  // out of range.
+  //
+
+  static int round(double value) {
+    return value > INVALID && value < Integer.MAX_VALUE ?
+      (int) Math.round(value) : INVALID;
+  }
+}
@@ -0,0 +1,90 @@
+package geo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+
+/**
+* <p><code>ConversionEvent</code> is the Java Flight Recorder event of a
+* batch conversion of {@link CoordinateBatch}:  the operation, datum, and
+* number of points, the mix of UTM and UPS points, and the number of points
+* that could not be converted, with the duration of the call.  The event
+* is created and begun for every call, but the counts are taken, with a
+* pass over the results, only if the event is to be committed; when it is
+* not enabled, the event costs next to nothing.  By default, only calls of
+* 1 ms or more are recorded, so that the many small batches of, e.g.,
+* {@link GeometryProjector} do not flood a recording; the threshold may be
+* lowered in the recording's settings.</p>
+* @author Jerry Smith
+* @version $Id: ConversionEvent.java $
+*/
+
+@Name("geo.Conversion")
+@Label("Coordinate Conversion")
+@Category({"Coordinates"})
+@Description("A batch conversion of coordinates")
+@Threshold("1 ms")
+final class ConversionEvent extends Event {
+  @Label("Operation")
+  String operation;
+  @Label("Datum")
+  String datum;
+  @Label("Points")
+  int points;
+  @Label("UTM Points")
+  int utmPoints;
+  @Label("UPS Points")
+  int upsPoints;
+  @Label("Errors")
+  @Description("Points that could not be converted")
+  int errors;
+
+
+  /**
+  * <p>Commits the event, if it should be, counting the UTM and UPS points
+  * by their grid zones, and the errors by the results that are
+  * <code>NaN</code>.</p>
+  * @param operation The operation.
+  * @param datum The datum.
+  * @param gridZones The packed grid zones, or <code>null</code> if every
+  * point is in <code>gridZone</code>.
+  * @param gridZone The packed grid zone of every point, if
+  * <code>gridZones</code> is <code>null</code>.
+  * @param results A column of the results.
+  * @param offset The index of the first point.
+  * @param length The number of points.
+  */
+
+  void end(String operation, int datum, int[] gridZones, int gridZone,
+      double[] results, int offset, int length) {
+    if (!shouldCommit()) {
+      return;
+    }
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    this.operation = operation;
+    this.datum = c == null ? String.valueOf(datum) : c.getName();
+    points = length;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int zone = gridZones == null ? gridZone : gridZones[i];
+      if (Double.isNaN(results[i]) || zone < 0) {
+        errors++;
+      }
+      else if (isUPS(zone)) {
+        upsPoints++;
+      }
+      else {
+        utmPoints++;
+      }
+    }
+    commit();
+  }
+
+  private static boolean isUPS(int gridZone) {
+    char band = CoordinateUtil.getZoneBand(gridZone);
+    return band == 'A' || band == 'B' || band == 'Y' || band == 'Z';
+  }
+}
@@ -0,0 +1,75 @@
+package geo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+* <p><code>ConversionStageEvent</code> is the Java Flight Recorder event of
+* a file or stream conversion, e.g., by {@link CoordinateFileConverter} or
+* {@link GPXConverter}:  the stage, direction, datum, and number of points,
+* the number of coordinates that could not be read or converted, the
+* number of other lines or sentences passed through or skipped, and
+* whether the conversion failed, with its duration.  The batch
+* conversions within the stage are recorded as {@link ConversionEvent}s.</p>
+* @author Jerry Smith
+* @version $Id: ConversionStageEvent.java $
+*/
+
+@Name("geo.ConversionStage")
+@Label("Coordinate Conversion Stage")
+@Category({"Coordinates"})
+@Description("A file or stream conversion of coordinates")
+final class ConversionStageEvent extends Event {
+  @Label("Stage")
+  String stage;
+  @Label("Direction")
+  String direction;
+  @Label("Datum")
+  String datum;
+  @Label("Points")
+  long points;
+  @Label("Errors")
+  @Description("Coordinates that could not be read or converted")
+  long errors;
+  @Label("Passed")
+  @Description("Other lines or sentences, passed through or skipped")
+  long passed;
+  @Label("Failed")
+  boolean failed;
+
+
+  /**
+  * <p>Commits the event, if it should be.</p>
+  * @param stage The stage.
+  * @param direction The direction, <code>LATLON_TO_UTM</code> or
+  * <code>UTM_TO_LATLON</code> of {@link CoordinateFileConverter}.
+  * @param datum The datum.
+  * @param points The number of points.
+  * @param errors The number of coordinates that could not be read or
+  * converted.
+  * @param passed The number of other lines or sentences, passed through
+  * or skipped; 0 if the stage does not count them.
+  * @param failed Whether or not the conversion failed.
+  */
+
+  void end(String stage, int direction, int datum, long points, long errors,
+      long passed, boolean failed) {
+    if (!shouldCommit()) {
+      return;
+    }
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    this.stage = stage;
+    this.direction = direction == CoordinateFileConverter.LATLON_TO_UTM ?
+      "latLonToUTM" : "utmToLatLon";
+    this.datum = c == null ? String.valueOf(datum) : c.getName();
+    this.points = points;
+    this.errors = errors;
+    this.passed = passed;
+    this.failed = failed;
+    commit();
+  }
+}
@@ -0,0 +1,1123 @@
+package geo;
+
+import java.util.Arrays;
+
+
+/**
+* <p><code>CoordinateBatch</code> provides class-level convenience methods for
+* converting arrays of coordinates.  The conversions are those of
+* {@link CoordinateUtil}, with the same formulae evaluated in the same
+* order, so that the results are identical to the single-point
+* operations.  The difference is that the datum's ellipsoid is resolved
+* once per batch, and that the coordinates are passed as primitive arrays
+* (columns) rather than as <code>LatLon</code> and <code>UTM</code>
+* objects, so that nothing is allocated per point.</p>
+* <p>Sexagesimal (DMS) coordinates are likewise exchanged as degrees,
+* minutes, and seconds columns, and can be formatted directly into a
+* character buffer, for reports of many rows.</p>
+* <p>Grid zones are exchanged in packed form; see
+* {@link CoordinateUtil#packGridZone(String)}.  Each operation converts the
+* elements <code>offset</code> through <code>offset + length - 1</code> of
+* every array it is passed.</p>
+* @author Jerry Smith
+* @version $Id: CoordinateBatch.java $
+*/
+
+public final class CoordinateBatch {
+  /**
+  * <p>The maximum number of decimal places of DMS seconds.</p>
+  */
+
+  public static final int MAX_SECONDS_DECIMALS = 9;
+  /**
+  * <p>The maximum length of a formatted DMS coordinate, e.g.,
+  * <code>106&deg;48'01.260000000"W</code>.</p>
+  */
+
+  public static final int MAX_DMS_LENGTH = 12 + MAX_SECONDS_DECIMALS;
+  private static final double MAX_DMS_DEGREES = 360.0;
+  private static final long[] SECONDS_SCALES = {
+    1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+    1000000000L
+  };
+  private static final double LOWER_EPS_LIMIT = 1e-14;
+  private static final double M_PI_2 = Math.PI / 2;
+  //
+  // Aspects for the polar conversion.
+  //
+  private static final int UTM = 0;
+  private static final int NORTH_UPS = 1;
+  private static final int SOUTH_UPS = 2;
+
+
+  private CoordinateBatch() {
+  }
+
+  /**
+  * <p>Converts lat/lon coordinates to UTM coordinates.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTM(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings, int datum) {
+    return latLonToUTM(latitudes, longitudes, gridZones, eastings, northings,
+      0, latitudes.length, datum);
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to UTM coordinates.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTM(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings,
+      int offset, int length, int datum) {
+    return latLonToUTM(latitudes, longitudes, gridZones, eastings, northings,
+      null, null, offset, length, datum);
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to UTM coordinates, along
+  * with the point scale factor and the grid (meridian) convergence of each
+  * point, from the intermediate values of the projection.  The convergence
+  * is the angle by which grid north is clockwise from true north, i.e.,
+  * positive east of the central meridian in the northern hemisphere.
+  * Either column may be <code>null</code>, if it is not wanted.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param scales The point scale factors (modified), or
+  * <code>null</code>.
+  * @param convergences The grid convergences, in degrees (modified), or
+  * <code>null</code>.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTM(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings,
+      double[] scales, double[] convergences, int offset, int length,
+      int datum) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    boolean ok = convertToUTM(latitudes, longitudes, gridZones,
+      eastings, northings, scales, convergences, offset, length, datum);
+    event.end("latLonToUTM", datum, gridZones, -1, eastings, offset, length);
+    return ok;
+  }
+
+  private static boolean convertToUTM(double[] latitudes,
+      double[] longitudes, int[] gridZones, double[] eastings,
+      double[] northings, double[] scales, double[] convergences, int offset,
+      int length, int datum) {
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    if (c == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    double a = c.a, e = c.e, e2 = c.e2;
+    Lambda0 lambda0 = new Lambda0();
+
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double latitude = latitudes[i];
+      double longitude = longitudes[i];
+      double phi, lambda, lambda0r, k0, t, rho, x, y, sinPhi;
+
+      /* Convert latitude/longitude to radians */
+
+      phi = latitude * Math.PI / 180.0;
+      lambda = longitude * Math.PI / 180.0;
+
+      /* Figure out the UTM zone, as well as lambda0 */
+
+      gridZones[i] = CoordinateUtil.getGridZone(latitude, longitude, lambda0);
+      lambda0r = lambda0.lambda0;
+
+      /* See if this will use UTM or UPS */
+
+      if (latitude > 84.0) {
+
+        /* use Universal Polar Stereographic Projection (north polar aspect) */
+
+        k0 = 0.994;
+        sinPhi = Math.sin(phi);
+        t = Math.sqrt(((1 - sinPhi) / (1 + sinPhi)) *
+           Math.pow((1 + e * sinPhi)/(1 - e * sinPhi), e));
+        rho = 2 * a * k0 * t / c.upsScale;
+        x = rho * Math.sin(lambda - lambda0r);
+        y = -rho * Math.cos(lambda - lambda0r);
+        if (scales != null) {
+          scales[i] = getUPSScale(c, k0, phi, sinPhi, rho);
+        }
+        if (convergences != null) {
+          convergences[i] = (lambda - lambda0r) * 180.0 / Math.PI;
+        }
+
+        /* Apply false easting/northing */
+
+        x += 2000000;
+        y += 2000000;
+      }
+      else if (latitude < -80.0) {
+
+        /* use Universal Polar Stereographic Projection (south polar aspect) */
+
+        phi = -phi;
+        lambda = -lambda;
+        lambda0r = -lambda0r;
+
+        k0 = 0.994;
+        sinPhi = Math.sin(phi);
+        t = Math.sqrt(((1 - sinPhi) / (1 + sinPhi)) *
+           Math.pow((1 + e * sinPhi) / (1 - e * sinPhi), e));
+        rho = 2 * a * k0 * t / c.upsScale;
+
+        x = rho * Math.sin(lambda - lambda0r);
+        y = -rho * Math.cos(lambda - lambda0r);
+        if (scales != null) {
+          scales[i] = getUPSScale(c, k0, phi, sinPhi, rho);
+        }
+        if (convergences != null) {
+          convergences[i] = (lambda - lambda0r) * 180.0 / Math.PI;
+        }
+
+        x = -x;
+        y = -y;
+
+        /* Apply false easting/northing */
+
+        x += 2000000;
+        y += 2000000;
+      }
+      else {
+        /* Use UTM */
+
+        double mm, aa, aa2, aa3, aa4, aa5, aa6, nn, tt, cc;
+        double cosPhi, tanPhi;
+
+        k0 = 0.9996;
+        sinPhi = Math.sin(phi);
+        cosPhi = Math.cos(phi);
+        tanPhi = Math.tan(phi);
+        mm = a * (c.m1 * phi - c.m2 * Math.sin(2 * phi) +
+          c.m3 * Math.sin(4 * phi) - c.m4 * Math.sin(6 * phi));
+        aa = (lambda - lambda0r) * cosPhi;
+        aa2 = aa * aa;
+        aa3 = aa2 * aa;
+        aa4 = aa2 * aa2;
+        aa5 = aa4 * aa;
+        aa6 = aa3 * aa3;
+        nn = a / Math.sqrt(1 - e2 * sinPhi * sinPhi);
+        tt = tanPhi * tanPhi;
+        cc = c.ep2 * cosPhi * cosPhi;
+
+        x = k0 * nn * (aa + (1 - tt + cc) * aa3 / 6 +
+           (5 - 18 * tt + tt * tt + 72 * cc - 58 * c.ep2) * aa5 / 120.0);
+        y = k0 * (mm - c.mm0 + nn * tanPhi *
+            (aa2 / 2 + (5 - tt + 9 * cc + 4 * cc * cc) * aa4 / 24.0
+             + (61 - 58 * tt + tt * tt + 600 * cc - 330 * c.ep2) * aa6 / 720));
+        if (scales != null) {
+          scales[i] = k0 *
+            (1 + (1 + cc) * aa2 / 2 +
+              (5 - 4 * tt + 42 * cc + 13 * cc * cc - 28 * c.ep2) * aa4 / 24.0 +
+              (61 - 148 * tt + 16 * tt * tt) * aa6 / 720.0
+            );
+        }
+        if (convergences != null) {
+          convergences[i] = (lambda - lambda0r) * sinPhi *
+            (1 + (1 + 3 * cc + 2 * cc * cc) * aa2 / 3 +
+              (2 - tt) * aa4 / 15) * 180.0 / Math.PI;
+        }
+
+        /* Apply false easting and northing */
+
+        x += 500000.0;
+        if (y < 0.0) {
+          y += 10000000;
+        }
+      }
+      eastings[i] = x;
+      northings[i] = y;
+    }
+    return true;
+  }
+
+  //
+  // The UPS point scale factor, rho / (a m); at the pole, k0.  phi is
+  // that of the north polar aspect.
+  //
+
+  private static double getUPSScale(Ellipsoid c, double k0, double phi,
+      double sinPhi, double rho) {
+    double m = Math.cos(phi) / Math.sqrt(1 - c.e2 * sinPhi * sinPhi);
+    return rho == 0.0 ? k0 : rho / (c.a * m);
+  }
+
+  /**
+  * <p>Converts lat/lon coordinates to UTM coordinates in a single,
+  * specified zone, rather than in the zone of each point; see
+  * {@link #latLonToUTMInZone(double[], double[], int, double[], double[],
+  * int, int, int)}.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZone The packed grid zone.
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTMInZone(double[] latitudes,
+      double[] longitudes, int gridZone, double[] eastings,
+      double[] northings, int datum) {
+    return latLonToUTMInZone(latitudes, longitudes, gridZone, eastings,
+      northings, 0, latitudes.length, datum);
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to UTM coordinates in a
+  * single, specified zone, e.g., for a survey that straddles a zone
+  * boundary, so that the grid is continuous.  The central meridian is that
+  * of the zone, and the false northing is that of its hemisphere, for every
+  * point; a point in the other hemisphere has a northing that is negative,
+  * or greater than 10,000 km.  The zone must be a UTM zone (not UPS), and
+  * the accuracy of the projection falls off with distance from the zone's
+  * central meridian.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZone The packed grid zone.
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToUTMInZone(double[] latitudes,
+      double[] longitudes, int gridZone, double[] eastings,
+      double[] northings, int offset, int length, int datum) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    boolean ok = convertToUTMInZone(latitudes, longitudes,
+      gridZone, eastings, northings, offset, length, datum);
+    event.end("latLonToUTMInZone", datum, null, gridZone, eastings, offset,
+      length);
+    return ok;
+  }
+
+  private static boolean convertToUTMInZone(double[] latitudes,
+      double[] longitudes, int gridZone, double[] eastings,
+      double[] northings, int offset, int length, int datum) {
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    if (c == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    Lambda0 lambda0 = new Lambda0();
+    char zoneLat = CoordinateUtil.getZoneBand(gridZone);
+    if (CoordinateUtil.getBandIndex(zoneLat) < 0 ||
+        CoordinateUtil.getLambda0(gridZone, lambda0) < 0) {
+      System.out.println("Not a UTM grid zone: " +
+        CoordinateUtil.unpackGridZone(gridZone) + ".");
+      return false;
+    }
+    double a = c.a, e2 = c.e2, ep2 = c.ep2;
+    double m1 = c.m1, m2 = c.m2, m3 = c.m3, m4 = c.m4, mm0 = c.mm0;
+    double lambda0r = lambda0.lambda0;
+    double k0 = 0.9996;
+    double falseNorthing =
+      CoordinateUtil.isSouthernBand(zoneLat) ? 10000000 : 0.0;
+
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double phi, lambda, x, y, sinPhi, cosPhi, tanPhi;
+      double mm, aa, aa2, aa3, aa4, aa5, aa6, nn, tt, cc;
+
+      /* Convert latitude/longitude to radians */
+
+      phi = latitudes[i] * Math.PI / 180.0;
+      lambda = longitudes[i] * Math.PI / 180.0;
+
+      /* Use UTM, with the zone's lambda0 */
+
+      sinPhi = Math.sin(phi);
+      cosPhi = Math.cos(phi);
+      tanPhi = Math.tan(phi);
+      mm = a * (m1 * phi - m2 * Math.sin(2 * phi) +
+        m3 * Math.sin(4 * phi) - m4 * Math.sin(6 * phi));
+      aa = (lambda - lambda0r) * cosPhi;
+      aa2 = aa * aa;
+      aa3 = aa2 * aa;
+      aa4 = aa2 * aa2;
+      aa5 = aa4 * aa;
+      aa6 = aa3 * aa3;
+      nn = a / Math.sqrt(1 - e2 * sinPhi * sinPhi);
+      tt = tanPhi * tanPhi;
+      cc = ep2 * cosPhi * cosPhi;
+
+      x = k0 * nn * (aa + (1 - tt + cc) * aa3 / 6 +
+         (5 - 18 * tt + tt * tt + 72 * cc - 58 * ep2) * aa5 / 120.0);
+      y = k0 * (mm - mm0 + nn * tanPhi *
+          (aa2 / 2 + (5 - tt + 9 * cc + 4 * cc * cc) * aa4 / 24.0
+           + (61 - 58 * tt + tt * tt + 600 * cc - 330 * ep2) * aa6 / 720));
+
+      /* Apply false easting and (the hemisphere's) false northing */
+
+      eastings[i] = x + 500000.0;
+      northings[i] = y + falseNorthing;
+    }
+    return true;
+  }
+
+  /**
+  * <p>Gets the dominant zone of a range of lat/lon coordinates, i.e., the
+  * UTM grid zone that contains the most points.  Points in the polar (UPS)
+  * regions are not counted; ties go to the lower zone.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @return The packed grid zone, or -1 if no point is in a UTM zone.
+  */
+
+  public static int getDominantZone(double[] latitudes, double[] longitudes,
+      int offset, int length) {
+    int[] counts = new int[CoordinateUtil.packGridZone(61, 'A')];
+    Lambda0 lambda0 = new Lambda0();
+    int dominant = -1;
+    int dominantCount = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int zone = CoordinateUtil.getGridZone(latitudes[i], longitudes[i],
+        lambda0);
+      int zoneLong = CoordinateUtil.getZoneNumber(zone);
+      char zoneLat = CoordinateUtil.getZoneBand(zone);
+      if (zoneLong < 1 || zoneLong > 60 ||
+          CoordinateUtil.getBandIndex(zoneLat) < 0) {
+        continue;
+      }
+      int count = ++counts[zone];
+      if (count > dominantCount ||
+          (count == dominantCount && zone < dominant)) {
+        dominant = zone;
+        dominantCount = count;
+      }
+    }
+    return dominant;
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to UTM coordinates in their
+  * dominant zone; see {@link #getDominantZone(double[], double[], int,
+  * int)} and {@link #latLonToUTMInZone(double[], double[], int, double[],
+  * double[], int, int, int)}.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return The packed grid zone, or -1 if the operation was unsuccessful.
+  */
+
+  public static int latLonToUTMInDominantZone(double[] latitudes,
+      double[] longitudes, double[] eastings, double[] northings,
+      int offset, int length, int datum) {
+    int gridZone = getDominantZone(latitudes, longitudes, offset, length);
+    if (gridZone < 0) {
+      System.out.println("No points in a UTM grid zone.");
+      return -1;
+    }
+    if (!latLonToUTMInZone(latitudes, longitudes, gridZone, eastings,
+        northings, offset, length, datum)) {
+      return -1;
+    }
+    return gridZone;
+  }
+
+  //
+  // The points permutation[from] through permutation[to - 1] are in one
+  // UTM zone.
+  //
+
+  private static void toUTM(Ellipsoid c, double lambda0r,
+      double[] latitudes, double[] longitudes, int[] permutation,
+      int from, int to, double[] eastings, double[] northings) {
+    double a = c.a, e2 = c.e2, ep2 = c.ep2;
+    double m1 = c.m1, m2 = c.m2, m3 = c.m3, m4 = c.m4, mm0 = c.mm0;
+    double k0 = 0.9996;
+
+    for (int j = from; j < to; j++) {
+      int i = permutation[j];
+      double phi, lambda, x, y, sinPhi, cosPhi, tanPhi;
+      double mm, aa, aa2, aa3, aa4, aa5, aa6, nn, tt, cc;
+
+      /* Convert latitude/longitude to radians */
+
+      phi = latitudes[i] * Math.PI / 180.0;
+      lambda = longitudes[i] * Math.PI / 180.0;
+
+      /* Use UTM */
+
+      sinPhi = Math.sin(phi);
+      cosPhi = Math.cos(phi);
+      tanPhi = Math.tan(phi);
+      mm = a * (m1 * phi - m2 * Math.sin(2 * phi) +
+        m3 * Math.sin(4 * phi) - m4 * Math.sin(6 * phi));
+      aa = (lambda - lambda0r) * cosPhi;
+      aa2 = aa * aa;
+      aa3 = aa2 * aa;
+      aa4 = aa2 * aa2;
+      aa5 = aa4 * aa;
+      aa6 = aa3 * aa3;
+      nn = a / Math.sqrt(1 - e2 * sinPhi * sinPhi);
+      tt = tanPhi * tanPhi;
+      cc = ep2 * cosPhi * cosPhi;
+
+      x = k0 * nn * (aa + (1 - tt + cc) * aa3 / 6 +
+         (5 - 18 * tt + tt * tt + 72 * cc - 58 * ep2) * aa5 / 120.0);
+      y = k0 * (mm - mm0 + nn * tanPhi *
+          (aa2 / 2 + (5 - tt + 9 * cc + 4 * cc * cc) * aa4 / 24.0
+           + (61 - 58 * tt + tt * tt + 600 * cc - 330 * ep2) * aa6 / 720));
+
+      /* Apply false easting and northing */
+
+      x += 500000.0;
+      if (y < 0.0) {
+        y += 10000000;
+      }
+      eastings[i] = x;
+      northings[i] = y;
+    }
+  }
+
+  //
+  // The points from through to - 1 are in one polar region, north or
+  // south.
+  //
+
+  private static void toUPS(Ellipsoid c, boolean north, double[] latitudes,
+      double[] longitudes, int from, int to, double[] eastings,
+      double[] northings) {
+    double a = c.a, e = c.e, upsScale = c.upsScale;
+    double k0 = 0.994;
+    double sign = north ? 1.0 : -1.0;
+
+    for (int i = from; i < to; i++) {
+      double phi, lambda, t, rho, x, y, sinPhi;
+
+      /* Convert latitude/longitude to radians (south:  negated) */
+
+      phi = sign * (latitudes[i] * Math.PI / 180.0);
+      lambda = sign * (longitudes[i] * Math.PI / 180.0);
+
+      /* use Universal Polar Stereographic Projection */
+
+      sinPhi = Math.sin(phi);
+      t = Math.sqrt(((1 - sinPhi) / (1 + sinPhi)) *
+         Math.pow((1 + e * sinPhi) / (1 - e * sinPhi), e));
+      rho = 2 * a * k0 * t / upsScale;
+      x = sign * (rho * Math.sin(lambda));
+      y = sign * (-rho * Math.cos(lambda));
+
+      /* Apply false easting/northing */
+
+      eastings[i] = x + 2000000;
+      northings[i] = y + 2000000;
+    }
+  }
+
+  /**
+  * <p>Converts a range of polar lat/lon coordinates, i.e., north of 84N or
+  * south of 80S, to UPS coordinates.  The results are those of
+  * {@link #latLonToUTM(double[], double[], int[], double[], double[], int,
+  * int, int)}, but the grid zones are not resolved point by point, and
+  * each run of points in the same polar region is converted by a loop
+  * specialized for its aspect, north or south.  A coordinate outside the
+  * polar regions yields a grid zone of -1 and <code>NaN</code>
+  * easting and northing, and the operation reports failure after
+  * converting the remaining coordinates.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean latLonToUPS(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings, int offset,
+      int length, int datum) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    boolean ok = convertToUPS(latitudes, longitudes, gridZones,
+      eastings, northings, offset, length, datum);
+    event.end("latLonToUPS", datum, gridZones, -1, eastings, offset, length);
+    return ok;
+  }
+
+  private static boolean convertToUPS(double[] latitudes,
+      double[] longitudes, int[] gridZones, double[] eastings,
+      double[] northings, int offset, int length, int datum) {
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    if (c == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    int north30 = CoordinateUtil.packGridZone(30, 'Y');
+    int north31 = CoordinateUtil.packGridZone(31, 'Z');
+    int south30 = CoordinateUtil.packGridZone(30, 'A');
+    int south31 = CoordinateUtil.packGridZone(31, 'B');
+    boolean ok = true;
+    int end = offset + length;
+    int i = offset;
+    while (i < end) {
+
+      /* Find the run of points with the same aspect */
+
+      int aspect = getAspect(latitudes[i]);
+      int from = i;
+      while (i < end && getAspect(latitudes[i]) == aspect) {
+        if (aspect == UTM) {
+          gridZones[i] = -1;
+          eastings[i] = northings[i] = Double.NaN;
+        }
+        else if (aspect == NORTH_UPS) {
+          gridZones[i] = longitudes[i] < 0 ? north30 : north31;
+        }
+        else {
+          gridZones[i] = longitudes[i] < 0 ? south30 : south31;
+        }
+        i++;
+      }
+      if (aspect == UTM) {
+        ok = false;
+      }
+      else {
+        toUPS(c, aspect == NORTH_UPS, latitudes, longitudes, from, i,
+          eastings, northings);
+      }
+    }
+    return ok;
+  }
+
+  private static int getAspect(double latitude) {
+    return latitude > 84 ? NORTH_UPS : latitude < -80 ? SOUTH_UPS : UTM;
+  }
+
+  /**
+  * <p>Converts a range of UPS coordinates, i.e., in grid zones A, B, Y, or
+  * Z, to lat/lon coordinates.  The results agree with those of
+  * {@link #utmToLatLon(int[], double[], double[], double[], double[], int,
+  * int, int)} to within a unit in the last place or two:  the series for
+  * the latitude, which is within 1e-13 radians, is evaluated without
+  * trigonometric functions, and the iteration that refines it is a single
+  * step rather than a loop to convergence.  A coordinate with a grid zone
+  * that is not a UPS zone yields <code>NaN</code> for its latitude and
+  * longitude, and the operation reports failure after converting the
+  * remaining coordinates.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param latitudes The latitudes (modified).
+  * @param longitudes The longitudes (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean upsToLatLon(int[] gridZones, double[] eastings,
+      double[] northings, double[] latitudes, double[] longitudes,
+      int offset, int length, int datum) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    boolean ok = convertFromUPS(gridZones, eastings, northings,
+      latitudes, longitudes, offset, length, datum);
+    event.end("upsToLatLon", datum, gridZones, -1, latitudes, offset, length);
+    return ok;
+  }
+
+  private static boolean convertFromUPS(int[] gridZones, double[] eastings,
+      double[] northings, double[] latitudes, double[] longitudes,
+      int offset, int length, int datum) {
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    if (c == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    boolean ok = true;
+    int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      int aspect = getUPSAspect(gridZones[i]);
+      int from = i;
+      while (i < end && getUPSAspect(gridZones[i]) == aspect) {
+        i++;
+      }
+      if (aspect == UTM) {
+        Arrays.fill(latitudes, from, i, Double.NaN);
+        Arrays.fill(longitudes, from, i, Double.NaN);
+        ok = false;
+      }
+      else {
+        fromUPS(c, aspect == NORTH_UPS, eastings, northings, from, i,
+          latitudes, longitudes);
+      }
+    }
+    return ok;
+  }
+
+  private static int getUPSAspect(int gridZone) {
+    if (gridZone < 0) {
+      return UTM;
+    }
+    switch (CoordinateUtil.getZoneBand(gridZone)) {
+    case 'Y': case 'Z':
+      return NORTH_UPS;
+    case 'A': case 'B':
+      return SOUTH_UPS;
+    default:
+      return UTM;
+    }
+  }
+
+  //
+  // The points from through to - 1 are in one UPS zone, north or south.
+  //
+
+  private static void fromUPS(Ellipsoid c, boolean north, double[] eastings,
+      double[] northings, int from, int to, double[] latitudes,
+      double[] longitudes) {
+    double e = c.e;
+    double p2 = c.p2, p4 = c.p4, p6 = c.p6, p8 = c.p8;
+    double k0 = 0.994;
+    double tScale = c.upsScale / (2 * c.a * k0);
+    double sign = north ? 1.0 : -1.0;
+
+    for (int i = from; i < to; i++) {
+      double x, y, t, t2, chi, sinChi, cosChi, s2, c2, s4, c4, s6, s8;
+      double phi, sinPhi;
+
+      /* Subtract the false easting/northing (south:  negated) */
+
+      x = sign * (eastings[i] - 2000000);
+      y = sign * (northings[i] - 2000000);
+      t = Math.sqrt(x * x + y * y) * tScale;
+
+      /* The conformal latitude, and the sines of its multiples, from t */
+
+      chi = M_PI_2 - 2 * Math.atan(t);
+      t2 = t * t;
+      sinChi = (1 - t2) / (1 + t2);
+      cosChi = 2 * t / (1 + t2);
+      s2 = 2 * sinChi * cosChi;
+      c2 = cosChi * cosChi - sinChi * sinChi;
+      s4 = 2 * s2 * c2;
+      c4 = c2 * c2 - s2 * s2;
+      s6 = s4 * c2 + c4 * s2;
+      s8 = 2 * s4 * c4;
+      phi = chi + p2 * s2 + p4 * s4 + p6 * s6 + p8 * s8;
+
+      /* One step of the iteration is enough after the series */
+
+      sinPhi = Math.sin(phi);
+      phi = M_PI_2 - 2 *
+        Math.atan(t * Math.pow((1 - e * sinPhi) / (1 + e * sinPhi), e / 2));
+
+      latitudes[i] = sign * phi * 180.0 / Math.PI;
+      longitudes[i] = sign * Math.atan2(x, -y) * 180.0 / Math.PI;
+    }
+  }
+
+  /**
+  * <p>Converts UTM coordinates to lat/lon coordinates.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param latitudes The latitudes (modified).
+  * @param longitudes The longitudes (modified).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean utmToLatLon(int[] gridZones, double[] eastings,
+      double[] northings, double[] latitudes, double[] longitudes, int datum) {
+    return utmToLatLon(gridZones, eastings, northings, latitudes, longitudes,
+      0, gridZones.length, datum);
+  }
+
+  /**
+  * <p>Converts a range of UTM coordinates to lat/lon coordinates.  A
+  * coordinate with an invalid grid zone yields <code>NaN</code> for its
+  * latitude and longitude, and the operation reports failure after
+  * converting the remaining coordinates.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param latitudes The latitudes (modified).
+  * @param longitudes The longitudes (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean utmToLatLon(int[] gridZones, double[] eastings,
+      double[] northings, double[] latitudes, double[] longitudes,
+      int offset, int length, int datum) {
+    ConversionEvent event = new ConversionEvent();
+    event.begin();
+    boolean ok = convertFromUTM(gridZones, eastings, northings,
+      latitudes, longitudes, offset, length, datum);
+    event.end("utmToLatLon", datum, gridZones, -1, latitudes, offset, length);
+    return ok;
+  }
+
+  private static boolean convertFromUTM(int[] gridZones, double[] eastings,
+      double[] northings, double[] latitudes, double[] longitudes,
+      int offset, int length, int datum) {
+    Ellipsoid c = Ellipsoid.forDatum(datum);
+    if (c == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return false;
+    }
+    double a = c.a, e = c.e, e2 = c.e2;
+    Lambda0 lambda0 = new Lambda0();
+    boolean ok = true;
+
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double x, y, k0, rho, t, chi, phi, phit, lambda;
+      int gridZone = gridZones[i];
+
+      /* Given the UTM grid zone, generate a baseline lambda0 */
+
+      if (CoordinateUtil.getLambda0(gridZone, lambda0) < 0) {
+        latitudes[i] = Double.NaN;
+        longitudes[i] = Double.NaN;
+        ok = false;
+        continue;
+      }
+
+      switch (CoordinateUtil.getZoneBand(gridZone)) {
+      case 'Y': case 'Z':   /* north polar aspect */
+
+        /* Subtract the false easting/northing */
+
+        x = eastings[i] - 2000000;
+        y = northings[i] - 2000000;
+
+        /* Solve for inverse equations */
+
+        k0 = 0.994;
+        rho = Math.sqrt (x * x + y * y);
+        t = rho * c.upsScale / (2 * a * k0);
+
+        /* Solve for latitude and longitude */
+
+        chi = M_PI_2 - 2 * Math.atan(t);
+        phit = chi + c.p2 * Math.sin(2 * chi) + c.p4 * Math.sin(4 * chi) +
+          c.p6 * Math.sin(6 * chi) + c.p8 * Math.sin(8 * chi);
+
+        do {
+          phi = phit;
+          double sinPhi = Math.sin(phi);
+          phit = M_PI_2 - 2 *
+            Math.atan(t * Math.pow((1 - e * sinPhi) / (1 + e * sinPhi), e / 2));
+        } while (Math.abs(phi - phit) > LOWER_EPS_LIMIT);
+
+        lambda = lambda0.lambda0 + Math.atan2(x, -y);
+        break;
+
+      case 'A': case 'B':   /* south polar aspect */
+
+        /* Subtract the false easting/northing */
+
+        x = -(eastings[i] - 2000000);
+        y = -(northings[i] - 2000000);
+
+        /* Solve for inverse equations */
+
+        k0 = 0.994;
+        rho = Math.sqrt (x * x + y * y);
+        t = rho * c.upsScale / (2 * a * k0);
+
+        /* Solve for latitude and longitude */
+
+        chi = M_PI_2 - 2 * Math.atan(t);
+        phit = chi + c.p2 * Math.sin(2 * chi) + c.p4 * Math.sin(4 * chi) +
+          c.p6 * Math.sin(6 * chi) + c.p8 * Math.sin(8 * chi);
+
+        do {
+          phi = phit;
+          double sinPhi = Math.sin(phi);
+          phit = M_PI_2 - 2 *
+            Math.atan(t * Math.pow((1 - e * sinPhi) / (1 + e * sinPhi), e / 2));
+        } while (Math.abs(phi - phit) > LOWER_EPS_LIMIT);
+
+        phi = -phi;
+        lambda = -(-lambda0.lambda0 + Math.atan2(x, -y));
+        break;
+
+      default:
+
+        /* Now take care of the UTM locations */
+
+        double mm, mu, phi1, cc1, tt1, nn1, rr1, dd, dd2, dd3, dd4, dd5, dd6;
+        double sinPhi1, cosPhi1, tanPhi1, w;
+
+        k0 = 0.9996;
+
+        /* Remove false eastings/northings */
+
+        x = eastings[i] - 500000;
+        y = northings[i];
+
+        if (CoordinateUtil.isSouthernBand(
+            CoordinateUtil.getZoneBand(gridZone))) {
+          y -= 10000000;    // southern hemi.
+        }
+
+        /* Calculate the footpoint latitude */
+
+        mm = c.mm0 + y/k0;
+        mu = mm / (a * c.m1);
+
+        phi1 = mu + c.f2 * Math.sin(2 * mu) + c.f4 * Math.sin(4 * mu) +
+          c.f6 * Math.sin(6 * mu) + c.f8 * Math.sin(8 * mu);
+
+        /* Now calculate lambda and phi */
+
+        sinPhi1 = Math.sin(phi1);
+        cosPhi1 = Math.cos(phi1);
+        tanPhi1 = Math.tan(phi1);
+        w = 1 - e2 * sinPhi1 * sinPhi1;
+        cc1 = c.ep2 * cosPhi1 * cosPhi1;
+        tt1 = tanPhi1 * tanPhi1;
+        nn1 = a / Math.sqrt(w);
+        rr1 = a * (1 - e2) / Math.pow(w, 1.5);
+        dd = x / (nn1 * k0);
+
+        dd2 = dd * dd;
+        dd3 = dd * dd2;
+        dd4 = dd2 * dd2;
+        dd5 = dd3 * dd2;
+        dd6 = dd4 * dd2;
+
+        phi = phi1 - (nn1 * tanPhi1 / rr1) *
+          (dd2 / 2 - (5 + 3 * tt1 + 10 * cc1 - 4 * cc1 * cc1 - 9 * c.ep2) *
+            dd4 / 24 +
+           (61 + 90 * tt1 + 298 * cc1 + 45 * tt1 * tt1 - 252 * c.ep2 - 3 *
+             cc1 * cc1) *
+             dd6 / 720
+          );
+
+        lambda = lambda0.lambda0 +
+          (dd - (1 + 2 * tt1 + cc1) * dd3 / 6 +
+            (5 - 2 * cc1 + 28 * tt1 - 3 * cc1 * cc1 + 8 * c.ep2 +
+              24 * tt1 * tt1) *
+            dd5 / 120) / cosPhi1;
+      }
+
+      /* Convert phi/lambda to degrees */
+
+      latitudes[i] = phi * 180.0 / Math.PI;
+      longitudes[i] = lambda * 180.0 / Math.PI;
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of decimal coordinates to sexagesimal coordinates,
+  * with the seconds rounded to the given number of decimal places.  The
+  * coordinate is rounded as a whole, so that rounded seconds carry into the
+  * minutes, and the minutes into the degrees, rather than reading 60.  As
+  * with {@link CoordinateUtil#convertDecimalToDMS(double)}, each component
+  * of a negative coordinate is negative (or zero).  A coordinate whose
+  * magnitude is greater than 360 degrees, or that is not a number, yields
+  * <code>NaN</code> seconds, and the operation reports failure after
+  * converting the remaining coordinates.</p>
+  * @param coordinates The decimal coordinates.
+  * @param degrees The degrees (modified).
+  * @param minutes The minutes (modified).
+  * @param seconds The seconds (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param decimals The decimal places of the seconds, 0 through 9.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean convertDecimalToDMS(double[] coordinates,
+      int[] degrees, int[] minutes, double[] seconds, int offset,
+      int length, int decimals) {
+    if (decimals < 0 || decimals > MAX_SECONDS_DECIMALS) {
+      System.out.println("Invalid seconds decimals: " + decimals + ".");
+      return false;
+    }
+    long scale = SECONDS_SCALES[decimals];
+    long minute = 60 * scale;
+    long degree = 60 * minute;
+    boolean ok = true;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double coordinate = coordinates[i];
+      if (!(Math.abs(coordinate) <= MAX_DMS_DEGREES)) {
+        degrees[i] = minutes[i] = 0;
+        seconds[i] = Double.NaN;
+        ok = false;
+        continue;
+      }
+      long units = getSecondsUnits(coordinate, scale);
+      int d = (int) (units / degree);
+      units -= d * degree;
+      int m = (int) (units / minute);
+      long s = units - m * minute;
+      if (coordinate < 0) {
+        d = -d;
+        m = -m;
+        s = -s;
+      }
+      degrees[i] = d;
+      minutes[i] = m;
+      seconds[i] = s / (double) scale;
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of sexagesimal coordinates to decimal coordinates,
+  * as {@link CoordinateUtil#converDMSToDecimal(int, int, double)} does.
+  * The components of a negative coordinate are all negative (or
+  * zero).</p>
+  * @param degrees The degrees.
+  * @param minutes The minutes.
+  * @param seconds The seconds.
+  * @param coordinates The decimal coordinates (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  */
+
+  public static void convertDMSToDecimal(int[] degrees, int[] minutes,
+      double[] seconds, double[] coordinates, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      coordinates[i] = degrees[i] + minutes[i] / 60.0 + seconds[i] / 3600.0;
+    }
+  }
+
+  /**
+  * <p>Formats a range of decimal coordinates as sexagesimal text, e.g.,
+  * <code>32&deg;16'58.98"N</code>, without an intermediate
+  * <code>DMS</code> object or <code>DecimalFormat</code>.  The seconds are
+  * rounded as for {@link #convertDecimalToDMS(double[], int[], int[],
+  * double[], int, int, int)}; the minutes and seconds are written with two
+  * integer digits, and the sign as the hemisphere letter.  The coordinates
+  * are written one after another into the buffer, which must hold
+  * <code>length * MAX_DMS_LENGTH</code> characters; the end of each
+  * coordinate is written to <code>ends</code>, as for
+  * {@link MGRS#utmToMGRS(int[], double[], double[], int, int, int, int,
+  * char[], int[])}.  An invalid coordinate is written as an empty
+  * string.</p>
+  * @param coordinates The decimal coordinates.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param decimals The decimal places of the seconds, 0 through 9.
+  * @param positive The hemisphere letter for positive coordinates, e.g.,
+  * <code>'N'</code>.
+  * @param negative The hemisphere letter for negative coordinates, e.g.,
+  * <code>'S'</code>.
+  * @param buffer The formatted coordinates (modified).
+  * @param ends The end of each coordinate in the buffer (modified),
+  * indexed from <code>offset</code>.
+  * @return Whether or not every coordinate was formatted.
+  */
+
+  public static boolean formatDMS(double[] coordinates, int offset,
+      int length, int decimals, char positive, char negative,
+      char[] buffer, int[] ends) {
+    if (decimals < 0 || decimals > MAX_SECONDS_DECIMALS) {
+      System.out.println("Invalid seconds decimals: " + decimals + ".");
+      return false;
+    }
+    long scale = SECONDS_SCALES[decimals];
+    long minute = 60 * scale;
+    long degree = 60 * minute;
+    boolean ok = true;
+    int position = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double coordinate = coordinates[i];
+      if (!(Math.abs(coordinate) <= MAX_DMS_DEGREES)) {
+        ok = false;
+        ends[i] = position;
+        continue;
+      }
+      long units = getSecondsUnits(coordinate, scale);
+      int d = (int) (units / degree);
+      units -= d * degree;
+      int m = (int) (units / minute);
+      long s = units - m * minute;
+
+      /* Degrees, without leading zeros */
+
+      if (d >= 100) {
+        buffer[position++] = (char) ('0' + d / 100);
+      }
+      if (d >= 10) {
+        buffer[position++] = (char) ('0' + d / 10 % 10);
+      }
+      buffer[position++] = (char) ('0' + d % 10);
+      buffer[position++] = '\u00b0';
+      buffer[position++] = (char) ('0' + m / 10);
+      buffer[position++] = (char) ('0' + m % 10);
+      buffer[position++] = '\'';
+
+      /* Seconds, as digits of the scaled value, with the point inserted */
+
+      long whole = s / scale;
+      buffer[position++] = (char) ('0' + whole / 10);
+      buffer[position++] = (char) ('0' + whole % 10);
+      if (decimals > 0) {
+        buffer[position++] = '.';
+        long fraction = s % scale;
+        for (int j = decimals - 1; j >= 0; j--) {
+          buffer[position + j] = (char) ('0' + fraction % 10);
+          fraction /= 10;
+        }
+        position += decimals;
+      }
+      buffer[position++] = '"';
+      buffer[position++] = d + m + s != 0 && coordinate < 0 ?
+        negative : positive;
+      ends[i] = position;
+    }
+    return ok;
+  }
+
+  //
+  // The magnitude of a coordinate in units of the last decimal place of
+  // the seconds.
+  //
+
+  private static long getSecondsUnits(double coordinate, long scale) {
+    return Math.round(Math.abs(coordinate) * 3600.0 * scale);
+  }
+}
@@ -0,0 +1,569 @@
+package geo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+* <p><code>CoordinateBenchmark</code> is a simple throughput benchmark for the
+* conversion operations.  Each case converts the same set of random,
+* worldwide points repeatedly; after a warm-up period, so that the code is
+* compiled, the case is timed over several rounds and the best round is
+* reported in nanoseconds per point.</p>
+* <p>It runs as a command-line utility:</p>
+* <ul>
+* <li><code>CoordinateBenchmark [[[no args -- runs every case]]]</code>
+* <li><code>CoordinateBenchmark batch shift</code> (cases whose names
+* contain any of the arguments)
+* </ul>
+* @author Jerry Smith
+* @version $Id: CoordinateBenchmark.java $
+*/
+
+public final class CoordinateBenchmark {
+  //
+  // Constants:
+  //
+  private static final int POINTS = 1 << 16;
+  private static final long WARMUP_MILLIS = 1000;
+  private static final long ROUND_MILLIS = 500;
+  private static final int ROUNDS = 5;
+  private static final long SEED = 19980525L;
+  //
+  // The points, and columns for the results:
+  //
+  private static double[] latitudes = new double[POINTS];
+  private static double[] longitudes = new double[POINTS];
+  private static int[] gridZones = new int[POINTS];
+  private static double[] eastings = new double[POINTS];
+  private static double[] northings = new double[POINTS];
+  private static double[] outLatitudes = new double[POINTS];
+  private static double[] outLongitudes = new double[POINTS];
+  private static int[] outGridZones = new int[POINTS];
+  private static double[] outEastings = new double[POINTS];
+  private static double[] outNorthings = new double[POINTS];
+  private static char[] mgrs = new char[POINTS * MGRS.MAX_LENGTH];
+  private static int[] mgrsEnds = new int[POINTS];
+  private static int[] dmsDegrees = new int[POINTS];
+  private static int[] dmsMinutes = new int[POINTS];
+  private static double[] dmsSeconds = new double[POINTS];
+  private static int[] compactEastings = new int[POINTS];
+  private static double[] scales = new double[POINTS];
+  private static double[] convergences = new double[POINTS];
+  private static int[] compactNorthings = new int[POINTS];
+  private static char[] dms = new char[POINTS * CoordinateBatch.MAX_DMS_LENGTH];
+  private static long[] geohashes = new long[POINTS];
+  private static long[] mortonKeys = new long[POINTS];
+  private static char[] geohashText = new char[POINTS * 9];
+  private static double[] polarLatitudes = new double[POINTS];
+  private static double[] polarLongitudes = new double[POINTS];
+  private static int[] polarGridZones = new int[POINTS];
+  private static byte[] nmea;
+  private static int[] times = new int[POINTS];
+  private static double[] polarEastings = new double[POINTS];
+  private static double[] polarNorthings = new double[POINTS];
+  private static double[] trackLatitudes = new double[POINTS];
+  private static double[] trackLongitudes = new double[POINTS];
+  private static int[] trackGridZones = new int[POINTS];
+  private static double[] trackEastings = new double[POINTS];
+  private static double[] trackNorthings = new double[POINTS];
+  private static double[] trackScales = new double[POINTS];
+  private static double[] trackConvergences = new double[POINTS];
+  private static double[] measures = new double[POINTS];
+  private static List<Case> cases = new ArrayList<Case>();
+  //
+  // Results are accumulated here so that the work cannot be discarded.
+  //
+  private static volatile double sink;
+
+
+  private CoordinateBenchmark() {
+  }
+
+  /**
+  * <p>Runs the benchmark.</p>
+  * @param args The case-name filters; no arguments runs every case.
+  */
+
+  public static void main(String[] args) {
+    Random random = new Random(SEED);
+    for (int i = 0; i < POINTS; i++) {
+
+      /* Redraw any point whose grid zone the inverse rejects */
+
+      do {
+        latitudes[i] = random.nextDouble() * 179.0 - 89.5;
+        longitudes[i] = random.nextDouble() * 359.0 - 179.5;
+        CoordinateBatch.latLonToUTM(latitudes, longitudes, gridZones,
+          eastings, northings, i, 1, CoordinateUtil.WGS_84_DATUM);
+      } while (!CoordinateBatch.utmToLatLon(gridZones, eastings, northings,
+        outLatitudes, outLongitudes, i, 1, CoordinateUtil.WGS_84_DATUM));
+    }
+
+    /* Polar points, in runs, as from a polar orbit or an ice survey */
+
+    for (int i = 0; i < POINTS; i++) {
+      polarLatitudes[i] = (i / 1024) % 2 == 0 ?
+        84.5 + random.nextDouble() * 5.0 : -80.5 - random.nextDouble() * 9.0;
+      polarLongitudes[i] = random.nextDouble() * 359.0 - 179.5;
+    }
+    CoordinateBatch.latLonToUTM(polarLatitudes, polarLongitudes,
+      polarGridZones, polarEastings, polarNorthings,
+      CoordinateUtil.WGS_84_DATUM);
+
+    /* A track of about 5 m steps, east across the 13/14 zone boundary */
+
+    trackLatitudes[0] = 32.0;
+    trackLongitudes[0] = -104.0;
+    for (int i = 1; i < POINTS; i++) {
+      double heading = random.nextDouble() * Math.PI;
+      trackLatitudes[i] = trackLatitudes[i - 1] +
+        0.00005 * Math.cos(heading);
+      trackLongitudes[i] = trackLongitudes[i - 1] +
+        0.00006 * Math.sin(heading);
+    }
+    CoordinateBatch.latLonToUTM(trackLatitudes, trackLongitudes,
+      trackGridZones, trackEastings, trackNorthings, trackScales,
+      trackConvergences, 0, POINTS, CoordinateUtil.WGS_84_DATUM);
+
+    /* A receiver log of the points, as GGA sentences */
+
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; i < POINTS; i++) {
+      String body = "GPGGA," + formatNMEATime(i) + "," +
+        formatNMEAAngle(latitudes[i], 2, 'N', 'S') + "," +
+        formatNMEAAngle(longitudes[i], 3, 'E', 'W') +
+        ",1,08,0.9,545.4,M,46.9,M,,";
+      int sum = 0;
+      for (int j = 0; j < body.length(); j++) {
+        sum ^= body.charAt(j);
+      }
+      log.append('$').append(body).append('*');
+      log.append(String.format("%02X", Integer.valueOf(sum))).append("\r\n");
+    }
+    nmea = log.toString().getBytes();
+    addCases();
+    System.out.println("Points per operation: " + POINTS);
+    for (int i = 0; i < cases.size(); i++) {
+      Case c = cases.get(i);
+      if (isSelected(c.name, args)) {
+        run(c);
+      }
+    }
+    if (sink == 42) {
+      System.out.println();
+    }
+  }
+
+  private static String formatNMEATime(int second) {
+    second %= 86400;
+    return String.format("%02d%02d%02d.00", Integer.valueOf(second / 3600),
+      Integer.valueOf(second / 60 % 60), Integer.valueOf(second % 60));
+  }
+
+  private static String formatNMEAAngle(double angle, int digits,
+      char positive, char negative) {
+    double abs = Math.abs(angle);
+    int degrees = (int) abs;
+    return String.format("%0" + digits + "d%07.4f,%c",
+      Integer.valueOf(degrees), Double.valueOf((abs - degrees) * 60),
+      Character.valueOf(angle < 0 ? negative : positive));
+  }
+
+  private static boolean isSelected(String name, String[] filters) {
+    if (filters.length == 0) {
+      return true;
+    }
+    for (int i = 0; i < filters.length; i++) {
+      if (name.indexOf(filters[i]) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void run(Case c) {
+    long end = System.currentTimeMillis() + WARMUP_MILLIS;
+    while (System.currentTimeMillis() < end) {
+      c.run();
+    }
+    double best = Double.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      int count = 0;
+      long start = System.nanoTime();
+      long stop = start + ROUND_MILLIS * 1000000L;
+      long now;
+      do {
+        c.run();
+        count++;
+        now = System.nanoTime();
+      } while (now < stop);
+      best = Math.min(best, (now - start) / ((double) count * POINTS));
+    }
+    System.out.println(pad(c.name, 42) + pad(format(best), 10) +
+      " ns/point " + pad(format(1000.0 / best), 10) + " Mpoints/s");
+  }
+
+  private static String format(double value) {
+    return String.valueOf(Math.round(value * 100) / 100.0);
+  }
+
+  private static String pad(String str, int width) {
+    StringBuffer buffer = new StringBuffer(str);
+    while (buffer.length() < width) {
+      buffer.append(' ');
+    }
+    return buffer.toString();
+  }
+
+  //
+  // The cases:
+  //
+
+  private static void addCases() {
+    cases.add(new Case("latLonToUTM.scalar") {
+      void run() {
+        LatLon latLon = new LatLon();
+        UTM utm = new UTM();
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          latLon.setLatitude(latitudes[i]);
+          latLon.setLongitude(longitudes[i]);
+          CoordinateUtil.latLonToUTM(latLon, utm, CoordinateUtil.WGS_84_DATUM);
+          sum += utm.getX();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("latLonToUTM.batch") {
+      void run() {
+        CoordinateBatch.latLonToUTM(latitudes, longitudes, outGridZones,
+          outEastings, outNorthings, CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("latLonToUTM.batch+scale+convergence") {
+      void run() {
+        CoordinateBatch.latLonToUTM(latitudes, longitudes, outGridZones,
+          outEastings, outNorthings, scales, convergences, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1] + scales[0] + convergences[0];
+      }
+    });
+    cases.add(new Case("latLonToUTM.batch+geohash+morton") {
+      void run() {
+        SpatialKeys.latLonToUTM(latitudes, longitudes, outGridZones,
+          outEastings, outNorthings, geohashes, 9, mortonKeys, 1.0, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += geohashes[POINTS - 1] + mortonKeys[POINTS - 1];
+      }
+    });
+    cases.add(new Case("keys.formatGeohashes") {
+      void run() {
+        SpatialKeys.formatGeohashes(geohashes, 9, 0, POINTS, geohashText);
+        sink += geohashText[POINTS - 1];
+      }
+    });
+    cases.add(new Case("latLonToUTMInZone.batch") {
+      int zone = CoordinateUtil.packGridZone("13S");
+
+      void run() {
+        CoordinateBatch.latLonToUTMInZone(latitudes, longitudes, zone,
+          outEastings, outNorthings, CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("latLonToUTM.compact") {
+      void run() {
+        CompactCoordinates.latLonToUTM(latitudes, longitudes, outGridZones,
+          compactEastings, compactNorthings, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += compactEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("utmToLatLon.scalar") {
+      void run() {
+        LatLon latLon = new LatLon();
+        UTM utm = new UTM();
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          utm.setGridZone(CoordinateUtil.unpackGridZone(gridZones[i]));
+          utm.setX(eastings[i]);
+          utm.setY(northings[i]);
+          CoordinateUtil.utmToLatLon(utm, latLon, CoordinateUtil.WGS_84_DATUM);
+          sum += latLon.getLatitude();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("utmToLatLon.batch") {
+      void run() {
+        CoordinateBatch.utmToLatLon(gridZones, eastings, northings,
+          outLatitudes, outLongitudes, CoordinateUtil.WGS_84_DATUM);
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("datumShift.molodensky") {
+      void run() {
+        System.arraycopy(latitudes, 0, outLatitudes, 0, POINTS);
+        System.arraycopy(longitudes, 0, outLongitudes, 0, POINTS);
+        DatumShift.NAD27_CONUS_TO_WGS84.transform(outLatitudes, outLongitudes,
+          null, 0, POINTS);
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("datumShift.helmert") {
+      DatumShift shift = DatumShift.helmert("benchmark",
+        CoordinateUtil.CLARKE_1866_DATUM, CoordinateUtil.WGS_84_DATUM,
+        -8, 160, 176, 0.1, -0.2, 0.3, 1.5);
+
+      void run() {
+        System.arraycopy(latitudes, 0, outLatitudes, 0, POINTS);
+        System.arraycopy(longitudes, 0, outLongitudes, 0, POINTS);
+        shift.transform(outLatitudes, outLongitudes, null, 0, POINTS);
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("datumShift.molodensky+latLonToUTM.batch") {
+      void run() {
+        System.arraycopy(latitudes, 0, outLatitudes, 0, POINTS);
+        System.arraycopy(longitudes, 0, outLongitudes, 0, POINTS);
+        DatumShift.NAD27_CONUS_TO_WGS84.transform(outLatitudes, outLongitudes,
+          null, 0, POINTS);
+        CoordinateBatch.latLonToUTM(outLatitudes, outLongitudes, outGridZones,
+          outEastings, outNorthings, CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("unsignedChar.getCharPlusOffset") {
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          int offset = (int) ((latitudes[i] + 90.0) / 8.0);
+          sum += UnsignedChar.getASCIIValue(
+            UnsignedChar.getCharPlusOffset('C', offset));
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("band.getBandIndex") {
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          sum += CoordinateUtil.getBandIndex(CoordinateUtil.getBand(
+            (int) ((latitudes[i] + 90.0) / 9.0)));
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("dms.convertDecimalToDMS.scalar") {
+      void run() {
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          sum += CoordinateUtil.convertDecimalToDMS(latitudes[i]).getSeconds();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("dms.convertDecimalToDMS.batch") {
+      void run() {
+        CoordinateBatch.convertDecimalToDMS(latitudes, dmsDegrees, dmsMinutes,
+          dmsSeconds, 0, POINTS, 2);
+        sink += dmsSeconds[POINTS - 1];
+      }
+    });
+    cases.add(new Case("dms.format.decimalFormat") {
+      DecimalFormat format = new DecimalFormat("00.00");
+
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          DMS d = CoordinateUtil.convertDecimalToDMS(Math.abs(latitudes[i]));
+          sum += (d.getDegrees() + "\u00b0" + d.getMinutes() + "'" +
+            format.format(d.getSeconds()) + "\"" +
+            (latitudes[i] < 0 ? 'S' : 'N')).length();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("dms.formatDMS.batch") {
+      void run() {
+        CoordinateBatch.formatDMS(latitudes, 0, POINTS, 2, 'N', 'S', dms,
+          mgrsEnds);
+        sink += mgrsEnds[POINTS - 1];
+      }
+    });
+    cases.add(new Case("ups.latLonToUTM.batch") {
+      void run() {
+        CoordinateBatch.latLonToUTM(polarLatitudes, polarLongitudes,
+          outGridZones, outEastings, outNorthings,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("ups.latLonToUPS") {
+      void run() {
+        CoordinateBatch.latLonToUPS(polarLatitudes, polarLongitudes,
+          outGridZones, outEastings, outNorthings, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("ups.utmToLatLon.batch") {
+      void run() {
+        CoordinateBatch.utmToLatLon(polarGridZones, polarEastings,
+          polarNorthings, outLatitudes, outLongitudes,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("ups.upsToLatLon") {
+      void run() {
+        CoordinateBatch.upsToLatLon(polarGridZones, polarEastings,
+          polarNorthings, outLatitudes, outLongitudes, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("nmea.read") {
+      void run() {
+        NMEAReader reader = new NMEAReader(new ByteArrayInputStream(nmea));
+        try {
+          reader.read(times, outLatitudes, outLongitudes, 0, POINTS);
+        }
+        catch (IOException e) {
+          throw new IllegalStateException(e.getMessage());
+        }
+        sink += outLatitudes[POINTS - 1];
+      }
+    });
+    cases.add(new Case("nmea.read+latLonToUTM.batch") {
+      void run() {
+        NMEAReader reader = new NMEAReader(new ByteArrayInputStream(nmea));
+        try {
+          reader.read(times, outLatitudes, outLongitudes, 0, POINTS);
+        }
+        catch (IOException e) {
+          throw new IllegalStateException(e.getMessage());
+        }
+        CoordinateBatch.latLonToUTM(outLatitudes, outLongitudes, outGridZones,
+          outEastings, outNorthings, CoordinateUtil.WGS_84_DATUM);
+        sink += outEastings[POINTS - 1];
+      }
+    });
+    cases.add(new Case("densify.projectBox (one tile per point)") {
+      GeometryProjector projector = new GeometryProjector(
+        CoordinateFileConverter.LATLON_TO_UTM, CoordinateUtil.WGS_84_DATUM,
+        CoordinateUtil.packGridZone("13S"), 0.1);
+      double[] bounds = new double[4];
+
+      void run() {
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          double south = 30.0 + (i & 63) * 0.1;
+          double west = -108.0 + ((i >> 6) & 63) * 0.1;
+          projector.projectBox(south, west, south + 0.01, west + 0.01);
+          projector.getBounds(bounds);
+          sum += bounds[0];
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("grid.generate (one tile per 1024 points)") {
+      GridLineGenerator generator =
+        new GridLineGenerator(CoordinateUtil.WGS_84_DATUM);
+
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS >> 10; i++) {
+          double south = 30.0 + (i & 7) * 0.25;
+          double west = -108.0 + ((i >> 3) & 7) * 0.25;
+          sum += generator.generate(south, west, south + 0.25, west + 0.25,
+            1000.0).getLineCount();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("grid.getTile (cached, one tile per point)") {
+      GridLineGenerator generator =
+        new GridLineGenerator(CoordinateUtil.WGS_84_DATUM);
+
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          sum += generator.getTile(10, 204 + (i & 7), 410 + ((i >> 3) & 7),
+            1000.0).getLineCount();
+        }
+        sink += sum;
+      }
+    });
+    cases.add(new Case("index.build") {
+      void run() {
+        ZoneIndex index = new ZoneIndex(gridZones, eastings, northings, 0,
+          POINTS, 1000.0);
+        sink += index.getPointCount();
+      }
+    });
+    cases.add(new Case("index.findNearest (k = 8)") {
+      ZoneIndex index = new ZoneIndex(gridZones, eastings, northings, 0,
+        POINTS, 1000.0);
+      int[] results = new int[8];
+
+      void run() {
+        int sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+          sum += index.findNearest(gridZones[i], eastings[i] + 10.0,
+            northings[i] + 10.0, 8, results, null);
+        }
+        sink += sum + results[0];
+      }
+    });
+    cases.add(new Case("measure.getDistances (track)") {
+      void run() {
+        GridMeasure.getDistances(trackGridZones, trackEastings,
+          trackNorthings, trackScales, measures, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += measures[0];
+      }
+    });
+    cases.add(new Case("measure.getBearings (track)") {
+      void run() {
+        GridMeasure.getBearings(trackGridZones, trackEastings,
+          trackNorthings, trackConvergences, measures, 0, POINTS,
+          CoordinateUtil.WGS_84_DATUM);
+        sink += measures[0];
+      }
+    });
+    cases.add(new Case("measure.getArea (track as one ring)") {
+      void run() {
+        sink += GridMeasure.getArea(trackGridZones, trackEastings,
+          trackNorthings, 0, POINTS, CoordinateUtil.WGS_84_DATUM);
+      }
+    });
+    cases.add(new Case("mgrs.utmToMGRS.batch") {
+      void run() {
+        MGRS.utmToMGRS(gridZones, eastings, northings, 0, POINTS,
+          MGRS.MAX_PRECISION, CoordinateUtil.WGS_84_DATUM, mgrs, mgrsEnds);
+        sink += mgrsEnds[POINTS - 1];
+      }
+    });
+  }
+
+  /**
+  * <p>A benchmark case:  one run converts every point once.</p>
+  */
+
+  private abstract static class Case {
+    private String name;
+
+    Case(String name) {
+      this.name = name;
+    }
+
+    abstract void run();
+  }
+}
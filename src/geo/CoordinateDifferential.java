@@ -0,0 +1,780 @@
+package geo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+* <p><code>CoordinateDifferential</code> compares the Java conversions with
+* the C routines from which they were ported
+* (<code>misc/convert_datum.c</code>), for accuracy and speed.  It
+* generates random points, worldwide, together with edge cases:  zone and
+* band boundaries, the V and X bands, the polar limits and the poles, and
+* the equator.  The C routines convert them, by way of the driver
+* <code>misc/convert_datum_driver.c</code>, and so does each Java engine;
+* for each engine, the maximum and RMS deviation from the C results, and
+* the throughput of both, are reported.  The inverse conversions start
+* from the C forward results.  An engine for a subset of the points, e.g.,
+* the UPS conversions, converts and is compared on only the points whose C
+* results are in that subset.</p>
+* <p>The deliberate differences from the C routines (see
+* {@link CoordinateUtil}), i.e., the forward conversion in grid zone 31X
+* and the inverse conversion in grid zones 34V, 36V, and 37V (and 31X,
+* whose C forward results are the inverse's input), are counted as known
+* deviations and otherwise excluded.  Any other grid zone or
+* success/failure mismatch, or a deviation beyond the tolerances, fails the
+* comparison, with exit status 1.</p>
+* <p>It runs as a command-line utility (see also the <code>run.diff</code>
+* target in <code>build.xml</code>, which compiles the driver):</p>
+* <ul>
+* <li><code>gcc -O2 -o convert_datum_driver convert_datum_driver.c
+* convert_datum.c -lm</code>
+* <li><code>CoordinateDifferential ./convert_datum_driver</code>
+* <li><code>CoordinateDifferential -points 5000000 -datum CLARKE_1866
+* ./convert_datum_driver</code>
+* </ul>
+* @author Jerry Smith
+* @version $Id: CoordinateDifferential.java $
+*/
+
+public final class CoordinateDifferential {
+  //
+  // Constants:
+  //
+  private static final int DEFAULT_POINTS = 1000000;
+  private static final long DEFAULT_SEED = 19980525L;
+  private static final double FORWARD_TOLERANCE = 1e-6;    /* meters */
+  private static final double INVERSE_TOLERANCE = 1e-10;   /* degrees */
+  //
+  // CompactCoordinates rounds to 1 cm and 1 microdegree:  half a unit on
+  // each axis, and for the inverse, the rounding of its input, too.
+  //
+  private static final double COMPACT_FORWARD_TOLERANCE = 0.00708;
+  private static final double COMPACT_INVERSE_TOLERANCE = 1e-6;
+  private static final double EDGE = 1e-9;                 /* degrees */
+  private static final int EDGE_CASE_INTERVAL = 10;
+  private static final int GRID_ZONE_LENGTH = 4;
+  private static final int LL_RECORD = 16;
+  private static final int UTM_RECORD = GRID_ZONE_LENGTH + 16;
+  //
+  // The points, the C results, and the Java results:
+  //
+  private static int count;
+  private static int datum;
+  private static double[] latitudes, longitudes;
+  private static int[] cGridZones;
+  private static double[] cEastings, cNorthings;
+  private static double[] cLatitudes, cLongitudes;
+  private static int[] gridZones;
+  private static double[] eastings, northings;
+  private static double[] outLatitudes, outLongitudes;
+  private static boolean passed = true;
+
+
+  private CoordinateDifferential() {
+  }
+
+  /**
+  * <p>Runs the comparison.</p>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int points = DEFAULT_POINTS;
+    long seed = DEFAULT_SEED;
+    datum = CoordinateUtil.WGS_84_DATUM;
+    int first = 0;
+    try {
+      while (first < args.length - 1) {
+        if (args[first].equals("-points")) {
+          points = Integer.parseInt(args[first + 1]);
+        }
+        else if (args[first].equals("-seed")) {
+          seed = Long.parseLong(args[first + 1]);
+        }
+        else if (args[first].equals("-datum")) {
+          Ellipsoid ellipsoid = Ellipsoid.forName(args[first + 1]);
+          datum = ellipsoid == null ? -1 : ellipsoid.getDatum();
+        }
+        else {
+          break;
+        }
+        first += 2;
+      }
+    }
+    catch (NumberFormatException e) {
+      first = -1;
+    }
+    if (first < 0 || args.length != first + 1 || points <= 0) {
+      System.out.println("Usage:  java " +
+        CoordinateDifferential.class.getName() +
+        " [-points <n>] [-seed <n>] [-datum <name>] <driver>");
+      return;
+    }
+    if (datum < CoordinateUtil.CLARKE_1866_DATUM ||
+        datum > CoordinateUtil.WGS_84_DATUM) {
+      System.out.println("The C routines support only the CLARKE_1866, " +
+        "GRS_80, and WGS_84 datums.");
+      return;
+    }
+    String driver = args[first];
+    try {
+      generate(points, seed);
+      compareForward(driver);
+      compareInverse(driver);
+    }
+    catch (IOException e) {
+      System.out.println("Comparison failed: " + e.getMessage());
+      System.exit(1);
+    }
+    System.out.println(passed ? "PASSED" : "FAILED");
+    System.exit(passed ? 0 : 1);
+  }
+
+  //
+  // Random points, with every tenth an edge case.
+  //
+
+  private static void generate(int points, long seed) {
+    count = points;
+    latitudes = new double[count];
+    longitudes = new double[count];
+    Random random = new Random(seed);
+    int edgeCases = 0;
+    for (int i = 0; i < count; i++) {
+      double latitude = random.nextDouble() * 180.0 - 90.0;
+      double longitude = random.nextDouble() * 360.0 - 180.0;
+      double offset = (random.nextInt(3) - 1) * EDGE;
+      if (i % EDGE_CASE_INTERVAL == 0) {
+        edgeCases++;
+        switch ((i / EDGE_CASE_INTERVAL) % 6) {
+        case 0:   /* zone boundaries */
+          longitude = -180.0 + 6 * random.nextInt(60) + offset;
+          break;
+        case 1:   /* band boundaries */
+          latitude = -80.0 + 8 * random.nextInt(21) + offset;
+          break;
+        case 2:   /* the V band, and its zone boundaries */
+          latitude = 56.0 + random.nextDouble() * 8.0;
+          longitude = random.nextBoolean() ?
+            random.nextDouble() * 42.0 : 3 * random.nextInt(15) + offset;
+          break;
+        case 3:   /* the X band, and its zone boundaries */
+          latitude = 72.0 + random.nextDouble() * 12.0;
+          longitude = random.nextBoolean() ?
+            random.nextDouble() * 42.0 : 3 * random.nextInt(15) + offset;
+          break;
+        case 4:   /* the polar limits, and the poles */
+          double[] limits = {-90.0, -80.0, 84.0, 90.0};
+          latitude = limits[random.nextInt(limits.length)];
+          latitude += Math.abs(latitude) == 90.0 ?
+            -Math.signum(latitude) * Math.abs(offset) : offset;
+          break;
+        default:  /* the equator */
+          latitude = offset;
+          break;
+        }
+      }
+      latitudes[i] = latitude;
+      longitudes[i] = longitude;
+    }
+    System.out.println("Points: " + count + ", including " + edgeCases +
+      " edge cases; datum " + Ellipsoid.forDatum(datum).getName());
+  }
+
+  //
+  // Engine:  lat/lon to UTM.
+  //
+
+  private static void compareForward(String driver) throws IOException {
+    File input = File.createTempFile("differential", ".ll");
+    File output = File.createTempFile("differential", ".utm");
+    input.deleteOnExit();
+    output.deleteOnExit();
+    ByteBuffer buffer = allocate(count * LL_RECORD);
+    for (int i = 0; i < count; i++) {
+      buffer.putDouble(latitudes[i]).putDouble(longitudes[i]);
+    }
+    write(input, buffer);
+    long nanos = run(driver, "-latlon", input, output);
+    buffer = read(output, count * UTM_RECORD);
+    cGridZones = new int[count];
+    cEastings = new double[count];
+    cNorthings = new double[count];
+    byte[] zone = new byte[GRID_ZONE_LENGTH];
+    for (int i = 0; i < count; i++) {
+      buffer.get(zone);
+      cGridZones[i] = CoordinateUtil.packGridZone(new String(zone, 0,
+        getLength(zone), "US-ASCII"));
+      cEastings[i] = buffer.getDouble();
+      cNorthings[i] = buffer.getDouble();
+    }
+    System.out.println("latLonToUTM:");
+    System.out.println("  C        " + format(nanos / (double) count) +
+      " ns/point");
+
+    gridZones = new int[count];
+    eastings = new double[count];
+    northings = new double[count];
+    List<Engine> engines = new ArrayList<Engine>();
+    engines.add(new Engine("scalar") {
+      void run() {
+        LatLon latLon = new LatLon();
+        UTM utm = new UTM();
+        for (int i = 0; i < count; i++) {
+          latLon.setLatitude(latitudes[i]);
+          latLon.setLongitude(longitudes[i]);
+          CoordinateUtil.latLonToUTM(latLon, utm, datum);
+          gridZones[i] = CoordinateUtil.packGridZone(utm.getGridZone());
+          eastings[i] = utm.getX();
+          northings[i] = utm.getY();
+        }
+      }
+    });
+    engines.add(new Engine("batch") {
+      void run() {
+        CoordinateBatch.latLonToUTM(latitudes, longitudes, gridZones,
+          eastings, northings, datum);
+      }
+    });
+    final int[] ups = getPoints(true);
+    final double[] upsLatitudes = gather(latitudes, ups);
+    final double[] upsLongitudes = gather(longitudes, ups);
+    final int[] upsGridZones = new int[ups.length];
+    final double[] upsEastings = new double[ups.length];
+    final double[] upsNorthings = new double[ups.length];
+    engines.add(new Engine("ups", ups) {
+      void run() {
+        CoordinateBatch.latLonToUPS(upsLatitudes, upsLongitudes,
+          upsGridZones, upsEastings, upsNorthings, 0, ups.length, datum);
+        scatter(upsGridZones, ups, gridZones);
+        scatter(upsEastings, ups, eastings);
+        scatter(upsNorthings, ups, northings);
+      }
+    });
+
+    /*
+     * In the C grid zone of each point, a run of points per zone.  At the
+     * edges of the special zones, e.g., 31V at 0E or 56N, the C result is
+     * labeled with the special zone but projected from the standard
+     * central meridian, and at 72N, it may be labeled with a zone that
+     * does not exist, e.g., 34X; there, the conversion in the zone
+     * deviates, or fails.
+     */
+
+    final int[] utm = getPointsByZone();
+    final boolean[] offMeridian = getOffMeridian(utm);
+    final double[] zoneLatitudes = gather(latitudes, utm);
+    final double[] zoneLongitudes = gather(longitudes, utm);
+    final int[] zoneGridZones = gather(cGridZones, utm);
+    final double[] zoneEastings = new double[utm.length];
+    final double[] zoneNorthings = new double[utm.length];
+    engines.add(new Engine("inZone", utm) {
+      boolean isKnown(int j) {
+        return offMeridian[j];
+      }
+
+      void run() {
+        for (int from = 0, to; from < utm.length; from = to) {
+          to = from + 1;
+          while (to < utm.length &&
+              zoneGridZones[to] == zoneGridZones[from]) {
+            to++;
+          }
+          CoordinateBatch.latLonToUTMInZone(zoneLatitudes, zoneLongitudes,
+            zoneGridZones[from], zoneEastings, zoneNorthings, from,
+            to - from, datum);
+        }
+        scatter(zoneGridZones, utm, gridZones);
+        scatter(zoneEastings, utm, eastings);
+        scatter(zoneNorthings, utm, northings);
+      }
+    });
+    final int[] compactEastings = new int[count];
+    final int[] compactNorthings = new int[count];
+    engines.add(new Engine("compact") {
+      double getTolerance(double tolerance) {
+        return COMPACT_FORWARD_TOLERANCE;
+      }
+
+      void run() {
+        CompactCoordinates.latLonToUTM(latitudes, longitudes, gridZones,
+          compactEastings, compactNorthings, 0, count, datum);
+        toMeters(compactEastings, eastings);
+        toMeters(compactNorthings, northings);
+      }
+    });
+    int known = CoordinateUtil.packGridZone("31X");
+    for (int e = 0; e < engines.size(); e++) {
+      Engine engine = engines.get(e);
+      Deviation deviation = new Deviation(engine.name,
+        engine.getTolerance(FORWARD_TOLERANCE), "m");
+      deviation.nanos = time(engine);
+      deviation.points = engine.getCount();
+      for (int j = 0; j < deviation.points; j++) {
+        int i = engine.getPoint(j);
+        if (cGridZones[i] == known || engine.isKnown(j)) {
+          deviation.known++;
+        }
+        else if (gridZones[i] != cGridZones[i]) {
+          deviation.mismatches++;
+        }
+        else {
+          deviation.add(Math.hypot(eastings[i] - cEastings[i],
+            northings[i] - cNorthings[i]));
+        }
+      }
+      deviation.report();
+    }
+  }
+
+  //
+  // Inverse:  UTM to lat/lon, from the C forward results.
+  //
+
+  private static void compareInverse(String driver) throws IOException {
+    File input = File.createTempFile("differential", ".utm");
+    File output = File.createTempFile("differential", ".ll");
+    input.deleteOnExit();
+    output.deleteOnExit();
+    ByteBuffer buffer = allocate(count * UTM_RECORD);
+    for (int i = 0; i < count; i++) {
+      byte[] zone = CoordinateUtil.unpackGridZone(cGridZones[i]).getBytes(
+        "US-ASCII");
+      buffer.put(zone).put(new byte[GRID_ZONE_LENGTH - zone.length]);
+      buffer.putDouble(cEastings[i]).putDouble(cNorthings[i]);
+    }
+    write(input, buffer);
+    long nanos = run(driver, "-utm", input, output);
+    buffer = read(output, count * LL_RECORD);
+    cLatitudes = new double[count];
+    cLongitudes = new double[count];
+    for (int i = 0; i < count; i++) {
+      cLatitudes[i] = buffer.getDouble();
+      cLongitudes[i] = buffer.getDouble();
+    }
+    System.out.println("utmToLatLon:");
+    System.out.println("  C        " + format(nanos / (double) count) +
+      " ns/point");
+
+    outLatitudes = new double[count];
+    outLongitudes = new double[count];
+    List<Engine> engines = new ArrayList<Engine>();
+    engines.add(new Engine("scalar") {
+      void run() {
+        LatLon latLon = new LatLon();
+        UTM utm = new UTM();
+        for (int i = 0; i < count; i++) {
+          utm.setGridZone(CoordinateUtil.unpackGridZone(cGridZones[i]));
+          utm.setX(cEastings[i]);
+          utm.setY(cNorthings[i]);
+          if (CoordinateUtil.utmToLatLon(utm, latLon, datum)) {
+            outLatitudes[i] = latLon.getLatitude();
+            outLongitudes[i] = latLon.getLongitude();
+          }
+          else {
+            outLatitudes[i] = outLongitudes[i] = Double.NaN;
+          }
+        }
+      }
+    });
+    engines.add(new Engine("batch") {
+      void run() {
+        CoordinateBatch.utmToLatLon(cGridZones, cEastings, cNorthings,
+          outLatitudes, outLongitudes, datum);
+      }
+    });
+    final int[] ups = getPoints(true);
+    final int[] upsGridZones = gather(cGridZones, ups);
+    final double[] upsEastings = gather(cEastings, ups);
+    final double[] upsNorthings = gather(cNorthings, ups);
+    final double[] upsLatitudes = new double[ups.length];
+    final double[] upsLongitudes = new double[ups.length];
+    engines.add(new Engine("ups", ups) {
+      void run() {
+        CoordinateBatch.upsToLatLon(upsGridZones, upsEastings, upsNorthings,
+          upsLatitudes, upsLongitudes, 0, ups.length, datum);
+        scatter(upsLatitudes, ups, outLatitudes);
+        scatter(upsLongitudes, ups, outLongitudes);
+      }
+    });
+
+    /* The round trip:  from the C forward results, in centimeters */
+
+    final int[] compactEastings = toCentimeters(cEastings);
+    final int[] compactNorthings = toCentimeters(cNorthings);
+    final int[] compactLatitudes = new int[count];
+    final int[] compactLongitudes = new int[count];
+    engines.add(new Engine("compact") {
+      double getTolerance(double tolerance) {
+        return COMPACT_INVERSE_TOLERANCE;
+      }
+
+      void run() {
+        CompactCoordinates.utmToLatLon(cGridZones, compactEastings,
+          compactNorthings, compactLatitudes, compactLongitudes, 0, count,
+          datum);
+        CompactCoordinates.toDegrees(compactLatitudes, outLatitudes, 0,
+          count);
+        CompactCoordinates.toDegrees(compactLongitudes, outLongitudes, 0,
+          count);
+      }
+    });
+
+    /* 31X too:  the C forward results there are not usable input */
+
+    int[] known = {
+      CoordinateUtil.packGridZone("34V"), CoordinateUtil.packGridZone("36V"),
+      CoordinateUtil.packGridZone("37V"), CoordinateUtil.packGridZone("31X")
+    };
+    for (int e = 0; e < engines.size(); e++) {
+      Engine engine = engines.get(e);
+      Deviation deviation = new Deviation(engine.name,
+        engine.getTolerance(INVERSE_TOLERANCE), "deg");
+      deviation.nanos = time(engine);
+      deviation.points = engine.getCount();
+      for (int j = 0; j < deviation.points; j++) {
+        int i = engine.getPoint(j);
+        boolean cFailed = Double.isNaN(cLatitudes[i]);
+        boolean failed = Double.isNaN(outLatitudes[i]);
+        if (cGridZones[i] == known[0] || cGridZones[i] == known[1] ||
+            cGridZones[i] == known[2] || cGridZones[i] == known[3]) {
+          deviation.known++;
+        }
+        else if (cFailed || failed) {
+          if (cFailed != failed) {
+            deviation.mismatches++;
+          }
+        }
+        else {
+
+          /* The longitude deviation, as arc, i.e., scaled by cos(lat) */
+
+          deviation.add(Math.hypot(outLatitudes[i] - cLatitudes[i],
+            getLongitudeDifference(outLongitudes[i], cLongitudes[i]) *
+              Math.cos(cLatitudes[i] * Math.PI / 180.0)));
+        }
+      }
+      deviation.report();
+    }
+  }
+
+  //
+  // The indices of the polar points, by latitude, as in
+  // CoordinateBatch.latLonToUPS(), or else of the points whose C forward
+  // results are in UTM grid zones.  (At exactly 80N, the C band letter is
+  // Y, which is neither.)
+  //
+
+  private static int[] getPoints(boolean ups) {
+    int[] points = new int[count];
+    int n = 0;
+    for (int i = 0; i < count; i++) {
+      boolean polar = latitudes[i] > 84.0 || latitudes[i] < -80.0;
+      if (ups ? polar : !polar && cGridZones[i] >= 0 &&
+          CoordinateUtil.getBandIndex(
+            CoordinateUtil.getZoneBand(cGridZones[i])) >= 0) {
+        points[n++] = i;
+      }
+    }
+    return Arrays.copyOf(points, n);
+  }
+
+  //
+  // The indices of the points whose C forward results are in UTM grid
+  // zones, ordered by grid zone.
+  //
+
+  private static int[] getPointsByZone() {
+    int[] points = getPoints(false);
+    long[] keys = new long[points.length];
+    for (int j = 0; j < points.length; j++) {
+      keys[j] = (long) cGridZones[points[j]] << 32 | points[j];
+    }
+    Arrays.sort(keys);
+    for (int j = 0; j < points.length; j++) {
+      points[j] = (int) keys[j];
+    }
+    return points;
+  }
+
+  //
+  // Whether or not each point is projected, by the C routines, from a
+  // central meridian other than that of its grid zone, or has a grid zone
+  // without one.
+  //
+
+  private static boolean[] getOffMeridian(int[] points) {
+    boolean[] offMeridian = new boolean[points.length];
+    Lambda0 projected = new Lambda0();
+    Lambda0 zone = new Lambda0();
+    for (int j = 0; j < points.length; j++) {
+      int i = points[j];
+      CoordinateUtil.getGridZone(latitudes[i], longitudes[i], projected);
+      offMeridian[j] = CoordinateUtil.getLambda0(cGridZones[i], zone) < 0 ||
+        projected.lambda0 != zone.lambda0;
+    }
+    return offMeridian;
+  }
+
+  private static int[] toCentimeters(double[] meters) {
+    int[] centimeters = new int[meters.length];
+    for (int i = 0; i < meters.length; i++) {
+      centimeters[i] =
+        CompactCoordinates.round(meters[i] * CompactCoordinates.CENTIMETERS);
+    }
+    return centimeters;
+  }
+
+  private static void toMeters(int[] centimeters, double[] meters) {
+    for (int i = 0; i < centimeters.length; i++) {
+      meters[i] = centimeters[i] == CompactCoordinates.INVALID ? Double.NaN :
+        centimeters[i] / CompactCoordinates.CENTIMETERS;
+    }
+  }
+
+  private static double[] gather(double[] values, int[] points) {
+    double[] gathered = new double[points.length];
+    for (int j = 0; j < points.length; j++) {
+      gathered[j] = values[points[j]];
+    }
+    return gathered;
+  }
+
+  private static int[] gather(int[] values, int[] points) {
+    int[] gathered = new int[points.length];
+    for (int j = 0; j < points.length; j++) {
+      gathered[j] = values[points[j]];
+    }
+    return gathered;
+  }
+
+  private static void scatter(double[] gathered, int[] points,
+      double[] values) {
+    for (int j = 0; j < points.length; j++) {
+      values[points[j]] = gathered[j];
+    }
+  }
+
+  private static void scatter(int[] gathered, int[] points, int[] values) {
+    for (int j = 0; j < points.length; j++) {
+      values[points[j]] = gathered[j];
+    }
+  }
+
+  private static double getLongitudeDifference(double lon1, double lon2) {
+    double difference = Math.abs(lon1 - lon2) % 360.0;
+    return Math.min(difference, 360.0 - difference);
+  }
+
+  //
+  // Runs an engine once to warm up, then once timed.
+  //
+
+  private static long time(Engine engine) {
+
+    /* The conversions report failures on stdout; here they are counted */
+
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {
+      }
+    }));
+    try {
+      engine.run();
+      long start = System.nanoTime();
+      engine.run();
+      return System.nanoTime() - start;
+    }
+    finally {
+      System.setOut(out);
+    }
+  }
+
+  //
+  // Runs the C driver; returns the elapsed time that it reports.
+  //
+
+  private static long run(String driver, String direction, File input,
+      File output) throws IOException {
+    ProcessBuilder builder = new ProcessBuilder(driver, direction,
+      String.valueOf(datum), input.getPath(), output.getPath());
+    builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+    Process process = builder.start();
+    BufferedReader reader =
+      new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line = reader.readLine();
+    reader.close();
+    try {
+      if (process.waitFor() != 0 || line == null) {
+        throw new IOException("The driver failed:  " + driver + ".");
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted.");
+    }
+    return (long) Double.parseDouble(line.trim());
+  }
+
+  private static int getLength(byte[] zone) {
+    for (int i = 0; i < zone.length; i++) {
+      if (zone[i] == 0) {
+        return i;
+      }
+    }
+    return zone.length;
+  }
+
+  private static ByteBuffer allocate(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+  }
+
+  private static void write(File file, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = out.getChannel();
+      channel.truncate(0);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static ByteBuffer read(File file, int size) throws IOException {
+    ByteBuffer buffer = allocate(size);
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = in.getChannel();
+      if (channel.size() != size) {
+        throw new IOException("Unexpected driver output size:  " +
+          channel.size() + ".");
+      }
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Unexpected end of driver output.");
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String format(double value) {
+    return String.valueOf(Math.round(value * 10) / 10.0);
+  }
+
+  /**
+  * <p>A Java engine:  one run converts every point, or every point of a
+  * subset.</p>
+  */
+
+  private abstract static class Engine {
+    private String name;
+    private int[] points;
+
+    Engine(String name) {
+      this(name, null);
+    }
+
+    Engine(String name, int[] points) {
+      this.name = name;
+      this.points = points;
+    }
+
+    int getCount() {
+      return points == null ? count : points.length;
+    }
+
+    int getPoint(int j) {
+      return points == null ? j : points[j];
+    }
+
+    //
+    // Whether or not the jth point is a known deviation of this engine.
+    //
+
+    boolean isKnown(int j) {
+      return false;
+    }
+
+    //
+    // The tolerance of this engine, given that of the conversion.
+    //
+
+    double getTolerance(double tolerance) {
+      return tolerance;
+    }
+
+    abstract void run();
+  }
+
+  /**
+  * <p>The deviations of an engine from the C results.</p>
+  */
+
+  private static class Deviation {
+    private String name;
+    private double tolerance;
+    private String unit;
+    private long nanos;
+    private int points;
+    private int compared = 0;
+    private int mismatches = 0;
+    private int known = 0;
+    private double max = 0.0;
+    private double sumOfSquares = 0.0;
+
+    Deviation(String name, double tolerance, String unit) {
+      this.name = name;
+      this.tolerance = tolerance;
+      this.unit = unit;
+    }
+
+    void add(double deviation) {
+      compared++;
+      sumOfSquares += deviation * deviation;
+      if (!(deviation <= max)) {
+        max = deviation;
+      }
+    }
+
+    void report() {
+      double rms = compared == 0 ? 0.0 : Math.sqrt(sumOfSquares / compared);
+      boolean ok = mismatches == 0 && max <= tolerance;
+      StringBuffer buffer = new StringBuffer("  ");
+      buffer.append(name);
+      while (buffer.length() < 11) {
+        buffer.append(' ');
+      }
+      buffer.append(format(nanos / (double) Math.max(points, 1)));
+      buffer.append(" ns/point, max ");
+      buffer.append((float) max).append(' ').append(unit).append(", RMS ");
+      buffer.append((float) rms).append(' ').append(unit);
+      buffer.append(", mismatches ").append(mismatches);
+      buffer.append(", known deviations ").append(known);
+      buffer.append(ok ? "" : "  <-- FAILED");
+      System.out.println(buffer.toString());
+      passed &= ok;
+    }
+  }
+}
@@ -0,0 +1,1036 @@
+package geo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+* <p><code>CoordinateFileConverter</code> converts a delimited text file of
+* coordinates, one coordinate per line, in bulk.  For lat/lon input, each
+* line begins with the latitude and longitude; for UTM input, each line
+* begins with the grid zone, easting, and northing.  Fields are separated
+* by commas, semicolons, tabs, or spaces.  Each output line is the input
+* line with the converted coordinate appended as additional fields.  Lines
+* that do not begin with a coordinate, e.g., a header, are copied through
+* unchanged.</p>
+* <p>An optional {@link DatumShift} transforms the lat/lon coordinates from
+* another datum before they are projected, or transforms the unprojected
+* coordinates to another datum.</p>
+* <p>The input file is memory-mapped and split at line boundaries into
+* regions that are parsed and converted in parallel, directly from the
+* mapped buffers, using {@link CoordinateBatch}.  The converted regions are
+* written to the output file in input order.</p>
+* <p>Long conversions write periodic checkpoints, alongside the output file,
+* recording the input and output offsets and the counts that have been
+* committed to disk.  An interrupted conversion can be resumed from its
+* last checkpoint, and the result is identical to an uninterrupted run.  In
+* append mode, the checkpoint of the previous run is kept, and a later run
+* converts only the complete lines that have since been appended to the
+* input, e.g., to a growing log file.</p>
+* @author Jerry Smith
+* @version $Id: CoordinateFileConverter.java $
+*/
+
+public class CoordinateFileConverter {
+  //
+  // Constants:
+  //
+  /**
+  * <p>Conversion direction:  lat/lon input, UTM output.</p>
+  */
+
+  public static final int LATLON_TO_UTM = 0;
+  /**
+  * <p>Conversion direction:  UTM input, lat/lon output.</p>
+  */
+
+  public static final int UTM_TO_LATLON = 1;
+  /**
+  * <p>The suffix of a checkpoint file, appended to the output file name.</p>
+  */
+
+  public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+  private static final long DEFAULT_CHECKPOINT_INTERVAL = 256L << 20;
+  private static final int FULL = 0;
+  private static final int RESUME = 1;
+  private static final int APPEND = 2;
+  private static final int MIN_REGION_SIZE = 1 << 20;
+  private static final int MAX_REGION_SIZE = 16 << 20;
+  private static final int BLOCK_SIZE = 4096;
+  private static final int SCAN_SIZE = 4096;
+  private static final int LATLON_DECIMALS = 6;
+  private static final int UTM_DECIMALS = 1;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  //
+  // Instance variables:
+  //
+  private int direction;
+  private int datum;
+  private DatumShift datumShift = null;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+  private long lineCount = 0;
+  private long pointCount = 0;
+  private long passCount = 0;
+  private long errorCount = 0;
+  //
+  // Read by other threads, e.g., to display progress or to cancel:
+  //
+  private volatile double progress = 0.0;
+  private volatile boolean cancelled = false;
+
+
+  /**
+  * <p>Constructs a file converter.</p>
+  * @param direction The conversion direction, {@link #LATLON_TO_UTM} or
+  * {@link #UTM_TO_LATLON}.
+  * @param datum The datum.
+  */
+
+  public CoordinateFileConverter(int direction, int datum) {
+    this.direction = direction;
+    this.datum = datum;
+  }
+
+  /**
+  * <p>Sets the datum shift applied to the lat/lon coordinates, or
+  * <code>null</code> for none.  For lat/lon input, the coordinates are
+  * shifted before they are projected, so the target datum of the shift
+  * must be the datum of the converter; for UTM input, the coordinates are
+  * shifted after they are unprojected, so the source datum of the shift
+  * must be the datum of the converter.</p>
+  * @param datumShift The datum shift.
+  * @return Whether or not the datum shift matches the datum.
+  */
+
+  public boolean setDatumShift(DatumShift datumShift) {
+    if (datumShift != null && datum != (direction == LATLON_TO_UTM ?
+        datumShift.getTargetDatum() : datumShift.getSourceDatum())) {
+      System.out.println("Datum shift " + datumShift.getName() +
+        " does not match datum " + datum + ".");
+      return false;
+    }
+    this.datumShift = datumShift;
+    return true;
+  }
+
+  /**
+  * <p>Gets the datum shift.</p>
+  * @return The datum shift, or <code>null</code> if there is none.
+  */
+
+  public DatumShift getDatumShift() {
+    return datumShift;
+  }
+
+  /**
+  * <p>Sets the number of conversion threads; the default is the number of
+  * available processors.</p>
+  * @param threads The number of threads.
+  */
+
+  public void setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+  * <p>Gets the number of conversion threads.</p>
+  * @return The number of threads.
+  */
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+  * <p>Sets the minimum amount of input, in bytes, converted between
+  * checkpoints; zero or less disables the intermediate checkpoints.</p>
+  * @param checkpointInterval The checkpoint interval.
+  */
+
+  public void setCheckpointInterval(long checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+  * <p>Gets the checkpoint interval.</p>
+  * @return The checkpoint interval.
+  */
+
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+  * <p>Gets the number of lines read by the last conversion.</p>
+  * @return The line count.
+  */
+
+  public long getLineCount() {
+    return lineCount;
+  }
+
+  /**
+  * <p>Gets the number of coordinates converted by the last conversion.</p>
+  * @return The coordinate count.
+  */
+
+  public long getPointCount() {
+    return pointCount;
+  }
+
+  /**
+  * <p>Gets the number of lines copied through unconverted by the last
+  * conversion.</p>
+  * @return The pass-through count.
+  */
+
+  public long getPassCount() {
+    return passCount;
+  }
+
+  /**
+  * <p>Gets the progress of the conversion in progress, or of the last
+  * conversion, as the fraction of its input that has been written.  It may
+  * be called from any thread.</p>
+  * @return The progress, 0.0 through 1.0.
+  */
+
+  public double getProgress() {
+    return progress;
+  }
+
+  /**
+  * <p>Cancels the conversion in progress; it may be called from any
+  * thread.  The conversion stops after the region that it is writing, saves
+  * a checkpoint, so that it can be resumed, and throws an
+  * <code>InterruptedIOException</code>.  A cancel that is requested before
+  * the conversion starts is kept, so the conversion stops after its first
+  * region; the request stays in effect until {@link #reset()}.</p>
+  */
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+  * <p>Clears a cancel request, so that the converter can be used again,
+  * e.g., to resume a cancelled conversion.</p>
+  */
+
+  public void reset() {
+    cancelled = false;
+  }
+
+  /**
+  * <p>Converts an input file, replacing the output file.  The checkpoint
+  * file of an earlier conversion is removed first, and the new checkpoint
+  * file when the conversion completes.</p>
+  * @param input The input file.
+  * @param output The output file.
+  * @throws IOException If the files cannot be read or written.
+  */
+
+  public void convert(File input, File output) throws IOException {
+    convert(input, output, FULL);
+  }
+
+  /**
+  * <p>Resumes an interrupted conversion from its last checkpoint, or
+  * starts it afresh if there is no checkpoint.  The checkpoint file is
+  * removed when the conversion completes.</p>
+  * @param input The input file.
+  * @param output The output file.
+  * @throws IOException If the files cannot be read or written, or if they
+  * do not match the checkpoint.
+  */
+
+  public void resume(File input, File output) throws IOException {
+    convert(input, output, RESUME);
+  }
+
+  /**
+  * <p>Converts the complete lines appended to the input file since the
+  * previous append, appending them to the output file.  The first append,
+  * i.e., without a checkpoint, converts the whole file.  The checkpoint
+  * file is kept for the next append.</p>
+  * @param input The input file.
+  * @param output The output file.
+  * @throws IOException If the files cannot be read or written, or if they
+  * do not match the checkpoint.
+  */
+
+  public void append(File input, File output) throws IOException {
+    convert(input, output, APPEND);
+  }
+
+  private void convert(File input, File output, int mode)
+      throws IOException {
+    ConversionStageEvent event = new ConversionStageEvent();
+    event.begin();
+    boolean failed = true;
+    try {
+      convertFile(input, output, mode);
+      failed = false;
+    }
+    finally {
+      event.end(mode == FULL ? "file.convert" : mode == RESUME ?
+        "file.resume" : "file.append", direction, datum, pointCount,
+        errorCount, passCount, failed);
+    }
+  }
+
+  private void convertFile(File input, File output, int mode)
+      throws IOException {
+    lineCount = 0;
+    pointCount = 0;
+    passCount = 0;
+    errorCount = 0;
+    progress = 0.0;
+    File checkpointFile =
+      new File(output.getPath() + CHECKPOINT_SUFFIX);
+    Checkpoint checkpoint = new Checkpoint(direction, datum,
+      datumShift == null ? "" : datumShift.getName());
+    if (mode != FULL && checkpointFile.exists()) {
+      checkpoint.load(checkpointFile);
+    }
+    else if (mode == FULL && checkpointFile.exists() &&
+        !checkpointFile.delete()) {
+
+      /* A stale checkpoint must not outlive the output it described */
+
+      throw new IOException("Unable to delete " + checkpointFile + ".");
+    }
+    RandomAccessFile in = new RandomAccessFile(input, "r");
+    RandomAccessFile out = null;
+    ExecutorService pool = null;
+    try {
+      out = new RandomAccessFile(output, "rw");
+      FileChannel inChannel = in.getChannel();
+      FileChannel outChannel = out.getChannel();
+      long inputEnd = inChannel.size();
+      if (checkpoint.inputOffset > inputEnd) {
+        throw new IOException("Input is shorter than its checkpoint.");
+      }
+      if (checkpoint.outputOffset > outChannel.size()) {
+        throw new IOException("Output is shorter than its checkpoint.");
+      }
+
+      /* Discard any output written after the checkpoint */
+
+      outChannel.truncate(checkpoint.outputOffset);
+      if (mode == APPEND) {
+        inputEnd = getLastLineEnd(inChannel, checkpoint.inputOffset, inputEnd);
+      }
+      long start = checkpoint.inputOffset;
+      long[] bounds = split(inChannel, checkpoint.inputOffset, inputEnd);
+      List<Future<Region>> pending = new ArrayList<Future<Region>>();
+      int next = 0;
+      long position = checkpoint.outputOffset;
+      long lastCheckpoint = checkpoint.inputOffset;
+      pool = Executors.newFixedThreadPool(threads);
+      for (int i = 0; i < bounds.length - 1; i++) {
+
+        /* Keep a bounded number of regions in flight */
+
+        while (next < bounds.length - 1 && next - i < threads + 2) {
+          pending.add(pool.submit(
+            new Region(inChannel, bounds[next], bounds[next + 1])));
+          next++;
+        }
+        Region region = getRegion(pending.get(i));
+        pending.set(i, null);
+        ByteBuffer data = ByteBuffer.wrap(region.output, 0, region.size);
+        while (data.hasRemaining()) {
+          position += outChannel.write(data, position);
+        }
+        lineCount += region.lines;
+        pointCount += region.points;
+        passCount += region.lines - region.points;
+        errorCount += region.errors;
+        checkpoint.inputOffset = bounds[i + 1];
+        checkpoint.outputOffset = position;
+        checkpoint.lines += region.lines;
+        checkpoint.points += region.points;
+        progress =
+          (checkpoint.inputOffset - start) / (double) (inputEnd - start);
+        if (cancelled && i < bounds.length - 2) {
+          outChannel.force(false);
+          checkpoint.store(checkpointFile);
+          throw new InterruptedIOException("Conversion cancelled.");
+        }
+        if (checkpointInterval > 0 &&
+            checkpoint.inputOffset - lastCheckpoint >= checkpointInterval &&
+            i < bounds.length - 2) {
+
+          /* The output must be on disk before the checkpoint refers to it */
+
+          outChannel.force(false);
+          checkpoint.store(checkpointFile);
+          lastCheckpoint = checkpoint.inputOffset;
+        }
+      }
+      outChannel.force(false);
+      progress = 1.0;
+      if (mode == APPEND) {
+        checkpoint.store(checkpointFile);
+      }
+      else if (checkpointFile.exists() && !checkpointFile.delete()) {
+        throw new IOException("Unable to delete " + checkpointFile + ".");
+      }
+    }
+    finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+      in.close();
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+
+  //
+  // Gets the offset just past the last newline in [start, end), or start
+  // if there is none, so that a partially written line is left for later.
+  //
+
+  private static long getLastLineEnd(FileChannel channel, long start, long end)
+      throws IOException {
+    ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+    long position = end;
+    while (position > start) {
+      int count = (int) Math.min(SCAN_SIZE, position - start);
+      position -= count;
+      scan.clear();
+      scan.limit(count);
+      int read = 0;
+      while (read < count) {
+        int n = channel.read(scan, position + read);
+        if (n <= 0) {
+          throw new IOException("Unexpected end of input.");
+        }
+        read += n;
+      }
+      for (int i = count - 1; i >= 0; i--) {
+        if (scan.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+    }
+    return start;
+  }
+
+  private static Region getRegion(Future<Region> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Conversion interrupted.");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Conversion failed: " + cause, cause);
+    }
+  }
+
+  //
+  // Splits [start, end) into regions that begin at line boundaries;
+  // returns the region boundaries, including start and end.
+  //
+
+  private long[] split(FileChannel channel, long start, long end)
+      throws IOException {
+    long size = end - start;
+    long regionSize = Math.max(MIN_REGION_SIZE,
+      Math.min(MAX_REGION_SIZE, (size + threads - 1) / threads));
+    List<Long> bounds = new ArrayList<Long>();
+    bounds.add(Long.valueOf(start));
+    long last = start;
+    ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+    while (end - last > regionSize) {
+      long position = last + regionSize;
+      long boundary = -1;
+      while (boundary < 0 && position < end) {
+        scan.clear();
+        int count = channel.read(scan, position);
+        if (count <= 0) {
+          break;
+        }
+        for (int i = 0; i < count; i++) {
+          if (scan.get(i) == '\n') {
+            boundary = position + i + 1;
+            break;
+          }
+        }
+        position += count;
+      }
+      if (boundary < 0 || boundary >= end) {
+        break;
+      }
+      bounds.add(Long.valueOf(boundary));
+      last = boundary;
+    }
+    bounds.add(Long.valueOf(end));
+    long[] result = new long[bounds.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i).longValue();
+    }
+    return result;
+  }
+
+  /**
+  * <p>Runs the file converter as a command-line utility:</p>
+  * <ul>
+  * <li><code>CoordinateFileConverter -latlon points.csv utm.csv</code>
+  * <li><code>CoordinateFileConverter -utm utm.csv points.csv</code>
+  * <li><code>CoordinateFileConverter -resume -latlon points.csv utm.csv</code>
+  * <li><code>CoordinateFileConverter -append -latlon points.log utm.csv</code>
+  * <li><code>CoordinateFileConverter -shift NAD27_CONUS -latlon nad27.csv
+  * utm.csv</code>
+  * <li><code>CoordinateFileConverter -datum INTERNATIONAL_1924 -latlon
+  * ed50.csv utm.csv</code>
+  * </ul>
+  * <p>The datum is named by its ellipsoid (see {@link Ellipsoid}); the
+  * default is WGS-84.  With <code>-shift</code>, lat/lon input is shifted to
+  * the datum before it is projected, and UTM input is unprojected on the
+  * source datum of the shift (by default) before it is shifted.</p>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int mode = FULL;
+    DatumShift datumShift = null;
+    int datum = -1;
+    int first = 0;
+    while (first < args.length - 3) {
+      if (args[first].equals("-resume")) {
+        mode = RESUME;
+        first++;
+      }
+      else if (args[first].equals("-append")) {
+        mode = APPEND;
+        first++;
+      }
+      else if (args[first].equals("-shift")) {
+        datumShift = DatumShift.forName(args[first + 1]);
+        if (datumShift == null) {
+          System.out.println("Unknown datum shift: " + args[first + 1] + ".");
+          return;
+        }
+        first += 2;
+      }
+      else if (args[first].equals("-datum")) {
+        Ellipsoid ellipsoid = Ellipsoid.forName(args[first + 1]);
+        if (ellipsoid == null) {
+          System.out.println("Unknown datum: " + args[first + 1] + ".");
+          return;
+        }
+        datum = ellipsoid.getDatum();
+        first += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length != first + 3 ||
+        !(args[first].equals("-latlon") || args[first].equals("-utm"))) {
+      System.out.println("Usage:  java " +
+        CoordinateFileConverter.class.getName() +
+        " [-resume | -append] [-datum <name>] [-shift <name>]" +
+        " -latlon <input> <output>");
+      System.out.println("Usage:  java " +
+        CoordinateFileConverter.class.getName() +
+        " [-resume | -append] [-datum <name>] [-shift <name>]" +
+        " -utm <input> <output>");
+      return;
+    }
+    int direction = args[first].equals("-latlon") ?
+      LATLON_TO_UTM : UTM_TO_LATLON;
+    if (datum < 0) {
+      datum = CoordinateUtil.WGS_84_DATUM;
+      if (datumShift != null && direction == UTM_TO_LATLON) {
+        datum = datumShift.getSourceDatum();
+      }
+    }
+    CoordinateFileConverter converter =
+      new CoordinateFileConverter(direction, datum);
+    if (!converter.setDatumShift(datumShift)) {
+      return;
+    }
+    File input = new File(args[first + 1]);
+    File output = new File(args[first + 2]);
+    try {
+      long start = System.currentTimeMillis();
+      converter.convert(input, output, mode);
+      System.out.println("Converted " + converter.getPointCount() +
+        " coordinate(s) in " + converter.getLineCount() + " line(s), " +
+        converter.getPassCount() + " line(s) copied through, in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    }
+    catch (IOException e) {
+      System.out.println("Unable to convert " + input + ": " +
+        e.getMessage());
+    }
+  }
+
+  /**
+  * <p>The committed state of a conversion:  the input consumed, the output
+  * written, and the counts, stored as a properties file.  A checkpoint is
+  * written to a temporary file and then renamed, so that a crash never
+  * leaves a partial checkpoint.</p>
+  */
+
+  private static class Checkpoint {
+    private int direction;
+    private int datum;
+    private String shift;
+    private long inputOffset = 0;
+    private long outputOffset = 0;
+    private long lines = 0;
+    private long points = 0;
+
+    Checkpoint(int direction, int datum, String shift) {
+      this.direction = direction;
+      this.datum = datum;
+      this.shift = shift;
+    }
+
+    void load(File file) throws IOException {
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(file);
+      try {
+        properties.load(in);
+      }
+      finally {
+        in.close();
+      }
+      try {
+        if (Integer.parseInt(properties.getProperty("direction")) !=
+            direction ||
+            Integer.parseInt(properties.getProperty("datum")) != datum ||
+            !shift.equals(properties.getProperty("shift", ""))) {
+          throw new IOException(
+            "Checkpoint " + file + " is for a different conversion.");
+        }
+        inputOffset = Long.parseLong(properties.getProperty("inputOffset"));
+        outputOffset = Long.parseLong(properties.getProperty("outputOffset"));
+        lines = Long.parseLong(properties.getProperty("lines"));
+        points = Long.parseLong(properties.getProperty("points"));
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Invalid checkpoint " + file + ".");
+      }
+    }
+
+    void store(File file) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty("direction", String.valueOf(direction));
+      properties.setProperty("datum", String.valueOf(datum));
+      properties.setProperty("shift", shift);
+      properties.setProperty("inputOffset", String.valueOf(inputOffset));
+      properties.setProperty("outputOffset", String.valueOf(outputOffset));
+      properties.setProperty("lines", String.valueOf(lines));
+      properties.setProperty("points", String.valueOf(points));
+      File temp = new File(file.getPath() + ".tmp");
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        properties.store(out, CoordinateFileConverter.class.getName());
+        out.getFD().sync();
+      }
+      finally {
+        out.close();
+      }
+      Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
+  /**
+  * <p>A region of the input file, converted by one task.  The region
+  * parses blocks of lines straight from the mapped buffer into primitive
+  * columns, converts each block as a batch, and formats the lines of the
+  * block into its output buffer.</p>
+  */
+
+  private class Region implements Callable<Region> {
+    private FileChannel channel;
+    private long start, end;
+    private ByteBuffer input;
+    private int position;
+    private int[] lineStart = new int[BLOCK_SIZE];
+    private int[] lineEnd = new int[BLOCK_SIZE];
+    private int[] lineZones = new int[BLOCK_SIZE];
+    private double[] lineFirst = new double[BLOCK_SIZE];
+    private double[] lineSecond = new double[BLOCK_SIZE];
+    private int[] zones = new int[BLOCK_SIZE];
+    private double[] first = new double[BLOCK_SIZE];
+    private double[] second = new double[BLOCK_SIZE];
+    private boolean[] parsed = new boolean[BLOCK_SIZE];
+    private byte[] output;
+    private int size = 0;
+    private long lines = 0;
+    private long points = 0;
+    private long errors = 0;
+
+    Region(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+    }
+
+    public Region call() throws IOException {
+      int length = (int) (end - start);
+      output = new byte[length + length / 2 + 64];
+      if (length == 0) {
+        return this;
+      }
+      MappedByteBuffer mapped =
+        channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      input = mapped;
+      int offset = 0;
+      while (offset < length) {
+        int count = 0;
+        while (count < BLOCK_SIZE && offset < length) {
+          int eol = offset;
+          while (eol < length && input.get(eol) != '\n') {
+            eol++;
+          }
+          int stop = eol;
+          if (stop > offset && input.get(stop - 1) == '\r') {
+            stop--;
+          }
+          lineStart[count] = offset;
+          lineEnd[count] = stop;
+          parsed[count] = parseLine(offset, stop, count);
+          count++;
+          offset = eol + 1;
+        }
+        convertBlock(count);
+      }
+      return this;
+    }
+
+    //
+    // Parses the leading coordinate of a line into the line columns.
+    //
+
+    private boolean parseLine(int from, int to, int index) {
+      position = from;
+      if (direction == UTM_TO_LATLON) {
+        skipSeparators(to);
+        int zone = parseGridZone(to);
+        if (zone < 0 || !nextField(to)) {
+          return false;
+        }
+        lineZones[index] = zone;
+      }
+      else {
+        skipSeparators(to);
+      }
+      double value = parseDouble(to);
+      if (Double.isNaN(value) || !nextField(to)) {
+        return false;
+      }
+      lineFirst[index] = value;
+      value = parseDouble(to);
+      if (Double.isNaN(value) ||
+          (position < to && !isSeparator(input.get(position)))) {
+        return false;
+      }
+      lineSecond[index] = value;
+      return true;
+    }
+
+    private void convertBlock(int count) {
+      boolean ok;
+      int n = 0;
+      for (int i = 0; i < count; i++) {
+        if (parsed[i]) {
+          zones[n] = lineZones[i];
+          first[n] = lineFirst[i];
+          second[n] = lineSecond[i];
+          n++;
+        }
+      }
+      if (direction == LATLON_TO_UTM) {
+        double[] eastings = lineFirst;
+        double[] northings = lineSecond;
+        if (datumShift != null) {
+          datumShift.transform(first, second, null, 0, n);
+        }
+        ok = CoordinateBatch.latLonToUTM(first, second, zones, eastings,
+          northings, 0, n, datum);
+      }
+      else {
+        double[] latitudes = lineFirst;
+        double[] longitudes = lineSecond;
+        ok = CoordinateBatch.utmToLatLon(zones, first, second, latitudes,
+          longitudes, 0, n, datum);
+        if (datumShift != null) {
+          datumShift.transform(latitudes, longitudes, null, 0, n);
+        }
+      }
+
+      /* A point fails with a NaN result, or the block with no result */
+
+      int failed = 0;
+      for (int point = 0; point < n; point++) {
+        if (Double.isNaN(lineFirst[point]) ||
+            Double.isNaN(lineSecond[point]) ||
+            (direction == LATLON_TO_UTM && zones[point] < 0)) {
+          failed++;
+        }
+      }
+      errors += ok || failed > 0 ? failed : n;
+
+      /* The line columns now hold the results, in point order */
+
+      int point = 0;
+      for (int i = 0; i < count; i++) {
+        ensure(lineEnd[i] - lineStart[i] + 64);
+        for (int j = lineStart[i]; j < lineEnd[i]; j++) {
+          output[size++] = input.get(j);
+        }
+        if (parsed[i]) {
+          if (direction == LATLON_TO_UTM) {
+            output[size++] = ',';
+            appendGridZone(zones[point]);
+            output[size++] = ',';
+            appendFixed(lineFirst[point], UTM_DECIMALS);
+            output[size++] = ',';
+            appendFixed(lineSecond[point], UTM_DECIMALS);
+          }
+          else {
+            output[size++] = ',';
+            appendFixed(lineFirst[point], LATLON_DECIMALS);
+            output[size++] = ',';
+            appendFixed(lineSecond[point], LATLON_DECIMALS);
+          }
+          point++;
+        }
+        output[size++] = '\n';
+      }
+      lines += count;
+      points += n;
+    }
+
+    private boolean isSeparator(byte b) {
+      return b == ',' || b == ';' || b == '\t' || b == ' ';
+    }
+
+    private void skipSeparators(int to) {
+      while (position < to && (input.get(position) == ' ' ||
+          input.get(position) == '\t')) {
+        position++;
+      }
+    }
+
+    //
+    // Advances past the separator(s) following a field.
+    //
+
+    private boolean nextField(int to) {
+      if (position >= to || !isSeparator(input.get(position))) {
+        return false;
+      }
+      boolean delimited = false;
+      while (position < to && isSeparator(input.get(position))) {
+        byte b = input.get(position);
+        if (b != ' ' && b != '\t') {
+          if (delimited) {
+            return false;    // empty field
+          }
+          delimited = true;
+        }
+        position++;
+      }
+      return position < to;
+    }
+
+    private int parseGridZone(int to) {
+      int zoneLong = 0;
+      int digits = 0;
+      while (position < to && digits < 2) {
+        byte b = input.get(position);
+        if (b < '0' || b > '9') {
+          break;
+        }
+        zoneLong = zoneLong * 10 + (b - '0');
+        digits++;
+        position++;
+      }
+      if (digits == 0 || position >= to) {
+        return -1;
+      }
+      int zoneLat = input.get(position++);
+      if (zoneLat >= 'a' && zoneLat <= 'z') {
+        zoneLat = zoneLat - 'a' + 'A';
+      }
+      if (zoneLat < 'A' || zoneLat > 'Z') {
+        return -1;
+      }
+      return CoordinateUtil.packGridZone(zoneLong, (char) zoneLat);
+    }
+
+    //
+    // Parses a decimal number without creating a string; the result is
+    // correctly rounded when the significand fits in 15 digits, and
+    // Double.parseDouble() handles everything else.  Returns NaN if
+    // there is no number at the current position.
+    //
+
+    private double parseDouble(int to) {
+      int begin = position;
+      boolean negative = false;
+      if (position < to &&
+          (input.get(position) == '-' || input.get(position) == '+')) {
+        negative = input.get(position) == '-';
+        position++;
+      }
+      long significand = 0;
+      int digits = 0;
+      int scale = 0;
+      boolean point = false;
+      boolean any = false;
+      while (position < to) {
+        byte b = input.get(position);
+        if (b >= '0' && b <= '9') {
+          any = true;
+          if (significand == 0 && b == '0') {
+            if (point) {
+              scale++;
+            }
+          }
+          else if (digits < 18) {
+            significand = significand * 10 + (b - '0');
+            digits++;
+            if (point) {
+              scale++;
+            }
+          }
+          else if (!point) {
+            scale--;
+          }
+          position++;
+        }
+        else if (b == '.' && !point) {
+          point = true;
+          position++;
+        }
+        else {
+          break;
+        }
+      }
+      if (!any) {
+        position = begin;
+        return Double.NaN;
+      }
+      if (position < to && (input.get(position) == 'e' ||
+          input.get(position) == 'E')) {
+        return parseSlow(begin, to);
+      }
+      double value;
+      if (digits <= 15 && scale >= 0 && scale < POWERS_OF_TEN.length) {
+        value = significand / POWERS_OF_TEN[scale];
+      }
+      else {
+        return parseSlow(begin, to);
+      }
+      return negative ? -value : value;
+    }
+
+    private double parseSlow(int begin, int to) {
+      int stop = begin;
+      while (stop < to && !isSeparator(input.get(stop))) {
+        stop++;
+      }
+      byte[] text = new byte[stop - begin];
+      for (int i = 0; i < text.length; i++) {
+        text[i] = input.get(begin + i);
+      }
+      position = stop;
+      try {
+        return Double.parseDouble(new String(text, "US-ASCII"));
+      }
+      catch (Exception e) {
+        return Double.NaN;
+      }
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > output.length) {
+        byte[] bigger = new byte[Math.max(output.length * 2, size + extra)];
+        System.arraycopy(output, 0, bigger, 0, size);
+        output = bigger;
+      }
+    }
+
+    private void appendGridZone(int zone) {
+      int zoneLong = CoordinateUtil.getZoneNumber(zone);
+      output[size++] = (byte) ('0' + zoneLong / 10);
+      output[size++] = (byte) ('0' + zoneLong % 10);
+      output[size++] = (byte) CoordinateUtil.getZoneBand(zone);
+    }
+
+    //
+    // Appends a value with a fixed number of decimals, rounding half up.
+    //
+
+    private void appendFixed(double value, int decimals) {
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        output[size++] = 'N';
+        output[size++] = 'a';
+        output[size++] = 'N';
+        return;
+      }
+      long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[decimals]);
+      if (value < 0 && scaled != 0) {
+        output[size++] = '-';
+      }
+      long whole = scaled / (long) POWERS_OF_TEN[decimals];
+      long fraction = scaled % (long) POWERS_OF_TEN[decimals];
+      int mark = size;
+      do {
+        output[size++] = (byte) ('0' + whole % 10);
+        whole /= 10;
+      } while (whole > 0);
+      for (int i = mark, j = size - 1; i < j; i++, j--) {
+        byte b = output[i];
+        output[i] = output[j];
+        output[j] = b;
+      }
+      output[size++] = '.';
+      for (int i = decimals - 1; i >= 0; i--) {
+        output[size + i] = (byte) ('0' + fraction % 10);
+        fraction /= 10;
+      }
+      size += decimals;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package geo;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 
 /**
@@ -27,6 +28,14 @@ import java.text.DecimalFormat;
 * <p>Copyright (C) 1998 Massachusetts Institute of Technology
 *               All Rights Reserved</p>
 *
+* <p>The conversions deliberately differ from the C routines in two
+* respects, both corrections:  the central meridian of grid zone 31X is
+* 4.5 degrees (the C <code>get_grid_zone</code> uses 4.5 radians), and the
+* V-band zones other than 31V and 32V are standard zones (the C
+* <code>get_lambda0</code> falls through to the X-band cases, so that 34V
+* and 36V are rejected, and 37V is given the 37X central meridian).  See
+* {@link CoordinateDifferential}, which compares the two.</p>
+*
 * @author Jerry Smith
 * @version $Id: CoordinateUtil.java 255 2006-01-18 16:40:51Z jsmith $
 */
@@ -47,10 +56,57 @@ public final class CoordinateUtil {
   */
 
   public static final int WGS_84_DATUM = 2;
+  /**
+  * <p>A supported datum.</p>
+  */
+
+  public static final int BESSEL_1841_DATUM = 3;
+  /**
+  * <p>A supported datum.</p>
+  */
+
+  public static final int INTERNATIONAL_1924_DATUM = 4;
+  /**
+  * <p>A supported datum.</p>
+  */
+
+  public static final int AIRY_1830_DATUM = 5;
+  /**
+  * <p>A supported datum.</p>
+  */
+
+  public static final int KRASSOVSKY_1940_DATUM = 6;
+  /**
+  * <p>A supported datum.</p>
+  */
+
+  public static final int WGS_72_DATUM = 7;
+  /**
+  * <p>The number of UTM latitude bands, C through X (omitting I and O).</p>
+  */
+
+  public static final int UTM_BANDS = 20;
+  //
+  // The UTM latitude bands, 8 degrees each from 80S, and their indexes by
+  // letter (either case); the extra Y is for latitude 80 exactly, which
+  // the C original puts in band Y.
+  //
+  private static final char[] BAND_LETTERS =
+    "CDEFGHJKLMNPQRSTUVWXY".toCharArray();
+  private static final byte[] BAND_INDEXES = new byte[128];
+  private static final int SOUTHERN_BANDS = 10;    /* C through M */
   private static final double LOWER_EPS_LIMIT = 1e-14;
   private static final double M_PI_2 = Math.PI / 2;
 
 
+  static {
+    Arrays.fill(BAND_INDEXES, (byte) -1);
+    for (int i = 0; i < UTM_BANDS; i++) {
+      BAND_INDEXES[BAND_LETTERS[i]] = (byte) i;
+      BAND_INDEXES[Character.toLowerCase(BAND_LETTERS[i])] = (byte) i;
+    }
+  }
+
   private CoordinateUtil() {
   }
 
@@ -60,6 +116,15 @@ public final class CoordinateUtil {
 
   private static void
   getGridZone(LatLon latLon, GridZone gridZone, Lambda0 lambda0) {
+    gridZone.gridZone = unpackGridZone(
+      getGridZone(latLon.getLatitude(), latLon.getLongitude(), lambda0));
+  }
+
+  //
+  // lambda0 is modified!  Returns the packed grid zone.
+  //
+
+  static int getGridZone(double latitude, double longitude, Lambda0 lambda0) {
     int zoneLong;
     char zoneLat;
 
@@ -67,107 +132,106 @@ public final class CoordinateUtil {
 
     /* First, let's take care of the polar regions */
 
-    if (latLon.getLatitude() < -80) {
-      if (latLon.getLongitude() < 0) {
-        gridZone.gridZone = "30A";
-        lambda0.lambda0 = 0 * Math.PI / 180.0;
-      }
-      else {
-        gridZone.gridZone = "31B";
-        lambda0.lambda0 = 0 * Math.PI / 180.0;
-      }
-      return;
+    if (latitude < -80) {
+      lambda0.lambda0 = 0 * Math.PI / 180.0;
+      return longitude < 0 ? packGridZone(30, 'A') : packGridZone(31, 'B');
     }
-    else if (latLon.getLatitude() > 84) {
-      if (latLon.getLongitude() < 0) {
-        gridZone.gridZone = "30Y";
-        lambda0.lambda0 = 0 * Math.PI / 180.0;
-      }
-      else {
-        gridZone.gridZone = "31Z";
-        lambda0.lambda0 = 0 * Math.PI / 180.0;
-      }
-      return;
+    else if (latitude > 84) {
+      lambda0.lambda0 = 0 * Math.PI / 180.0;
+      return longitude < 0 ? packGridZone(30, 'Y') : packGridZone(31, 'Z');
     }
 
     /* Now the special "X" grid */
 
-    if (latLon.getLatitude() > 72 && latLon.getLongitude() > 0 &&
-        latLon.getLongitude() < 42) {
-      if (latLon.getLongitude() < 9) {
-        lambda0.lambda0 = 4.5;
-        gridZone.gridZone = "31X";
+    if (latitude > 72 && longitude > 0 && longitude < 42) {
+      if (longitude < 9) {
+        lambda0.lambda0 = 4.5 * Math.PI / 180.0;
+        return packGridZone(31, 'X');
       }
-      else if (latLon.getLongitude() < 21) {
+      else if (longitude < 21) {
         lambda0.lambda0 = 15 * Math.PI / 180.0;
-        gridZone.gridZone = "33X";
+        return packGridZone(33, 'X');
       }
-      else if (latLon.getLongitude() < 33) {
+      else if (longitude < 33) {
         lambda0.lambda0 = 27 * Math.PI / 180.0;
-        gridZone.gridZone = "35X";
+        return packGridZone(35, 'X');
       }
-      else if (latLon.getLongitude() < 42) {
+      else {
         lambda0.lambda0 = 37.5 * Math.PI / 180.0;
-        gridZone.gridZone = "37X";
+        return packGridZone(37, 'X');
       }
-      return;
     }
 
     /* Handle the special "V" grid */
 
-    if (latLon.getLatitude() > 56 && latLon.getLatitude() < 64 &&
-        latLon.getLongitude() > 0 && latLon.getLongitude() < 12) {
-      if (latLon.getLongitude() < 3) {
+    if (latitude > 56 && latitude < 64 && longitude > 0 && longitude < 12) {
+      if (longitude < 3) {
         lambda0.lambda0 = 1.5 * Math.PI / 180.0;
-        gridZone.gridZone = "31V";
+        return packGridZone(31, 'V');
       }
-      else if (latLon.getLongitude() < 12) {
+      else {
         lambda0.lambda0 = 7.5 * Math.PI / 180.0;
-        gridZone.gridZone = "32V";
+        return packGridZone(32, 'V');
       }
-      return;
     }
 
     /* The remainder of the grids follow the standard rule */
 
-    zoneLong = (int) ((latLon.getLongitude() - (-180.0)) / 6.0) + 1;
+    zoneLong = (int) ((longitude - (-180.0)) / 6.0) + 1;
     lambda0.lambda0 = ((zoneLong - 1) * 6.0 + (-180.0) + 3.0) * Math.PI / 180.0;
 
-    int offset = (int) ((latLon.getLatitude() - (-80.0)) / 8.0);
-    zoneLat = UnsignedChar.getCharPlusOffset('C', offset);
-    if (zoneLat > 'H') {
-      zoneLat = UnsignedChar.getNextChar(zoneLat);
-    }
-    if (zoneLat > 'N') {
-      zoneLat = UnsignedChar.getNextChar(zoneLat);
-    }
-    if (latLon.getLatitude() > 80) {
+    if (latitude > 80) {
       zoneLat = 'X';
     }
-    gridZone.gridZone = "" + (zoneLong / 10) + (zoneLong % 10) + zoneLat;
+    else {
+      zoneLat = BAND_LETTERS[(int) ((latitude - (-80.0)) / 8.0)];
+    }
+    return packGridZone(zoneLong, zoneLat);
   }
 
   //
-  // lambda0 is modified!
+  // lambda0 is modified!  As in the original, only the two zone digits and
+  // the band letter are read; anything after them is ignored.
   //
 
   private static int getLambda0(String gridZone, Lambda0 lambda0) {
     int zoneLong;
     char zoneLat;
 
-    /* given the grid zone, sets the central meridian, lambda0 */
-
     /* Check the grid zone format */
 
-    if (!Character.isDigit(gridZone.charAt(0)) ||
+    if (gridZone.length() < 3 ||
+        !Character.isDigit(gridZone.charAt(0)) ||
         !Character.isDigit(gridZone.charAt(1))) {
       System.out.println(
         "Invalid grid zone format: " + gridZone + ".");
       return(-1);
     }
-
     zoneLong = Integer.parseInt(gridZone.substring(0, 2), 10);
     zoneLat = gridZone.charAt(2);
+    if (getLambda0(packGridZone(zoneLong, zoneLat), lambda0) < 0) {
+      System.out.println(
+        "Zone " + gridZone + " does not exist!");
+      return(-1);
+    }
+    return(0);
+  }
+
+  //
+  // lambda0 is modified!  Quiet version for the batch operations.
+  //
+
+  static int getLambda0(int packedZone, Lambda0 lambda0) {
+    int zoneLong;
+    char zoneLat;
+
+    /* given the grid zone, sets the central meridian, lambda0 */
+
+    if (packedZone < 0) {
+      return(-1);
+    }
+    zoneLong = getZoneNumber(packedZone);
+    zoneLat = getZoneBand(packedZone);
 
     /* Take care of special cases */
 
@@ -186,8 +250,11 @@ public final class CoordinateUtil {
         lambda0.lambda0 = 7.5 * Math.PI / 180.0;
         return(0);
         //break;
-      //break;
       }
+
+      /* The other V zones are standard (the C original fell into 'X') */
+
+      break;
     case 'X':
       switch (zoneLong) {
       case 31:
@@ -207,8 +274,6 @@ public final class CoordinateUtil {
         return(0);
         //break;
       case 32: case 34: case 36:
-        System.out.println(
-          "Zone " + gridZone + " does not exist!");
         return(-1);
         //break;
       }
@@ -221,6 +286,124 @@ public final class CoordinateUtil {
     return(0);
   }
 
+  /**
+  * <p>Packs a grid zone, e.g., <code>"13S"</code>, into an <code>int</code>
+  * for use with the array-based operations in {@link CoordinateBatch}.
+  * The zone number occupies the upper bits and the latitude band letter
+  * the low byte.  A one-digit zone number, e.g., <code>"9S"</code>, and a
+  * lowercase band letter are accepted.</p>
+  * @param gridZone The grid zone.
+  * @return The packed grid zone, or -1 if the format is invalid.
+  */
+
+  public static int packGridZone(String gridZone) {
+    if (gridZone == null) {
+      return -1;
+    }
+    int length = gridZone.length();
+    if (length < 2 || length > 3) {
+      return -1;
+    }
+    int zoneLong = 0;
+    for (int i = 0; i < length - 1; i++) {
+      char ch = gridZone.charAt(i);
+      if (ch < '0' || ch > '9') {
+        return -1;
+      }
+      zoneLong = zoneLong * 10 + (ch - '0');
+    }
+    char zoneLat = gridZone.charAt(length - 1);
+    if (zoneLat >= 'a' && zoneLat <= 'z') {
+      zoneLat = (char) (zoneLat - 'a' + 'A');
+    }
+    if (zoneLat < 'A' || zoneLat > 'Z') {
+      return -1;
+    }
+    return packGridZone(zoneLong, zoneLat);
+  }
+
+  /**
+  * <p>Packs a grid zone from its components.</p>
+  * @param zoneNumber The zone number, 1 through 60.
+  * @param zoneBand The (uppercase) latitude band letter.
+  * @return The packed grid zone.
+  */
+
+  public static int packGridZone(int zoneNumber, char zoneBand) {
+    return (zoneNumber << 8) | zoneBand;
+  }
+
+  /**
+  * <p>Unpacks a grid zone into its two-digit string form, e.g.,
+  * <code>"09S"</code>.</p>
+  * @param packedZone The packed grid zone.
+  * @return The grid zone, or the empty string if it is invalid.
+  */
+
+  public static String unpackGridZone(int packedZone) {
+    if (packedZone < 0) {
+      return "";
+    }
+    int zoneLong = getZoneNumber(packedZone);
+    return new String(new char[] {
+      (char) ('0' + zoneLong / 10), (char) ('0' + zoneLong % 10),
+      getZoneBand(packedZone)});
+  }
+
+  /**
+  * <p>Gets the zone number from a packed grid zone.</p>
+  * @param packedZone The packed grid zone.
+  * @return The zone number.
+  */
+
+  public static int getZoneNumber(int packedZone) {
+    return packedZone >>> 8;
+  }
+
+  /**
+  * <p>Gets the latitude band letter from a packed grid zone.</p>
+  * @param packedZone The packed grid zone.
+  * @return The latitude band letter.
+  */
+
+  public static char getZoneBand(int packedZone) {
+    return (char) (packedZone & 0xff);
+  }
+
+  /**
+  * <p>Gets the index of a UTM latitude band, from 0 for C (80S) through 19
+  * for X (72N).</p>
+  * @param band The band letter, in either case.
+  * @return The index, or -1 if it is not a UTM band, e.g., a polar band.
+  */
+
+  public static int getBandIndex(char band) {
+    return band < BAND_INDEXES.length ? BAND_INDEXES[band] : -1;
+  }
+
+  /**
+  * <p>Gets the letter of a UTM latitude band.</p>
+  * @param bandIndex The index, 0 through 19.
+  * @return The band letter, or <code>'\0'</code> if the index is invalid.
+  */
+
+  public static char getBand(int bandIndex) {
+    return bandIndex >= 0 && bandIndex < UTM_BANDS ?
+      BAND_LETTERS[bandIndex] : '\0';
+  }
+
+  /**
+  * <p>Tests whether a latitude band is a southern-hemisphere UTM band, C
+  * through M.</p>
+  * @param band The band letter, in either case.
+  * @return Whether or not it is a southern UTM band.
+  */
+
+  public static boolean isSouthernBand(char band) {
+    int index = getBandIndex(band);
+    return index >= 0 && index < SOUTHERN_BANDS;
+  }
+
   /**
   * <p>Converts a lat/lon coordinate to a UTM coordinate.</p>
   * @param latLon The lat/lon coordinate object.
@@ -230,7 +413,8 @@ public final class CoordinateUtil {
   */
 
   public static boolean latLonToUTM(LatLon latLon, UTM utm, int datum) {
-    double a, b, f, e, e2, e4, e6;
+    Ellipsoid ellipsoid;
+    double a, e, e2, e4, e6;
     double phi, lambda, phi0, k0;
     double t, rho, m, x, y, k, mm, mm0;
     double aa, aa2, aa3, aa4, aa5, aa6;
@@ -240,31 +424,19 @@ public final class CoordinateUtil {
 
     /* Converts lat/long to UTM, using the specified datum */
 
-    switch (datum) {
-    case CLARKE_1866_DATUM:
-      a = 6378206.4;
-      b = 6356583.8;
-      break;
-    case GRS_80_DATUM:
-      a = 6378137;
-      b = 6356752.3;
-      break;
-    case WGS_84_DATUM:
-      a = 6378137.0;    /* semimajor axis of ellipsoid (meters) */
-      b = 6356752.31425;    /* semiminor axis of ellipsoid (meters) */
-      break;
-    default:
+    ellipsoid = Ellipsoid.forDatum(datum);
+    if (ellipsoid == null) {
       System.out.println("Unknown datum: " + datum + ".");
       return false;
     }
 
-    /* Calculate flatness and eccentricity */
+    /* Flatness and eccentricity are precomputed by the ellipsoid */
 
-    f = 1 - (b / a);
-    e2 = 2 * f - f * f;
-    e = Math.sqrt(e2);
-    e4 = e2 * e2;
-    e6 = e4 * e2;
+    a = ellipsoid.a;
+    e = ellipsoid.e;
+    e2 = ellipsoid.e2;
+    e4 = ellipsoid.e4;
+    e6 = ellipsoid.e6;
 
     /* Convert latitude/longitude to radians */
   
@@ -386,7 +558,8 @@ public final class CoordinateUtil {
   */
 
   public static boolean utmToLatLon(UTM utm, LatLon latLon, int datum) {
-    double a, b, f, e, e2, e4, e6, e8;
+    Ellipsoid ellipsoid;
+    double a, e, e2, e4, e6, e8;
     double x, y, k0, rho, t, chi, phi, phi1, phit;
     double lambda, phi0, e1, e12, e13, e14;
     double mm, mm0, mu, ep2, cc1, tt1, nn1, rr1;
@@ -400,32 +573,20 @@ public final class CoordinateUtil {
 
     /* Converts UTM to lat/long, using the specified datum */
 
-    switch (datum) {
-    case CLARKE_1866_DATUM:
-      a = 6378206.4;
-      b = 6356583.8;
-      break;
-    case GRS_80_DATUM:
-      a = 6378137;
-      b = 6356752.3;
-      break;
-    case WGS_84_DATUM:
-      a = 6378137.0;    /* semimajor axis of ellipsoid (meters) */
-      b = 6356752.31425;    /* semiminor axis of ellipsoid (meters) */
-      break;
-    default:
+    ellipsoid = Ellipsoid.forDatum(datum);
+    if (ellipsoid == null) {
       System.out.println("Unknown datum: " + datum + ".");
       return false;
     }
 
-    /* Calculate flatness and eccentricity */
+    /* Flatness and eccentricity are precomputed by the ellipsoid */
 
-    f = 1 - (b / a);
-    e2 = 2 * f - f * f;
-    e = Math.sqrt(e2);
-    e4 = e2 * e2;
-    e6 = e4 * e2;
-    e8 = e4 * e4;
+    a = ellipsoid.a;
+    e = ellipsoid.e;
+    e2 = ellipsoid.e2;
+    e4 = ellipsoid.e4;
+    e6 = ellipsoid.e6;
+    e8 = ellipsoid.e8;
 
     /* Given the UTM grid zone, generate a baseline lambda0 */
 
@@ -524,9 +685,7 @@ public final class CoordinateUtil {
       x = utm.getX() - 500000;
       y = utm.getY();
 
-      int zoneLatValue = UnsignedChar.getASCIIValue(zoneLat);
-      if (zoneLatValue > UnsignedChar.getASCIIValue('B') &&
-          zoneLatValue < UnsignedChar.getASCIIValue('N')) { // southern hemi.
+      if (isSouthernBand(zoneLat)) { // southern hemi.
         y -= 10000000;
       }
 
@@ -610,8 +769,13 @@ public final class CoordinateUtil {
   */
 
   public static DMS convertDecimalToDMS(double coordinate) {
-    return new DMS(getWholeDegrees(coordinate), getWholeMinutes(coordinate),
-      getSeconds(coordinate));
+
+    /* As the get... methods compute them, but each component only once */
+
+    int degrees = (int) coordinate;
+    double minutes = (coordinate - degrees) * 60;
+    int wholeMinutes = (int) minutes;
+    return new DMS(degrees, wholeMinutes, (minutes - wholeMinutes) * 60);
   }
 
   /**
@@ -751,21 +915,3 @@ public final class CoordinateUtil {
     return false;
   }
 }
-
-/**
-* <p>This class simply wraps a <code>double</code> to allow a
-* call-by-reference operation.</p>
-*/
-
-class Lambda0 {
-  double lambda0 = 0;
-}
-
-/**
-* <p>This class simply wraps a <code>String</code> to allow a
-* call-by-reference operation.</p>
-*/
-
-class GridZone {
-  String gridZone = "";
-}
@@ -0,0 +1,379 @@
+package geo;
+
+
+/**
+* <p><code>DatumShift</code> transforms lat/lon coordinates from one datum
+* to another, e.g., NAD27 (Clarke 1866) coordinates to WGS-84, before they
+* are projected, or after they are unprojected, on the target datum.  Two
+* methods are supported:</p>
+* <ul>
+* <li>the seven-parameter Helmert transformation (position vector
+* convention) of geocentric coordinates, and
+* <li>the abridged Molodensky transformation, which applies the
+* three-parameter geocentric shift directly to the geodetic coordinates.
+* </ul>
+* <p>A datum shift is immutable; everything that does not depend on the
+* coordinates is computed when it is constructed, so that the array
+* operations are straight-line loops over primitive columns.  Heights are
+* ellipsoidal heights in meters; where they are not supplied they are taken
+* as zero.</p>
+* <p>The predefined shifts are the NIMA (TR8350.2) mean Molodensky
+* parameters for NAD27 and ED50, the null shift from NAD83 (GRS-80) to
+* WGS-84, and the Ordnance Survey parameters for OSGB36.</p>
+* @author Jerry Smith
+* @version $Id: DatumShift.java $
+*/
+
+public final class DatumShift {
+  //
+  // Constants:
+  //
+  /**
+  * <p>The Helmert method.</p>
+  */
+
+  public static final int HELMERT = 0;
+  /**
+  * <p>The abridged Molodensky method.</p>
+  */
+
+  public static final int MOLODENSKY = 1;
+  private static final double ARC_SECOND = Math.PI / (180.0 * 3600.0);
+  private static final double DEGREE = Math.PI / 180.0;
+  /**
+  * <p>NAD27 to WGS-84, mean for CONUS.</p>
+  */
+
+  public static final DatumShift NAD27_CONUS_TO_WGS84 =
+    molodensky("NAD27_CONUS", CoordinateUtil.CLARKE_1866_DATUM,
+      CoordinateUtil.WGS_84_DATUM, -8, 160, 176);
+  /**
+  * <p>NAD27 to WGS-84, mean for Alaska (excluding the Aleutians).</p>
+  */
+
+  public static final DatumShift NAD27_ALASKA_TO_WGS84 =
+    molodensky("NAD27_ALASKA", CoordinateUtil.CLARKE_1866_DATUM,
+      CoordinateUtil.WGS_84_DATUM, -5, 135, 172);
+  /**
+  * <p>NAD27 to WGS-84, mean for Canada.</p>
+  */
+
+  public static final DatumShift NAD27_CANADA_TO_WGS84 =
+    molodensky("NAD27_CANADA", CoordinateUtil.CLARKE_1866_DATUM,
+      CoordinateUtil.WGS_84_DATUM, -10, 158, 187);
+  /**
+  * <p>NAD83 to WGS-84, the null shift (sub-meter agreement).</p>
+  */
+
+  public static final DatumShift NAD83_TO_WGS84 =
+    helmert("NAD83", CoordinateUtil.GRS_80_DATUM,
+      CoordinateUtil.WGS_84_DATUM, 0, 0, 0, 0, 0, 0, 0);
+  /**
+  * <p>ED50 (International 1924) to WGS-84, mean for Western Europe.</p>
+  */
+
+  public static final DatumShift ED50_TO_WGS84 =
+    molodensky("ED50", CoordinateUtil.INTERNATIONAL_1924_DATUM,
+      CoordinateUtil.WGS_84_DATUM, -87, -98, -121);
+  /**
+  * <p>OSGB36 (Airy 1830) to WGS-84, the Ordnance Survey Helmert
+  * parameters.</p>
+  */
+
+  public static final DatumShift OSGB36_TO_WGS84 =
+    helmert("OSGB36", CoordinateUtil.AIRY_1830_DATUM,
+      CoordinateUtil.WGS_84_DATUM, 446.448, -125.157, 542.060,
+      0.1502, 0.2470, 0.8421, -20.4894);
+  private static final DatumShift[] PREDEFINED = {
+    NAD27_CONUS_TO_WGS84, NAD27_ALASKA_TO_WGS84, NAD27_CANADA_TO_WGS84,
+    NAD83_TO_WGS84, ED50_TO_WGS84, OSGB36_TO_WGS84
+  };
+  //
+  // Instance variables:
+  //
+  private final String name;
+  private final int method;
+  private final int sourceDatum, targetDatum;
+  private final double tx, ty, tz, rx, ry, rz, scale;
+  //
+  // Precomputed:  source and target ellipsoids and the Molodensky terms.
+  //
+  private final double sourceA, sourceE2;
+  private final double targetA, targetB, targetE2, targetEp2;
+  private final double da, daf;
+
+
+  private DatumShift(String name, int method, int sourceDatum,
+      int targetDatum, double tx, double ty, double tz,
+      double rx, double ry, double rz, double scale) {
+    Ellipsoid source = Ellipsoid.forDatum(sourceDatum);
+    Ellipsoid target = Ellipsoid.forDatum(targetDatum);
+    this.name = name;
+    this.method = method;
+    this.sourceDatum = sourceDatum;
+    this.targetDatum = targetDatum;
+    this.tx = tx;
+    this.ty = ty;
+    this.tz = tz;
+    this.rx = rx;
+    this.ry = ry;
+    this.rz = rz;
+    this.scale = scale;
+    sourceA = source.a;
+    sourceE2 = source.e2;
+    targetA = target.a;
+    targetB = target.b;
+    targetE2 = target.e2;
+    targetEp2 = target.ep2;
+    da = target.a - source.a;
+    daf = source.a * (target.f - source.f) + source.f * da;
+  }
+
+  /**
+  * <p>Creates a seven-parameter Helmert datum shift (position vector
+  * convention).</p>
+  * @param name The name of the datum shift.
+  * @param sourceDatum The datum of the coordinates to be transformed.
+  * @param targetDatum The datum of the transformed coordinates.
+  * @param tx The X translation (meters).
+  * @param ty The Y translation (meters).
+  * @param tz The Z translation (meters).
+  * @param rx The X rotation (arc seconds).
+  * @param ry The Y rotation (arc seconds).
+  * @param rz The Z rotation (arc seconds).
+  * @param scale The scale difference (parts per million).
+  * @return The datum shift, or <code>null</code> if a datum is unknown.
+  */
+
+  public static DatumShift helmert(String name, int sourceDatum,
+      int targetDatum, double tx, double ty, double tz,
+      double rx, double ry, double rz, double scale) {
+    if (!checkDatums(sourceDatum, targetDatum)) {
+      return null;
+    }
+    return new DatumShift(name, HELMERT, sourceDatum, targetDatum,
+      tx, ty, tz, rx * ARC_SECOND, ry * ARC_SECOND, rz * ARC_SECOND,
+      1 + scale * 1e-6);
+  }
+
+  /**
+  * <p>Creates an abridged Molodensky datum shift.</p>
+  * @param name The name of the datum shift.
+  * @param sourceDatum The datum of the coordinates to be transformed.
+  * @param targetDatum The datum of the transformed coordinates.
+  * @param dx The X translation (meters).
+  * @param dy The Y translation (meters).
+  * @param dz The Z translation (meters).
+  * @return The datum shift, or <code>null</code> if a datum is unknown.
+  */
+
+  public static DatumShift molodensky(String name, int sourceDatum,
+      int targetDatum, double dx, double dy, double dz) {
+    if (!checkDatums(sourceDatum, targetDatum)) {
+      return null;
+    }
+    return new DatumShift(name, MOLODENSKY, sourceDatum, targetDatum,
+      dx, dy, dz, 0, 0, 0, 1);
+  }
+
+  private static boolean checkDatums(int sourceDatum, int targetDatum) {
+    if (Ellipsoid.forDatum(sourceDatum) == null) {
+      System.out.println("Unknown datum: " + sourceDatum + ".");
+      return false;
+    }
+    if (Ellipsoid.forDatum(targetDatum) == null) {
+      System.out.println("Unknown datum: " + targetDatum + ".");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+  * <p>Gets a predefined datum shift by name, e.g.,
+  * <code>"NAD27_CONUS"</code>.</p>
+  * @param name The name.
+  * @return The datum shift, or <code>null</code> if there is none.
+  */
+
+  public static DatumShift forName(String name) {
+    for (int i = 0; i < PREDEFINED.length; i++) {
+      if (PREDEFINED[i].name.equalsIgnoreCase(name)) {
+        return PREDEFINED[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+  * <p>Gets the names of the predefined datum shifts.</p>
+  * @return The names.
+  */
+
+  public static String[] getNames() {
+    String[] names = new String[PREDEFINED.length];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = PREDEFINED[i].name;
+    }
+    return names;
+  }
+
+  /**
+  * <p>Gets the inverse datum shift, from the target datum to the source
+  * datum.  The inverse of a Helmert shift negates its parameters, which is
+  * exact to first order in the (small) rotations and scale.</p>
+  * @return The inverse datum shift.
+  */
+
+  public DatumShift inverse() {
+    return new DatumShift(name + "_INVERSE", method, targetDatum, sourceDatum,
+      -tx, -ty, -tz, -rx, -ry, -rz, 2 - scale);
+  }
+
+  /**
+  * <p>Gets the name.</p>
+  * @return The name.
+  */
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+  * <p>Gets the method, {@link #HELMERT} or {@link #MOLODENSKY}.</p>
+  * @return The method.
+  */
+
+  public int getMethod() {
+    return method;
+  }
+
+  /**
+  * <p>Gets the source datum.</p>
+  * @return The source datum.
+  */
+
+  public int getSourceDatum() {
+    return sourceDatum;
+  }
+
+  /**
+  * <p>Gets the target datum.</p>
+  * @return The target datum.
+  */
+
+  public int getTargetDatum() {
+    return targetDatum;
+  }
+
+  /**
+  * <p>Transforms a lat/lon coordinate (modified call-by-reference),
+  * assuming a zero height.</p>
+  * @param latLon The lat/lon coordinate object.
+  */
+
+  public void transform(LatLon latLon) {
+    double[] latitude = {latLon.getLatitude()};
+    double[] longitude = {latLon.getLongitude()};
+    transform(latitude, longitude, null, 0, 1);
+    latLon.setLatitude(latitude[0]);
+    latLon.setLongitude(longitude[0]);
+  }
+
+  /**
+  * <p>Transforms a range of lat/lon coordinates in place.</p>
+  * @param latitudes The latitudes (modified).
+  * @param longitudes The longitudes (modified).
+  * @param heights The ellipsoidal heights (modified), or <code>null</code>
+  * for zero heights.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  */
+
+  public void transform(double[] latitudes, double[] longitudes,
+      double[] heights, int offset, int length) {
+    if (method == HELMERT) {
+      helmert(latitudes, longitudes, heights, offset, length);
+    }
+    else {
+      molodensky(latitudes, longitudes, heights, offset, length);
+    }
+  }
+
+  //
+  // Geodetic to geocentric on the source ellipsoid, the Helmert
+  // transformation, and geocentric to geodetic on the target ellipsoid
+  // (Bowring's method, sub-millimeter near the surface).
+  //
+
+  private void helmert(double[] latitudes, double[] longitudes,
+      double[] heights, int offset, int length) {
+    double s = scale;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double phi = latitudes[i] * DEGREE;
+      double lambda = longitudes[i] * DEGREE;
+      double h = heights == null ? 0 : heights[i];
+      double sinPhi = Math.sin(phi);
+      double cosPhi = Math.cos(phi);
+      double nn = sourceA / Math.sqrt(1 - sourceE2 * sinPhi * sinPhi);
+      double x = (nn + h) * cosPhi * Math.cos(lambda);
+      double y = (nn + h) * cosPhi * Math.sin(lambda);
+      double z = (nn * (1 - sourceE2) + h) * sinPhi;
+
+      double x2 = tx + s * (x - rz * y + ry * z);
+      double y2 = ty + s * (rz * x + y - rx * z);
+      double z2 = tz + s * (-ry * x + rx * y + z);
+
+      double p = Math.sqrt(x2 * x2 + y2 * y2);
+      double theta = Math.atan2(z2 * targetA, p * targetB);
+      double sinTheta = Math.sin(theta);
+      double cosTheta = Math.cos(theta);
+      phi = Math.atan2(
+        z2 + targetEp2 * targetB * sinTheta * sinTheta * sinTheta,
+        p - targetE2 * targetA * cosTheta * cosTheta * cosTheta);
+      sinPhi = Math.sin(phi);
+      nn = targetA / Math.sqrt(1 - targetE2 * sinPhi * sinPhi);
+      latitudes[i] = phi / DEGREE;
+      longitudes[i] = Math.atan2(y2, x2) / DEGREE;
+      if (heights != null) {
+        heights[i] = p / Math.cos(phi) - nn;
+      }
+    }
+  }
+
+  private void molodensky(double[] latitudes, double[] longitudes,
+      double[] heights, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      double phi = latitudes[i] * DEGREE;
+      double lambda = longitudes[i] * DEGREE;
+      double sinPhi = Math.sin(phi);
+      double cosPhi = Math.cos(phi);
+      double sinLambda = Math.sin(lambda);
+      double cosLambda = Math.cos(lambda);
+      double w = 1 - sourceE2 * sinPhi * sinPhi;
+      double nn = sourceA / Math.sqrt(w);
+      double mm = sourceA * (1 - sourceE2) / (w * Math.sqrt(w));
+
+      double dPhi = (-tx * sinPhi * cosLambda - ty * sinPhi * sinLambda +
+        tz * cosPhi + daf * 2 * sinPhi * cosPhi) / mm;
+      double dLambda = (-tx * sinLambda + ty * cosLambda) / (nn * cosPhi);
+      latitudes[i] = (phi + dPhi) / DEGREE;
+      longitudes[i] = (lambda + dLambda) / DEGREE;
+      if (heights != null) {
+        heights[i] += tx * cosPhi * cosLambda + ty * cosPhi * sinLambda +
+          tz * sinPhi + daf * sinPhi * sinPhi - da;
+      }
+    }
+  }
+
+  /**
+  * <p>Gets a summary of the datum shift.</p>
+  * @return The summary.
+  */
+
+  public String toString() {
+    return "[name = " + name + ", method = " +
+      (method == HELMERT ? "Helmert" : "Molodensky") +
+      ", sourceDatum = " + sourceDatum + ", targetDatum = " + targetDatum +
+      "]";
+  }
+}
@@ -0,0 +1,383 @@
+package geo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+
+/**
+* <p><code>Ellipsoid</code> is the registry of the reference ellipsoids on
+* which the conversions are performed.  A datum, as passed to the
+* conversion operations, is the index of its ellipsoid in the registry;
+* the datum constants in {@link CoordinateUtil} are the indexes of the
+* predefined ellipsoids.</p>
+* <p>Everything that depends only on the ellipsoid, i.e., the eccentricity
+* and the series coefficients of the meridional arc, footpoint latitude,
+* and polar stereographic formulae, is computed once, when the ellipsoid is
+* registered, so that resolving a datum is an array read.  Ellipsoids are
+* never removed or redefined, so a datum remains valid for the life of the
+* JVM.</p>
+* <p>Additional ellipsoids may be registered programmatically, or from a
+* properties file of entries of the form:</p>
+* <pre>
+* # name = semimajor axis (meters), inverse flattening
+* HAYFORD_1909 = 6378388, 297
+* </pre>
+* <p>If the system property <code>geo.ellipsoids</code> names such a file,
+* it is loaded when this class is initialized.  The entries of a file are
+* registered in name order, so that the datums they are assigned do not
+* change from run to run, and all together:  if any entry is invalid, none
+* is registered.</p>
+* @author Jerry Smith
+* @version $Id: Ellipsoid.java $
+*/
+
+public final class Ellipsoid {
+  //
+  // Constants:
+  //
+  /**
+  * <p>The system property naming an ellipsoid file to load at startup.</p>
+  */
+
+  public static final String ELLIPSOIDS_PROPERTY = "geo.ellipsoids";
+  //
+  // The registry, indexed by datum; replaced, never modified, on
+  // registration, so that readers need no locking.
+  //
+  private static volatile Ellipsoid[] registry = new Ellipsoid[0];
+
+  static {
+    register("CLARKE_1866", 6378206.4, 6356583.8, 0.0);
+    register("GRS_80", 6378137, 6356752.3, 0.0);
+    register("WGS_84", 6378137.0, 6356752.31425, 0.0);
+    register("BESSEL_1841", 6377397.155, 0.0, 1 / 299.1528128);
+    register("INTERNATIONAL_1924", 6378388.0, 0.0, 1 / 297.0);
+    register("AIRY_1830", 6377563.396, 0.0, 1 / 299.3249646);
+    register("KRASSOVSKY_1940", 6378245.0, 0.0, 1 / 298.3);
+    register("WGS_72", 6378135.0, 0.0, 1 / 298.26);
+    String path = System.getProperty(ELLIPSOIDS_PROPERTY);
+    if (path != null) {
+      load(new File(path));
+    }
+  }
+
+  //
+  // Instance variables:
+  //
+  private final String name;
+  private final int datum;
+  //
+  // Precomputed, read directly by the conversions:
+  //
+  final double a, b, f, e, e2, e4, e6, e8, ep2;
+  final double m1, m2, m3, m4, mm0;
+  final double f2, f4, f6, f8;
+  final double p2, p4, p6, p8;
+  final double upsScale;
+
+
+  private Ellipsoid(String name, int datum, double a, double b, double f) {
+    this.name = name;
+    this.datum = datum;
+    this.a = a;
+    if (b != 0.0) {
+
+      /* Calculate flatness from the axes (as the original datums did) */
+
+      this.b = b;
+      this.f = 1 - (b / a);
+    }
+    else {
+      this.b = a * (1 - f);
+      this.f = f;
+    }
+
+    /* Calculate eccentricity */
+
+    e2 = 2 * this.f - this.f * this.f;
+    e = Math.sqrt(e2);
+    e4 = e2 * e2;
+    e6 = e4 * e2;
+    e8 = e4 * e4;
+    ep2 = e2 / (1 - e2);
+
+    /* Meridional arc; phi0 is zero for UTM */
+
+    double phi0 = 0.0;
+    m1 = 1 - e2 / 4 - 3 * e4 / 64 - 5 * e6 / 256;
+    m2 = 3 * e2 / 8 + 3 * e4 / 32 + 45 * e6 / 1024;
+    m3 = 15 * e4 / 256 + 45 * e6 / 1024;
+    m4 = 35 * e6 / 3072;
+    mm0 = a * (m1 * phi0 - m2 * Math.sin(2 * phi0) +
+      m3 * Math.sin(4 * phi0) - m4 * Math.sin(6 * phi0));
+
+    /* Footpoint latitude */
+
+    double e1 = (1 - Math.sqrt(1 - e2)) / (1 + Math.sqrt(1 - e2));
+    double e12 = e1 * e1;
+    double e13 = e1 * e12;
+    double e14 = e12 * e12;
+    f2 = 3 * e1 / 2 - 27 * e13 / 32;
+    f4 = 21 * e12 / 16 - 55 * e14 / 32;
+    f6 = 151 * e13 / 96;
+    f8 = 1097 * e14 / 512;
+
+    /* Polar stereographic */
+
+    p2 = e2 / 2 + 5 * e4 / 24 + e6 / 12 + 13 * e8 / 360;
+    p4 = 7 * e4 / 48 + 29 * e6 / 240 + 811 * e8 / 11520;
+    p6 = 7 * e6 / 120 + 81 * e8 / 1120;
+    p8 = 4279 * e8 / 161280;
+    upsScale = Math.sqrt(Math.pow(1 + e, 1 + e) * Math.pow(1 - e, 1 - e));
+  }
+
+  private static synchronized int register(String name, double a, double b,
+      double f) {
+    Ellipsoid[] updated = add(registry, name, a, b, f);
+    if (updated == null) {
+      return -1;
+    }
+    registry = updated;
+    return find(updated, name).datum;
+  }
+
+  //
+  // Registers the entries of a file, all or none, with a single update of
+  // the registry.
+  //
+
+  private static synchronized int register(String[] names, double[] a,
+      double[] f) {
+    Ellipsoid[] updated = registry;
+    for (int i = 0; i < names.length; i++) {
+      updated = add(updated, names[i], a[i], 0.0, f[i]);
+      if (updated == null) {
+        return -1;
+      }
+    }
+    registry = updated;
+    return names.length;
+  }
+
+  //
+  // Returns a copy of a registry with an ellipsoid added, the registry
+  // itself if the ellipsoid is already defined, with the same parameters,
+  // or null if the ellipsoid is invalid.
+  //
+
+  private static Ellipsoid[] add(Ellipsoid[] current, String name,
+      double a, double b, double f) {
+    Ellipsoid existing = find(current, name);
+    if (existing != null) {
+      if (existing.a == a && (b != 0.0 ? existing.b == b : existing.f == f)) {
+        return current;
+      }
+      System.out.println("Ellipsoid already defined: " + name + ".");
+      return null;
+    }
+    if (!(a > 0.0) || (b != 0.0 ? !(b > 0.0 && b <= a) :
+        !(f >= 0.0 && f < 1.0))) {
+      System.out.println("Invalid ellipsoid: " + name + ".");
+      return null;
+    }
+    Ellipsoid[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = new Ellipsoid(name, current.length, a, b, f);
+    return updated;
+  }
+
+  private static Ellipsoid find(Ellipsoid[] current, String name) {
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].name.equalsIgnoreCase(name)) {
+        return current[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+  * <p>Registers an ellipsoid.  Registering an ellipsoid that is already
+  * defined, with the same parameters, returns its existing datum.</p>
+  * @param name The name of the ellipsoid.
+  * @param a The semimajor axis (meters).
+  * @param inverseFlattening The inverse flattening, <i>1/f</i>.
+  * @return The datum, or -1 if the ellipsoid is invalid or a different
+  * ellipsoid of the same name is already defined.
+  */
+
+  public static int register(String name, double a,
+      double inverseFlattening) {
+    if (name == null || name.length() == 0 || !(inverseFlattening > 1.0)) {
+      System.out.println("Invalid ellipsoid: " + name + ".");
+      return -1;
+    }
+    return register(name, a, 0.0, 1 / inverseFlattening);
+  }
+
+  /**
+  * <p>Registers the ellipsoids defined in a properties file; see the class
+  * description for the format.  If any entry is invalid, none is
+  * registered.</p>
+  * @param file The file.
+  * @return The number of ellipsoids registered, or -1 if the file cannot be
+  * read or an entry is invalid.
+  */
+
+  public static int load(File file) {
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      return load(in);
+    }
+    catch (IOException e) {
+      System.out.println("Cannot read ellipsoids: " + e.getMessage());
+      return -1;
+    }
+    finally {
+      if (in != null) {
+        try {
+          in.close();
+        }
+        catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /**
+  * <p>Registers the ellipsoids defined in properties-file format.  Every
+  * entry is read and checked before any is registered, so that if any
+  * entry is invalid, none is registered.</p>
+  * @param in The stream (not closed).
+  * @return The number of ellipsoids registered, or -1 if an entry is
+  * invalid.
+  * @throws IOException If the stream cannot be read.
+  */
+
+  public static int load(InputStream in) throws IOException {
+    Properties properties = new Properties();
+    properties.load(in);
+    String[] names = properties.stringPropertyNames().toArray(new String[0]);
+    Arrays.sort(names);
+    double[] a = new double[names.length];
+    double[] f = new double[names.length];
+    for (int i = 0; i < names.length; i++) {
+      String value = properties.getProperty(names[i]);
+      int comma = value.indexOf(',');
+      double inverseFlattening;
+      try {
+        a[i] = Double.parseDouble(value.substring(0, comma).trim());
+        inverseFlattening =
+          Double.parseDouble(value.substring(comma + 1).trim());
+      }
+      catch (RuntimeException e) {
+        inverseFlattening = Double.NaN;
+      }
+      if (names[i].length() == 0 || !(inverseFlattening > 1.0)) {
+        System.out.println("Invalid ellipsoid: " + names[i] + " = " +
+          value + ".");
+        return -1;
+      }
+      f[i] = 1 / inverseFlattening;
+    }
+    return register(names, a, f);
+  }
+
+  /**
+  * <p>Gets the ellipsoid for a datum.</p>
+  * @param datum The datum.
+  * @return The ellipsoid, or <code>null</code> if the datum is unknown.
+  */
+
+  public static Ellipsoid forDatum(int datum) {
+    Ellipsoid[] current = registry;
+    return datum >= 0 && datum < current.length ? current[datum] : null;
+  }
+
+  /**
+  * <p>Gets an ellipsoid by name, e.g., <code>"WGS_84"</code>, ignoring
+  * case.</p>
+  * @param name The name.
+  * @return The ellipsoid, or <code>null</code> if there is none.
+  */
+
+  public static Ellipsoid forName(String name) {
+    return find(registry, name);
+  }
+
+  /**
+  * <p>Gets the names of the registered ellipsoids, in datum order.</p>
+  * @return The names.
+  */
+
+  public static String[] getNames() {
+    Ellipsoid[] current = registry;
+    String[] names = new String[current.length];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = current[i].name;
+    }
+    return names;
+  }
+
+  /**
+  * <p>Gets the name.</p>
+  * @return The name.
+  */
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+  * <p>Gets the datum, i.e., the index of the ellipsoid in the
+  * registry.</p>
+  * @return The datum.
+  */
+
+  public int getDatum() {
+    return datum;
+  }
+
+  /**
+  * <p>Gets the semimajor axis.</p>
+  * @return The semimajor axis (meters).
+  */
+
+  public double getSemiMajorAxis() {
+    return a;
+  }
+
+  /**
+  * <p>Gets the semiminor axis.</p>
+  * @return The semiminor axis (meters).
+  */
+
+  public double getSemiMinorAxis() {
+    return b;
+  }
+
+  /**
+  * <p>Gets the flattening.</p>
+  * @return The flattening.
+  */
+
+  public double getFlattening() {
+    return f;
+  }
+
+  /**
+  * <p>Gets the first eccentricity.</p>
+  * @return The eccentricity.
+  */
+
+  public double getEccentricity() {
+    return e;
+  }
+
+  public String toString() {
+    return name + " (a = " + a + ", 1/f = " + (1 / f) + ")";
+  }
+}
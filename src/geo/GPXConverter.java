@@ -0,0 +1,521 @@
+package geo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.stax.StAXResult;
+
+
+/**
+* <p><code>GPXConverter</code> reprojects the points of a GPX document, the
+* waypoints, route points, and track points, between their lat/lon
+* attributes and UTM coordinates.  GPX has no place for projected
+* coordinates, so they are held in an extension element of each point,
+* <code>&lt;cc:utm zone="13S" easting="330464.40"
+* northing="3573233.20"/&gt;</code>, in the {@link #UTM_NAMESPACE}
+* namespace:</p>
+* <ul>
+* <li>lat/lon to UTM adds the extension to each point, or replaces the
+* extension that it has;
+* <li>UTM to lat/lon sets the <code>lat</code> and <code>lon</code>
+* attributes of each point that has the extension, e.g., after its
+* eastings and northings have been edited.
+* </ul>
+* <p>Everything else is copied through unchanged.  The document is read and
+* written as a stream of StAX events, buffered only until a block of points
+* has been collected and converted by {@link CoordinateBatch}, so the
+* memory used is constant, whatever the size of the document.</p>
+* @author Jerry Smith
+* @version $Id: GPXConverter.java $
+*/
+
+public class GPXConverter {
+  //
+  // Constants:
+  //
+  /**
+  * <p>The namespace of the UTM extension element.</p>
+  */
+
+  public static final String UTM_NAMESPACE = "urn:x-convert-coordinates:utm";
+  private static final String UTM_PREFIX = "cc";
+  private static final String UTM = "utm";
+  private static final String EXTENSIONS = "extensions";
+  private static final int BLOCK_SIZE = 4096;
+  private static final int MAX_PENDING = 1 << 18;
+  private static final int LATLON_DECIMALS = 9;
+  private static final int UTM_DECIMALS = 2;
+  private static final long[] POWERS_OF_TEN = {
+    1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+    1000000000L
+  };
+  private static final QName LAT = new QName("lat");
+  private static final QName LON = new QName("lon");
+  private static final QName ZONE = new QName("zone");
+  private static final QName EASTING = new QName("easting");
+  private static final QName NORTHING = new QName("northing");
+  //
+  // Instance variables:
+  //
+  private int direction;
+  private int datum;
+  private long pointCount = 0;
+  private long errorCount = 0;
+  //
+  // The conversion in progress:  the events since the last block, with the
+  // points of the block.  For lat/lon to UTM, insertAt is the index of the
+  // event before which each point's extension is inserted; for UTM to
+  // lat/lon, it is the index of each point's start element.
+  //
+  private XMLEventFactory events = XMLEventFactory.newInstance();
+  private XMLStreamWriter streamWriter;
+  private XMLEventWriter writer;
+  private List<XMLEvent> pending = new ArrayList<XMLEvent>();
+  private int[] insertAt = new int[BLOCK_SIZE];
+  private boolean[] wrap = new boolean[BLOCK_SIZE];
+  private double[] latitudes = new double[BLOCK_SIZE];
+  private double[] longitudes = new double[BLOCK_SIZE];
+  private int[] zones = new int[BLOCK_SIZE];
+  private double[] eastings = new double[BLOCK_SIZE];
+  private double[] northings = new double[BLOCK_SIZE];
+  private int count = 0;
+
+
+  /**
+  * <p>Constructs a GPX converter.</p>
+  * @param direction The conversion direction,
+  * {@link CoordinateFileConverter#LATLON_TO_UTM} or
+  * {@link CoordinateFileConverter#UTM_TO_LATLON}.
+  * @param datum The datum.
+  */
+
+  public GPXConverter(int direction, int datum) {
+    this.direction = direction;
+    this.datum = datum;
+  }
+
+  /**
+  * <p>Gets the number of points converted by the last conversion.</p>
+  * @return The point count.
+  */
+
+  public long getPointCount() {
+    return pointCount;
+  }
+
+  /**
+  * <p>Converts a document.</p>
+  * @param in The document (not closed).
+  * @param out The converted document, in UTF-8 (flushed, not closed).
+  * @throws IOException If the streams cannot be read or written, if the
+  * document is not well-formed, or if its points cannot be converted.
+  */
+
+  public void convert(InputStream in, OutputStream out) throws IOException {
+    ConversionStageEvent event = new ConversionStageEvent();
+    event.begin();
+    boolean failed = true;
+    try {
+      convertDocument(in, out);
+      failed = false;
+    }
+    finally {
+      event.end("gpx.convert", direction, datum, pointCount, errorCount, 0,
+        failed);
+    }
+  }
+
+  private void convertDocument(InputStream in, OutputStream out)
+      throws IOException {
+    if (Ellipsoid.forDatum(datum) == null) {
+      throw new IOException("Unknown datum: " + datum + ".");
+    }
+    pending.clear();
+    count = 0;
+    pointCount = 0;
+    errorCount = 0;
+    XMLEventReader reader = null;
+    try {
+      XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+      inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      reader = inputFactory.createXMLEventReader(in);
+
+      /* The extensions are written straight to the stream writer */
+
+      Writer text = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"),
+        1 << 16);
+      XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+      streamWriter = outputFactory.createXMLStreamWriter(text);
+      writer = outputFactory.createXMLEventWriter(
+        new StAXResult(streamWriter));
+      convert(reader);
+      flush();
+      writer.flush();
+      text.flush();
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e.getMessage());
+    }
+    finally {
+      try {
+        if (reader != null) {
+          reader.close();
+        }
+        if (writer != null) {
+          writer.close();
+        }
+      }
+      catch (XMLStreamException e) {
+        throw new IOException(e.getMessage());
+      }
+      writer = null;
+      streamWriter = null;
+    }
+  }
+
+  private void convert(XMLEventReader reader)
+      throws IOException, XMLStreamException {
+    int depth = 0;
+    int pointDepth = -1;
+    int extensionsEnd = -1;
+    boolean point = false;
+    boolean hasUTM = false;
+    while (reader.hasNext()) {
+      XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+        StartElement start = event.asStartElement();
+        String name = start.getName().getLocalPart();
+        if (pointDepth < 0 && isPoint(name)) {
+          if (count == BLOCK_SIZE) {
+            flush();
+          }
+          pointDepth = depth;
+          extensionsEnd = -1;
+          hasUTM = false;
+          point = startPoint(start);
+        }
+        else if (point && isUTM(start)) {
+
+          /* The extension is read, and copied or replaced */
+
+          hasUTM = readUTM(start, reader);
+          depth--;
+          continue;
+        }
+      }
+      else if (event.isEndElement()) {
+        if (depth == pointDepth) {
+          if (point) {
+            endPoint(extensionsEnd, hasUTM);
+          }
+          point = false;
+          pointDepth = -1;
+        }
+        else if (point && depth == pointDepth + 1 && EXTENSIONS.equals(
+            event.asEndElement().getName().getLocalPart())) {
+          extensionsEnd = pending.size();
+        }
+        depth--;
+      }
+      else if (event.isStartDocument()) {
+
+        /* The output is always UTF-8 */
+
+        pending.add(events.createStartDocument("UTF-8",
+          ((StartDocument) event).getVersion()));
+        event = events.createCharacters("\n");
+      }
+      pending.add(event);
+
+      /* Outside a point, the pending events are written once they pass */
+      /* their limit, e.g., in a large document with few points */
+
+      if (pointDepth < 0 && pending.size() > MAX_PENDING) {
+        flush();
+      }
+    }
+  }
+
+  private static boolean isPoint(String name) {
+    return name.equals("wpt") || name.equals("rtept") ||
+      name.equals("trkpt");
+  }
+
+  private static boolean isUTM(StartElement start) {
+    return UTM.equals(start.getName().getLocalPart()) &&
+      UTM_NAMESPACE.equals(start.getName().getNamespaceURI());
+  }
+
+  //
+  // Starts a point; returns whether or not it is converted.
+  //
+
+  private boolean startPoint(StartElement start) {
+    if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+      double latitude = parse(start.getAttributeByName(LAT));
+      double longitude = parse(start.getAttributeByName(LON));
+      if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+        errorCount++;
+        return false;
+      }
+      latitudes[count] = latitude;
+      longitudes[count] = longitude;
+    }
+    else {
+      insertAt[count] = pending.size();
+    }
+    return true;
+  }
+
+  //
+  // Reads an extension element, through its end element, which is copied
+  // for UTM to lat/lon, and left out for lat/lon to UTM; returns whether
+  // or not it is a valid UTM coordinate, for UTM to lat/lon.
+  //
+
+  private boolean readUTM(StartElement start, XMLEventReader reader)
+      throws XMLStreamException {
+    boolean copy = direction == CoordinateFileConverter.UTM_TO_LATLON;
+    if (copy) {
+      pending.add(start);
+    }
+    int depth = 1;
+    while (depth > 0) {
+      XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+      }
+      else if (event.isEndElement()) {
+        depth--;
+      }
+      if (copy) {
+        pending.add(event);
+      }
+    }
+    if (!copy) {
+      return false;
+    }
+    Attribute zone = start.getAttributeByName(ZONE);
+    int gridZone = CoordinateUtil.packGridZone(zone == null ? null :
+      zone.getValue());
+    double easting = parse(start.getAttributeByName(EASTING));
+    double northing = parse(start.getAttributeByName(NORTHING));
+    if (gridZone < 0 || Double.isNaN(easting) || Double.isNaN(northing)) {
+      errorCount++;
+      return false;
+    }
+    zones[count] = gridZone;
+    eastings[count] = easting;
+    northings[count] = northing;
+    return true;
+  }
+
+  //
+  // Ends a point, at its end element:  for lat/lon to UTM, the extension is
+  // inserted in the point's extensions element, or in a new one.
+  //
+
+  private void endPoint(int extensionsEnd, boolean hasUTM) {
+    if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+      wrap[count] = extensionsEnd < 0;
+      insertAt[count] = wrap[count] ? pending.size() : extensionsEnd;
+      count++;
+    }
+    else if (hasUTM) {
+      count++;
+    }
+  }
+
+  private static double parse(Attribute attribute) {
+    if (attribute == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(attribute.getValue().trim());
+    }
+    catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  //
+  // Converts the block of points, and writes the pending events with the
+  // extensions inserted, or the points' start elements replaced.
+  //
+
+  private void flush() throws IOException, XMLStreamException {
+    boolean ok;
+    if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+      ok = CoordinateBatch.latLonToUTM(latitudes, longitudes, zones,
+        eastings, northings, 0, count, datum);
+    }
+    else {
+      ok = CoordinateBatch.utmToLatLon(zones, eastings, northings,
+        latitudes, longitudes, 0, count, datum);
+    }
+    for (int i = 0; i < count; i++) {
+      if (direction == CoordinateFileConverter.LATLON_TO_UTM ?
+          zones[i] < 0 || Double.isNaN(eastings[i]) :
+          Double.isNaN(latitudes[i])) {
+        errorCount++;
+      }
+    }
+    if (!ok) {
+      throw new IOException("Unable to convert the points of a block.");
+    }
+    int point = 0;
+    for (int i = 0; i < pending.size(); i++) {
+      XMLEvent event = pending.get(i);
+      while (point < count && insertAt[point] == i) {
+        if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+          writeUTM(point);
+        }
+        else {
+          event = setLatLon(event.asStartElement(), point);
+        }
+        point++;
+      }
+      writer.add(event);
+    }
+    pending.clear();
+    pointCount += count;
+    count = 0;
+  }
+
+  private void writeUTM(int point) throws XMLStreamException {
+    if (wrap[point]) {
+      streamWriter.writeStartElement(EXTENSIONS);
+    }
+    streamWriter.writeEmptyElement(UTM_PREFIX, UTM, UTM_NAMESPACE);
+    streamWriter.writeNamespace(UTM_PREFIX, UTM_NAMESPACE);
+    streamWriter.writeAttribute("zone",
+      CoordinateUtil.unpackGridZone(zones[point]));
+    streamWriter.writeAttribute("easting",
+      format(eastings[point], UTM_DECIMALS));
+    streamWriter.writeAttribute("northing",
+      format(northings[point], UTM_DECIMALS));
+    if (wrap[point]) {
+      streamWriter.writeEndElement();
+    }
+  }
+
+  private StartElement setLatLon(StartElement start, int point) {
+    List<Attribute> attributes = new ArrayList<Attribute>();
+    for (Iterator<?> i = start.getAttributes(); i.hasNext(); ) {
+      Attribute attribute = (Attribute) i.next();
+      QName name = attribute.getName();
+      if (name.equals(LAT)) {
+        attribute = events.createAttribute(LAT,
+          format(latitudes[point], LATLON_DECIMALS));
+      }
+      else if (name.equals(LON)) {
+        attribute = events.createAttribute(LON,
+          format(longitudes[point], LATLON_DECIMALS));
+      }
+      attributes.add(attribute);
+    }
+    return events.createStartElement(start.getName(), attributes.iterator(),
+      start.getNamespaces());
+  }
+
+  //
+  // Formats a value with a fixed number of decimals, rounding half up,
+  // without trailing zeros, as GPX files usually are.
+  //
+
+  private static String format(double value, int decimals) {
+    long unit = POWERS_OF_TEN[decimals];
+    long scaled = Math.round(Math.abs(value) * unit);
+    StringBuilder text = new StringBuilder(24);
+    if (value < 0 && scaled != 0) {
+      text.append('-');
+    }
+    text.append(scaled / unit);
+    long fraction = scaled % unit;
+    if (fraction != 0) {
+      text.append('.');
+      for (long digit = unit / 10; fraction != 0; digit /= 10) {
+        text.append((char) ('0' + fraction / digit));
+        fraction %= digit;
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+  * <p>Runs the GPX converter as a command-line utility:</p>
+  * <ul>
+  * <li><code>GPXConverter -latlon tracks.gpx utm.gpx</code>
+  * <li><code>GPXConverter -utm utm.gpx tracks.gpx</code>
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int datum = CoordinateUtil.WGS_84_DATUM;
+    int first = 0;
+    if (args.length > 2 && args[0].equals("-datum")) {
+      Ellipsoid ellipsoid = Ellipsoid.forName(args[1]);
+      if (ellipsoid == null) {
+        System.out.println("Unknown datum: " + args[1] + ".");
+        return;
+      }
+      datum = ellipsoid.getDatum();
+      first = 2;
+    }
+    if (args.length != first + 3 ||
+        !(args[first].equals("-latlon") || args[first].equals("-utm"))) {
+      System.out.println("Usage:  java " + GPXConverter.class.getName() +
+        " [-datum <name>] -latlon|-utm <input> <output>");
+      return;
+    }
+    int direction = args[first].equals("-latlon") ?
+      CoordinateFileConverter.LATLON_TO_UTM :
+      CoordinateFileConverter.UTM_TO_LATLON;
+    GPXConverter converter = new GPXConverter(direction, datum);
+    try {
+      long start = System.currentTimeMillis();
+      InputStream in = new BufferedInputStream(
+        new FileInputStream(args[first + 1]), 1 << 16);
+      OutputStream out = null;
+      try {
+        out = new FileOutputStream(args[first + 2]);
+        converter.convert(in, out);
+      }
+      finally {
+        in.close();
+        if (out != null) {
+          out.close();
+        }
+      }
+      System.out.println("Converted " + converter.getPointCount() +
+        " point(s) in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+    catch (IOException e) {
+      System.out.println("Unable to convert " + args[first + 1] + ": " +
+        e.getMessage());
+    }
+  }
+}
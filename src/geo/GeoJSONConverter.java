@@ -0,0 +1,640 @@
+package geo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+
+/**
+* <p><code>GeoJSONConverter</code> reprojects the coordinates of a GeoJSON
+* document, from lon/lat to UTM eastings and northings in a single grid
+* zone, or back.  Every position, i.e., every innermost array of numbers in
+* a <code>"coordinates"</code> member, has its first two numbers replaced;
+* everything else, including a third (height) coordinate, whitespace, and
+* members that the converter does not know, is copied through unchanged.
+* The <code>"properties"</code> of a feature are copied unchanged, even
+* if they have a <code>"coordinates"</code> member, and so is a
+* <code>"bbox"</code> member:  it is not recomputed.</p>
+* <p>The document is read with an incremental tokenizer, and is never held
+* in memory:  the output is buffered only until a block of positions has
+* been collected and converted by {@link CoordinateBatch}, so the memory
+* used is constant, whatever the size of the document.  The tokenizer
+* checks the structure of the document, but not, e.g., that the members
+* of a geometry are consistent.</p>
+* <p>The grid zone may be given; otherwise, lon/lat coordinates are
+* projected into the grid zone of the first position.  UTM coordinates
+* are unprojected from the given grid zone.</p>
+* @author Jerry Smith
+* @version $Id: GeoJSONConverter.java $
+*/
+
+public class GeoJSONConverter {
+  //
+  // Constants:
+  //
+  private static final int BLOCK_SIZE = 4096;
+  private static final int MAX_PENDING = 1 << 20;
+  private static final int MAX_DEPTH = 256;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int LATLON_DECIMALS = 7;
+  private static final int UTM_DECIMALS = 2;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final char[] COORDINATES = "coordinates".toCharArray();
+  private static final char[] PROPERTIES = "properties".toCharArray();
+  private static final int OTHER_MEMBER = 0;
+  private static final int COORDINATES_MEMBER = 1;
+  private static final int PROPERTIES_MEMBER = 2;
+  //
+  // Instance variables:
+  //
+  private int direction;
+  private int datum;
+  private int gridZone;
+  private long positionCount = 0;
+  private long errorCount = 0;
+  //
+  // The conversion in progress:  the input, and the output buffered since
+  // the last block, with the positions of the converted coordinates.
+  //
+  private Reader in;
+  private Writer out;
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+  private StringBuilder pending = new StringBuilder();
+  private int[] marks = new int[BLOCK_SIZE];
+  private double[] first = new double[BLOCK_SIZE];
+  private double[] second = new double[BLOCK_SIZE];
+  private double[] resultFirst = new double[BLOCK_SIZE];
+  private double[] resultSecond = new double[BLOCK_SIZE];
+  private int[] zones = new int[BLOCK_SIZE];
+  private int count = 0;
+  private char[] number = new char[64];
+
+
+  /**
+  * <p>Constructs a GeoJSON converter.</p>
+  * @param direction The conversion direction,
+  * {@link CoordinateFileConverter#LATLON_TO_UTM} or
+  * {@link CoordinateFileConverter#UTM_TO_LATLON}.
+  * @param datum The datum.
+  * @param gridZone The packed grid zone, or -1 for lon/lat input to take
+  * the grid zone of the first position.
+  */
+
+  public GeoJSONConverter(int direction, int datum, int gridZone) {
+    this.direction = direction;
+    this.datum = datum;
+    this.gridZone = gridZone;
+  }
+
+  /**
+  * <p>Gets the grid zone, which, if it was not given, is set by the first
+  * position converted.</p>
+  * @return The packed grid zone, or -1 if it is not yet known.
+  */
+
+  public int getGridZone() {
+    return gridZone;
+  }
+
+  /**
+  * <p>Gets the number of positions converted by the last conversion.</p>
+  * @return The position count.
+  */
+
+  public long getPositionCount() {
+    return positionCount;
+  }
+
+  /**
+  * <p>Converts a document.</p>
+  * @param in The document (not closed).
+  * @param out The converted document (flushed, not closed).
+  * @throws IOException If the streams cannot be read or written, if the
+  * document is not well-formed JSON, or if its coordinates cannot be
+  * converted.
+  */
+
+  public void convert(Reader in, Writer out) throws IOException {
+    ConversionStageEvent event = new ConversionStageEvent();
+    event.begin();
+    boolean failed = true;
+    try {
+      convertDocument(in, out);
+      failed = false;
+    }
+    finally {
+      event.end("geojson.convert", direction, datum, positionCount,
+        errorCount, 0, failed);
+    }
+  }
+
+  private void convertDocument(Reader in, Writer out) throws IOException {
+    if (Ellipsoid.forDatum(datum) == null) {
+      throw new IOException("Unknown datum: " + datum + ".");
+    }
+    if (direction == CoordinateFileConverter.UTM_TO_LATLON &&
+        gridZone < 0) {
+      throw new IOException("No grid zone for UTM coordinates.");
+    }
+    this.in = in;
+    this.out = out;
+    position = limit = 0;
+    pending.setLength(0);
+    count = 0;
+    positionCount = 0;
+    errorCount = 0;
+    skipWhitespace();
+    parseValue(false, false, 0);
+    skipWhitespace();
+    if (peek() >= 0) {
+      throw error("Unexpected content after the document");
+    }
+    flush();
+    out.flush();
+  }
+
+  //
+  // The tokenizer:  each method consumes a token, or a value, and copies
+  // it to the pending output.
+  //
+
+  private void parseValue(boolean coordinates, boolean properties,
+      int depth) throws IOException {
+    if (depth > MAX_DEPTH) {
+      throw error("Too deeply nested");
+    }
+    int c = peek();
+    if (c == '{') {
+      parseObject(properties, depth);
+    }
+    else if (c == '[') {
+      parseArray(coordinates, properties, depth);
+    }
+    else if (c == '"') {
+      parseString();
+    }
+    else if (c == '-' || (c >= '0' && c <= '9')) {
+      copyNumber();
+    }
+    else if (c == 't' || c == 'f' || c == 'n') {
+      copyLiteral();
+    }
+    else {
+      throw error("Unexpected " + describe(c));
+    }
+  }
+
+  private void parseObject(boolean properties, int depth)
+      throws IOException {
+    copy();    // {
+    skipWhitespace();
+    if (peek() == '}') {
+      copy();
+      return;
+    }
+    while (true) {
+      if (peek() != '"') {
+        throw error("Expected a member name, found " + describe(peek()));
+      }
+      int member = parseString();
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      parseValue(!properties && member == COORDINATES_MEMBER,
+        properties || member == PROPERTIES_MEMBER, depth + 1);
+      skipWhitespace();
+      if (peek() == '}') {
+        copy();
+        return;
+      }
+      expect(',');
+      skipWhitespace();
+    }
+  }
+
+  private void parseArray(boolean coordinates, boolean properties,
+      int depth) throws IOException {
+    copy();    // [
+    skipWhitespace();
+    int c = peek();
+    if (coordinates && (c == '-' || (c >= '0' && c <= '9'))) {
+      parsePosition();
+      return;
+    }
+    if (c == ']') {
+      copy();
+      return;
+    }
+    while (true) {
+      parseValue(coordinates, properties, depth + 1);
+      skipWhitespace();
+      if (peek() == ']') {
+        copy();
+        return;
+      }
+      expect(',');
+      skipWhitespace();
+    }
+  }
+
+  //
+  // A position, after its [:  the first two numbers are held for
+  // conversion, and the converted numbers are inserted at the mark.
+  //
+
+  private void parsePosition() throws IOException {
+    if (count == BLOCK_SIZE) {
+      flush();
+    }
+    marks[count] = pending.length();
+    first[count] = readNumber();
+    skipWhitespaceUncopied();
+    if (read() != ',') {
+      throw error("Expected a second coordinate");
+    }
+    skipWhitespaceUncopied();
+    second[count] = readNumber();
+    count++;
+    while (true) {
+      skipWhitespace();
+      if (peek() == ']') {
+        copy();
+        return;
+      }
+      expect(',');
+      skipWhitespace();
+      copyNumber();
+    }
+  }
+
+  //
+  // Copies a string; returns the member that it names, if it is a member
+  // name.
+  //
+
+  private int parseString() throws IOException {
+    copy();    // "
+    int index = 0;
+    boolean coordinates = true, properties = true;
+    while (true) {
+      int c = read();
+      if (c < 0) {
+        throw error("Unterminated string");
+      }
+      pending.append((char) c);
+      checkPending();
+      if (c == '"') {
+        break;
+      }
+      if (c == '\\') {
+        int escaped = read();
+        if (escaped < 0) {
+          throw error("Unterminated string");
+        }
+        pending.append((char) escaped);
+        coordinates = properties = false;
+      }
+      else {
+        coordinates &= index < COORDINATES.length && COORDINATES[index] == c;
+        properties &= index < PROPERTIES.length && PROPERTIES[index] == c;
+        index++;
+      }
+    }
+    if (coordinates && index == COORDINATES.length) {
+      return COORDINATES_MEMBER;
+    }
+    if (properties && index == PROPERTIES.length) {
+      return PROPERTIES_MEMBER;
+    }
+    return OTHER_MEMBER;
+  }
+
+  private void copyNumber() throws IOException {
+    int length = scanNumber();
+    pending.append(number, 0, length);
+  }
+
+  private void copyLiteral() throws IOException {
+    int c;
+    while ((c = peek()) >= 'a' && c <= 'z') {
+      copy();
+    }
+  }
+
+  private double readNumber() throws IOException {
+    int length = scanNumber();
+    if (length == 0) {
+      throw error("Expected a number, found " + describe(peek()));
+    }
+    return parseNumber(length);
+  }
+
+  //
+  // Scans the characters of a number into the number buffer.
+  //
+
+  private int scanNumber() throws IOException {
+    int length = 0;
+    int c;
+    while ((c = peek()) >= 0 && (c == '-' || c == '+' || c == '.' ||
+        c == 'e' || c == 'E' || (c >= '0' && c <= '9'))) {
+      if (length == number.length) {
+        throw error("Number too long");
+      }
+      number[length++] = (char) read();
+    }
+    return length;
+  }
+
+  //
+  // Parses the number buffer without creating a string; the result is
+  // correctly rounded when the significand fits in 15 digits, and
+  // Double.parseDouble() handles everything else.
+  //
+
+  private double parseNumber(int length) throws IOException {
+    int i = 0;
+    boolean negative = number[0] == '-';
+    if (negative) {
+      i++;
+    }
+    long significand = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean point = false;
+    for (; i < length; i++) {
+      char c = number[i];
+      if (c >= '0' && c <= '9') {
+        if (significand != 0 || c != '0') {
+          significand = significand * 10 + (c - '0');
+          digits++;
+        }
+        if (point) {
+          scale++;
+        }
+      }
+      else if (c == '.' && !point) {
+        point = true;
+      }
+      else {
+        break;
+      }
+    }
+    if (i == length && digits <= 15 && scale < POWERS_OF_TEN.length) {
+      double value = significand / POWERS_OF_TEN[scale];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(new String(number, 0, length));
+    }
+    catch (NumberFormatException e) {
+      throw error("Invalid number " + new String(number, 0, length));
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    if (peek() != expected) {
+      throw error("Expected '" + expected + "', found " + describe(peek()));
+    }
+    copy();
+  }
+
+  private void skipWhitespace() throws IOException {
+    int c;
+    while ((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      copy();
+    }
+  }
+
+  private void skipWhitespaceUncopied() throws IOException {
+    int c;
+    while ((c = peek()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      read();
+    }
+  }
+
+  private void copy() throws IOException {
+    pending.append((char) read());
+    checkPending();
+  }
+
+  //
+  // Writes the pending output once it passes its limit, e.g., in a large
+  // member with no positions, converting the positions held so far.
+  //
+
+  private void checkPending() throws IOException {
+    if (pending.length() > MAX_PENDING) {
+      flush();
+    }
+  }
+
+  private int peek() throws IOException {
+    if (position == limit) {
+      limit = in.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position];
+  }
+
+  private int read() throws IOException {
+    int c = peek();
+    if (c >= 0) {
+      position++;
+    }
+    return c;
+  }
+
+  private static String describe(int c) {
+    return c < 0 ? "end of input" : "'" + (char) c + "'";
+  }
+
+  private IOException error(String message) {
+    return new IOException(message + ".");
+  }
+
+  //
+  // Converts the block of positions, and writes the pending output with
+  // the converted coordinates inserted at their marks.
+  //
+
+  private void flush() throws IOException {
+    if (count > 0) {
+      convertBlock();
+    }
+    int from = 0;
+    for (int i = 0; i < count; i++) {
+      out.append(pending, from, marks[i]);
+      appendFixed(resultFirst[i], direction ==
+        CoordinateFileConverter.LATLON_TO_UTM ? UTM_DECIMALS : LATLON_DECIMALS);
+      out.write(',');
+      appendFixed(resultSecond[i], direction ==
+        CoordinateFileConverter.LATLON_TO_UTM ? UTM_DECIMALS : LATLON_DECIMALS);
+      from = marks[i];
+    }
+    out.append(pending, from, pending.length());
+    pending.setLength(0);
+    positionCount += count;
+    count = 0;
+  }
+
+  private void convertBlock() throws IOException {
+    if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+
+      /* GeoJSON positions are longitude first */
+
+      if (gridZone < 0) {
+        CoordinateBatch.latLonToUTM(second, first, zones, resultFirst,
+          resultSecond, 0, 1, datum);
+        gridZone = zones[0];
+      }
+      if (!countErrors(CoordinateBatch.latLonToUTMInZone(second, first,
+          gridZone, resultFirst, resultSecond, 0, count, datum))) {
+        throw new IOException("Unable to project into grid zone " +
+          CoordinateUtil.unpackGridZone(gridZone) + ".");
+      }
+    }
+    else {
+      for (int i = 0; i < count; i++) {
+        zones[i] = gridZone;
+      }
+      if (!countErrors(CoordinateBatch.utmToLatLon(zones, first, second,
+          resultSecond, resultFirst, 0, count, datum))) {
+        throw new IOException("Unable to unproject from grid zone " +
+          CoordinateUtil.unpackGridZone(gridZone) + ".");
+      }
+    }
+  }
+
+  //
+  // Counts the positions of the block that failed:  those with a NaN
+  // result, or all of them if the block failed with no results.  Returns
+  // whether or not the block was converted.
+  //
+
+  private boolean countErrors(boolean ok) {
+    int failed = 0;
+    for (int i = 0; i < count; i++) {
+      if (Double.isNaN(resultFirst[i]) || Double.isNaN(resultSecond[i])) {
+        failed++;
+      }
+    }
+    errorCount += ok || failed > 0 ? failed : count;
+    return ok;
+  }
+
+  //
+  // Writes a value with a fixed number of decimals, rounding half up.
+  //
+
+  private void appendFixed(double value, int decimals) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IOException("Unable to convert a position.");
+    }
+    long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[decimals]);
+    if (value < 0 && scaled != 0) {
+      out.write('-');
+    }
+    long unit = (long) POWERS_OF_TEN[decimals];
+    out.write(Long.toString(scaled / unit));
+    out.write('.');
+    long fraction = scaled % unit;
+    for (long digit = unit / 10; digit > 0; digit /= 10) {
+      out.write((char) ('0' + fraction / digit % 10));
+    }
+  }
+
+  /**
+  * <p>Runs the GeoJSON converter as a command-line utility:</p>
+  * <ul>
+  * <li><code>GeoJSONConverter -latlon tracks.geojson utm.geojson</code>
+  * (projected into the grid zone of the first position)
+  * <li><code>GeoJSONConverter -zone 13S -latlon tracks.geojson
+  * utm.geojson</code>
+  * <li><code>GeoJSONConverter -zone 13S -utm utm.geojson
+  * tracks.geojson</code>
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int datum = CoordinateUtil.WGS_84_DATUM;
+    int gridZone = -1;
+    int first = 0;
+    while (first < args.length - 3) {
+      if (args[first].equals("-datum")) {
+        Ellipsoid ellipsoid = Ellipsoid.forName(args[first + 1]);
+        if (ellipsoid == null) {
+          System.out.println("Unknown datum: " + args[first + 1] + ".");
+          return;
+        }
+        datum = ellipsoid.getDatum();
+        first += 2;
+      }
+      else if (args[first].equals("-zone")) {
+        gridZone = CoordinateUtil.packGridZone(args[first + 1]);
+        if (gridZone < 0) {
+          System.out.println("Invalid grid zone: " + args[first + 1] + ".");
+          return;
+        }
+        first += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length != first + 3 ||
+        !(args[first].equals("-latlon") || args[first].equals("-utm"))) {
+      System.out.println("Usage:  java " + GeoJSONConverter.class.getName() +
+        " [-datum <name>] [-zone <zone>] -latlon <input> <output>");
+      System.out.println("Usage:  java " + GeoJSONConverter.class.getName() +
+        " [-datum <name>] -zone <zone> -utm <input> <output>");
+      return;
+    }
+    int direction = args[first].equals("-latlon") ?
+      CoordinateFileConverter.LATLON_TO_UTM :
+      CoordinateFileConverter.UTM_TO_LATLON;
+    GeoJSONConverter converter =
+      new GeoJSONConverter(direction, datum, gridZone);
+    try {
+      long start = System.currentTimeMillis();
+      Reader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(args[first + 1]), "UTF-8"), BUFFER_SIZE);
+      Writer out = null;
+      try {
+        out = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(args[first + 2]), "UTF-8"), BUFFER_SIZE);
+        converter.convert(in, out);
+      }
+      finally {
+        in.close();
+        if (out != null) {
+          out.close();
+        }
+      }
+      System.out.println("Converted " + converter.getPositionCount() +
+        " position(s), grid zone " +
+        CoordinateUtil.unpackGridZone(converter.getGridZone()) + ", in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    }
+    catch (IOException e) {
+      System.out.println("Unable to convert " + args[first + 1] + ": " +
+        e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,416 @@
+package geo;
+
+
+/**
+* <p><code>GeometryProjector</code> reprojects boxes, linestrings, and
+* polygon rings, between lat/lon and UTM coordinates in a single grid zone.
+* A straight edge in one does not map to a straight edge in the other, so
+* the edges are densified:  each is split at its midpoint, recursively,
+* until the projected midpoint is within a tolerance of the chord between
+* the projected ends.  The vertices of each round of splitting are
+* projected together by {@link CoordinateBatch}.  The tight bounding box
+* of the result is computed as well; it is the bounding box of the
+* projected outline, which, for a box or a polygon, is that of the whole
+* area, to within the tolerance.  (The corners of a lat/lon box alone do
+* not give its UTM extent.)</p>
+* <p>The coordinates are given as two columns, as they are to
+* <code>CoordinateBatch</code>:  latitudes and longitudes, or eastings and
+* northings.  Edges are interpolated linearly in the source coordinates;
+* an edge across the 180th meridian must be split by the caller.</p>
+* <p>A projector keeps its work areas, and its results, from one operation
+* to the next, so that it allocates nothing once they have grown to the
+* size of the geometries:  one projector can serve a stream of requests,
+* e.g., of map tiles, but it is not thread-safe.</p>
+* @author Jerry Smith
+* @version $Id: GeometryProjector.java $
+*/
+
+public class GeometryProjector {
+  //
+  // Constants:
+  //
+  /**
+  * <p>The maximum number of times an edge is halved:  an edge becomes at
+  * most 2<sup>16</sup> edges.</p>
+  */
+
+  public static final int MAX_DEPTH = 16;
+  private static final int INITIAL_CAPACITY = 64;
+  //
+  // Instance variables:
+  //
+  private int direction;
+  private int datum;
+  private int gridZone;
+  private double tolerance;
+  //
+  // The work areas:  the vertices, in source and target coordinates, with
+  // whether the edge from each vertex to the next is to be tested, and
+  // the same for the next round; the midpoints of the edges tested; and
+  // the result, which is the current round.
+  //
+  private double[] source1 = new double[INITIAL_CAPACITY];
+  private double[] source2 = new double[INITIAL_CAPACITY];
+  private double[] target1 = new double[INITIAL_CAPACITY];
+  private double[] target2 = new double[INITIAL_CAPACITY];
+  private boolean[] split = new boolean[INITIAL_CAPACITY];
+  private double[] nextSource1 = new double[INITIAL_CAPACITY];
+  private double[] nextSource2 = new double[INITIAL_CAPACITY];
+  private double[] nextTarget1 = new double[INITIAL_CAPACITY];
+  private double[] nextTarget2 = new double[INITIAL_CAPACITY];
+  private boolean[] nextSplit = new boolean[INITIAL_CAPACITY];
+  private double[] middle1 = new double[INITIAL_CAPACITY];
+  private double[] middle2 = new double[INITIAL_CAPACITY];
+  private double[] projected1 = new double[INITIAL_CAPACITY];
+  private double[] projected2 = new double[INITIAL_CAPACITY];
+  private int[] zones = new int[INITIAL_CAPACITY];
+  private double[] box1 = new double[4];
+  private double[] box2 = new double[4];
+  private int count = 0;
+  private double[] bounds = new double[4];
+
+
+  /**
+  * <p>Constructs a projector.</p>
+  * @param direction The direction,
+  * {@link CoordinateFileConverter#LATLON_TO_UTM} or
+  * {@link CoordinateFileConverter#UTM_TO_LATLON}.
+  * @param datum The datum.
+  * @param gridZone The packed (UTM) grid zone.
+  * @param tolerance The maximum distance between a densified edge and the
+  * projected edge, in the target units:  meters for UTM, degrees for
+  * lat/lon.
+  */
+
+  public GeometryProjector(int direction, int datum, int gridZone,
+      double tolerance) {
+    this.direction = direction;
+    this.datum = datum;
+    this.gridZone = gridZone;
+    this.tolerance = tolerance;
+  }
+
+  /**
+  * <p>Gets the tolerance.</p>
+  * @return The tolerance, in the target units.
+  */
+
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+  * <p>Reprojects a box, i.e., the area between two latitudes and two
+  * longitudes, or two eastings and two northings, as a closed ring of four
+  * densified edges.</p>
+  * @param min1 The minimum latitude, or easting.
+  * @param min2 The minimum longitude, or northing.
+  * @param max1 The maximum latitude, or easting.
+  * @param max2 The maximum longitude, or northing.
+  * @return The number of vertices, or -1 if the operation is not
+  * successful.
+  */
+
+  public int projectBox(double min1, double min2, double max1, double max2) {
+    box1[0] = min1;
+    box2[0] = min2;
+    box1[1] = min1;
+    box2[1] = max2;
+    box1[2] = max1;
+    box2[2] = max2;
+    box1[3] = max1;
+    box2[3] = min2;
+    return project(box1, box2, 0, 4, true);
+  }
+
+  /**
+  * <p>Reprojects a linestring, or a polygon ring.</p>
+  * @param first The latitudes, or eastings.
+  * @param second The longitudes, or northings.
+  * @param offset The index of the first vertex.
+  * @param length The number of vertices.
+  * @param closed Whether or not the edge from the last vertex to the first
+  * is densified, too, as for a ring that does not repeat its first
+  * vertex.
+  * @return The number of vertices, or -1 if the operation is not
+  * successful.
+  */
+
+  public int project(double[] first, double[] second, int offset,
+      int length, boolean closed) {
+    count = 0;
+    if (length == 0) {
+      return 0;
+    }
+    int n = closed ? length + 1 : length;
+    ensureCapacity(n);
+    System.arraycopy(first, offset, source1, 0, length);
+    System.arraycopy(second, offset, source2, 0, length);
+    if (closed) {
+      source1[length] = first[offset];
+      source2[length] = second[offset];
+    }
+    if (!transform(source1, source2, target1, target2, n)) {
+      return -1;
+    }
+    for (int i = 0; i < n - 1; i++) {
+      split[i] = true;
+    }
+    split[n - 1] = false;
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+
+      /* Project the midpoints of the edges to be tested, together */
+
+      ensureNextCapacity(2 * n - 1);
+      int m = 0;
+      for (int i = 0; i < n - 1; i++) {
+        if (split[i]) {
+          middle1[m] = (source1[i] + source1[i + 1]) / 2;
+          middle2[m] = (source2[i] + source2[i + 1]) / 2;
+          m++;
+        }
+      }
+      if (m == 0) {
+        break;
+      }
+      if (!transform(middle1, middle2, projected1, projected2, m)) {
+        return -1;
+      }
+
+      /* Keep the midpoints that are off the chords, to be tested again */
+
+      int j = 0;
+      int k = 0;
+      for (int i = 0; i < n; i++) {
+        nextSource1[j] = source1[i];
+        nextSource2[j] = source2[i];
+        nextTarget1[j] = target1[i];
+        nextTarget2[j] = target2[i];
+        nextSplit[j] = false;
+        j++;
+        if (split[i]) {
+          double d1 = projected1[k] - (target1[i] + target1[i + 1]) / 2;
+          double d2 = projected2[k] - (target2[i] + target2[i + 1]) / 2;
+          if (d1 * d1 + d2 * d2 > tolerance * tolerance) {
+            nextSplit[j - 1] = true;
+            nextSource1[j] = middle1[k];
+            nextSource2[j] = middle2[k];
+            nextTarget1[j] = projected1[k];
+            nextTarget2[j] = projected2[k];
+            nextSplit[j] = true;
+            j++;
+          }
+          k++;
+        }
+      }
+      swap();
+      n = j;
+    }
+    if (closed) {
+      n--;
+    }
+    if (!setBounds(n)) {
+      return -1;
+    }
+    count = n;
+    return n;
+  }
+
+  /**
+  * <p>Gets the number of vertices of the last result.</p>
+  * @return The number of vertices.
+  */
+
+  public int getVertexCount() {
+    return count;
+  }
+
+  /**
+  * <p>Gets the first coordinates of the last result, which are valid until
+  * the next operation.</p>
+  * @return The latitudes, or eastings, of which the first
+  * <code>getVertexCount()</code> are the result.
+  */
+
+  public double[] getFirst() {
+    return target1;
+  }
+
+  /**
+  * <p>Gets the second coordinates of the last result, which are valid until
+  * the next operation.</p>
+  * @return The longitudes, or northings, of which the first
+  * <code>getVertexCount()</code> are the result.
+  */
+
+  public double[] getSecond() {
+    return target2;
+  }
+
+  /**
+  * <p>Gets the bounding box of the last result.</p>
+  * @param bounds The minimum first and second coordinates, and the maximum
+  * first and second coordinates, in that order (modified).
+  */
+
+  public void getBounds(double[] bounds) {
+    System.arraycopy(this.bounds, 0, bounds, 0, 4);
+  }
+
+  private boolean transform(double[] from1, double[] from2, double[] to1,
+      double[] to2, int length) {
+    if (direction == CoordinateFileConverter.LATLON_TO_UTM) {
+      return CoordinateBatch.latLonToUTMInZone(from1, from2, gridZone, to1,
+        to2, 0, length, datum);
+    }
+    for (int i = 0; i < length; i++) {
+      zones[i] = gridZone;
+    }
+    return CoordinateBatch.utmToLatLon(zones, from1, from2, to1, to2, 0,
+      length, datum);
+  }
+
+  private boolean setBounds(int n) {
+    double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+    double max1 = Double.NEGATIVE_INFINITY, max2 = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      double value1 = target1[i], value2 = target2[i];
+      if (Double.isNaN(value1) || Double.isNaN(value2)) {
+        return false;
+      }
+      min1 = Math.min(min1, value1);
+      max1 = Math.max(max1, value1);
+      min2 = Math.min(min2, value2);
+      max2 = Math.max(max2, value2);
+    }
+    bounds[0] = min1;
+    bounds[1] = min2;
+    bounds[2] = max1;
+    bounds[3] = max2;
+    return true;
+  }
+
+  private void swap() {
+    double[] array = source1;
+    source1 = nextSource1;
+    nextSource1 = array;
+    array = source2;
+    source2 = nextSource2;
+    nextSource2 = array;
+    array = target1;
+    target1 = nextTarget1;
+    nextTarget1 = array;
+    array = target2;
+    target2 = nextTarget2;
+    nextTarget2 = array;
+    boolean[] flags = split;
+    split = nextSplit;
+    nextSplit = flags;
+  }
+
+  //
+  // The work areas grow, to at least double their size, and never shrink.
+  //
+
+  private void ensureCapacity(int n) {
+    if (n > source1.length) {
+      int capacity = Math.max(n, 2 * source1.length);
+      source1 = new double[capacity];
+      source2 = new double[capacity];
+      target1 = new double[capacity];
+      target2 = new double[capacity];
+      split = new boolean[capacity];
+    }
+    ensureMiddleCapacity(n);
+  }
+
+  private void ensureNextCapacity(int n) {
+    if (n > nextSource1.length) {
+      int capacity = Math.max(n, 2 * nextSource1.length);
+      nextSource1 = new double[capacity];
+      nextSource2 = new double[capacity];
+      nextTarget1 = new double[capacity];
+      nextTarget2 = new double[capacity];
+      nextSplit = new boolean[capacity];
+    }
+    ensureMiddleCapacity(n);
+  }
+
+  private void ensureMiddleCapacity(int n) {
+    if (n > middle1.length) {
+      int capacity = Math.max(n, 2 * middle1.length);
+      middle1 = new double[capacity];
+      middle2 = new double[capacity];
+      projected1 = new double[capacity];
+      projected2 = new double[capacity];
+      zones = new int[capacity];
+    }
+  }
+
+  /**
+  * <p>Runs the projector as a command-line utility, reprojecting a box and
+  * printing its bounding box and number of vertices:</p>
+  * <ul>
+  * <li><code>GeometryProjector -zone 13S -latlon 31 -108 33 -105</code>
+  * (south, west, north, east)
+  * <li><code>GeometryProjector -zone 13S -tolerance 1e-7 -utm 300000
+  * 3500000 400000 3600000</code> (west, south, east, north)
+  * </ul>
+  * <p>The default tolerance is 0.01 meters, or 1e-7 degrees.</p>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int gridZone = -1;
+    double tolerance = Double.NaN;
+    int first = 0;
+    try {
+      while (first < args.length - 5) {
+        if (args[first].equals("-zone")) {
+          gridZone = CoordinateUtil.packGridZone(args[first + 1]);
+          first += 2;
+        }
+        else if (args[first].equals("-tolerance")) {
+          tolerance = Double.parseDouble(args[first + 1]);
+          first += 2;
+        }
+        else {
+          break;
+        }
+      }
+      if (gridZone < 0 || args.length != first + 5 ||
+          !(args[first].equals("-latlon") || args[first].equals("-utm"))) {
+        System.out.println("Usage:  java " +
+          GeometryProjector.class.getName() + " -zone <zone>" +
+          " [-tolerance <tolerance>] -latlon <south> <west> <north> <east>");
+        System.out.println("Usage:  java " +
+          GeometryProjector.class.getName() + " -zone <zone>" +
+          " [-tolerance <tolerance>] -utm <west> <south> <east> <north>");
+        return;
+      }
+      boolean latLon = args[first].equals("-latlon");
+      if (Double.isNaN(tolerance)) {
+        tolerance = latLon ? 0.01 : 1e-7;
+      }
+      GeometryProjector projector = new GeometryProjector(latLon ?
+        CoordinateFileConverter.LATLON_TO_UTM :
+        CoordinateFileConverter.UTM_TO_LATLON,
+        CoordinateUtil.WGS_84_DATUM, gridZone, tolerance);
+      int n = projector.projectBox(Double.parseDouble(args[first + 1]),
+        Double.parseDouble(args[first + 2]),
+        Double.parseDouble(args[first + 3]),
+        Double.parseDouble(args[first + 4]));
+      if (n < 0) {
+        System.out.println("Unable to reproject the box.");
+        return;
+      }
+      double[] bounds = new double[4];
+      projector.getBounds(bounds);
+      System.out.println("Bounds: " + bounds[0] + "," + bounds[1] + " " +
+        bounds[2] + "," + bounds[3] + " (" + n + " vertices)");
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Invalid number: " + e.getMessage());
+    }
+  }
+}
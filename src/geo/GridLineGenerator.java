@@ -0,0 +1,658 @@
+package geo;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+* <p><code>GridLineGenerator</code> generates UTM grid lines, i.e., lines
+* of constant easting and of constant northing at a given spacing, e.g.,
+* every 1 km or 10 km, and the UTM zone boundaries, as lat/lon polylines
+* for drawing over a lat/lon basemap.</p>
+* <p>The viewport is divided into the parts that lie in each grid zone,
+* following the zone layout of {@link CoordinateUtil}, including the
+* special zones of the V and X bands, and the hemispheres.  The grid lines
+* of each part are unprojected with {@link GeometryProjector}, which
+* densifies them adaptively, using the batch conversions, until they are
+* within a small fraction of the viewport of the true lines; they are then
+* clipped to the part, so that the grid of each zone stops at its
+* boundaries.  The polar (UPS) regions have no grid lines.</p>
+* <p>Map clients request the same tiles repeatedly, so the lines of the
+* tiles of the usual XYZ (Web Mercator) tiling are cached, by tile and
+* spacing, in a least-recently-used cache.  A generator may be shared
+* among threads.</p>
+* @author Jerry Smith
+* @version $Id: GridLineGenerator.java $
+*/
+
+public class GridLineGenerator {
+  //
+  // Constants:
+  //
+  /**
+  * <p>Line type:  a line of constant easting.</p>
+  */
+
+  public static final int EASTING = 0;
+  /**
+  * <p>Line type:  a line of constant northing.</p>
+  */
+
+  public static final int NORTHING = 1;
+  /**
+  * <p>Line type:  a zone boundary.</p>
+  */
+
+  public static final int ZONE_BOUNDARY = 2;
+  /**
+  * <p>The maximum number of grid lines in one zone of a viewport; a
+  * spacing that is too fine for the viewport is rejected.</p>
+  */
+
+  public static final int MAX_LINES = 4096;
+  private static final int DEFAULT_CACHE_SIZE = 1024;
+  //
+  // The lines are densified to within 1/1024 of the viewport, a quarter of
+  // a pixel of a 256-pixel tile.
+  //
+  private static final double TOLERANCE_FRACTION = 1.0 / 1024.0;
+  private static final double UTM_TOLERANCE = 0.01;
+  private static final double SOUTH_LIMIT = -80.0;
+  private static final double NORTH_LIMIT = 84.0;
+  //
+  // The rows of the zone layout, with their bands:  the representative band
+  // of a row determines its zones, i.e., for V and X, its special zones.
+  // Within a row, the grid is generated 8-degree band by band, so that the
+  // grid zone of each line has its own band.
+  //
+  private static final double[] ROW_LIMITS = {
+    SOUTH_LIMIT, 0.0, 56.0, 64.0, 72.0, NORTH_LIMIT
+  };
+  private static final char[] ROW_BANDS = {'M', 'N', 'V', 'W', 'X'};
+  //
+  // The special zones:  the zone numbers, and the longitudes of their
+  // boundaries, from 0 east.
+  //
+  private static final int[] V_ZONES = {31, 32};
+  private static final double[] V_LIMITS = {0.0, 3.0, 12.0};
+  private static final int[] X_ZONES = {31, 33, 35, 37};
+  private static final double[] X_LIMITS = {0.0, 9.0, 21.0, 33.0, 42.0};
+  //
+  // Instance variables:
+  //
+  private int datum;
+  private Map<TileKey, Lines> cache;
+
+
+  /**
+  * <p>Constructs a generator with a cache of 1024 tiles.</p>
+  * @param datum The datum.
+  */
+
+  public GridLineGenerator(int datum) {
+    this(datum, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+  * <p>Constructs a generator.</p>
+  * @param datum The datum.
+  * @param cacheSize The maximum number of tiles cached.
+  */
+
+  public GridLineGenerator(int datum, final int cacheSize) {
+    this.datum = datum;
+    cache = new LinkedHashMap<TileKey, Lines>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<TileKey, Lines> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+  * <p>Gets the grid lines of an XYZ (Web Mercator) tile, from the cache
+  * if they have been generated.</p>
+  * @param zoom The zoom level.
+  * @param x The tile column, from 180 degrees west.
+  * @param y The tile row, from the north.
+  * @param spacing The spacing of the grid lines, in meters.
+  * @return The lines, or <code>null</code> if the operation is not
+  * successful.
+  */
+
+  public Lines getTile(int zoom, int x, int y, double spacing) {
+    TileKey key = new TileKey(zoom, x, y, spacing);
+    synchronized (cache) {
+      Lines lines = cache.get(key);
+      if (lines != null) {
+        return lines;
+      }
+    }
+    double n = Math.pow(2.0, zoom);
+    if (zoom < 0 || x < 0 || x >= n || y < 0 || y >= n) {
+      System.out.println("Invalid tile: " + zoom + "/" + x + "/" + y + ".");
+      return null;
+    }
+    Lines lines = generate(getTileLatitude(y + 1, n), x / n * 360.0 - 180.0,
+      getTileLatitude(y, n), (x + 1) / n * 360.0 - 180.0, spacing);
+    if (lines != null) {
+      synchronized (cache) {
+        cache.put(key, lines);
+      }
+    }
+    return lines;
+  }
+
+  private static double getTileLatitude(int y, double n) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+  }
+
+  /**
+  * <p>Gets the number of tiles in the cache.</p>
+  * @return The number of tiles.
+  */
+
+  public int getCacheSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+  * <p>Generates the grid lines and zone boundaries of a viewport, without
+  * the cache.</p>
+  * @param south The southern latitude.
+  * @param west The western longitude.
+  * @param north The northern latitude.
+  * @param east The eastern longitude, not west of the western longitude.
+  * @param spacing The spacing of the grid lines, in meters.
+  * @return The lines, or <code>null</code> if the operation is not
+  * successful.
+  */
+
+  public Lines generate(double south, double west, double north,
+      double east, double spacing) {
+    if (!(south < north && west < east && spacing > 0)) {
+      System.out.println("Invalid viewport or spacing.");
+      return null;
+    }
+    Builder builder = new Builder(Math.max(north - south, east - west) *
+      TOLERANCE_FRACTION);
+    for (int row = 0; row < ROW_BANDS.length; row++) {
+      double rowSouth = Math.max(south, ROW_LIMITS[row]);
+      double rowNorth = Math.min(north, ROW_LIMITS[row + 1]);
+      if (rowSouth >= rowNorth) {
+        continue;
+      }
+
+      /* The zones of the row, west to east, each with its western boundary */
+
+      double[] limits = getZoneLimits(ROW_BANDS[row]);
+      int[] zones = getZones(ROW_BANDS[row]);
+      for (int i = 0; i < zones.length; i++) {
+        if (limits[i + 1] <= west || limits[i] >= east) {
+          continue;
+        }
+
+        /* The zone's grid, band by band, so that each line has its band */
+
+        double bandNorth;
+        for (double bandSouth = rowSouth; bandSouth < rowNorth;
+            bandSouth = bandNorth) {
+          int index = Math.min((int) ((bandSouth - SOUTH_LIMIT) / 8.0),
+            CoordinateUtil.UTM_BANDS - 1);
+          bandNorth = Math.min(rowNorth,
+            index == CoordinateUtil.UTM_BANDS - 1 ? NORTH_LIMIT :
+            SOUTH_LIMIT + 8.0 * (index + 1));
+          builder.band = CoordinateUtil.getBand(index);
+          if (!addZone(builder, zones[i], bandSouth,
+              Math.max(west, limits[i]), bandNorth,
+              Math.min(east, limits[i + 1]), spacing)) {
+            return null;
+          }
+        }
+        if (limits[i] > west) {
+          builder.addBoundary(rowSouth, limits[i], rowNorth, limits[i]);
+        }
+      }
+    }
+
+    /* The limits of the UTM grid, and the rows where the special zones */
+    /* begin and end */
+
+    for (int row = 0; row < ROW_LIMITS.length; row++) {
+      double latitude = ROW_LIMITS[row];
+      double limitWest = west;
+      double limitEast = east;
+      if (latitude == 56.0 || latitude == 64.0) {
+        limitWest = Math.max(west, V_LIMITS[0]);
+        limitEast = Math.min(east, V_LIMITS[V_LIMITS.length - 1]);
+      }
+      else if (latitude == 72.0) {
+        limitWest = Math.max(west, X_LIMITS[0]);
+        limitEast = Math.min(east, X_LIMITS[X_LIMITS.length - 1]);
+      }
+      else if (latitude == 0.0) {
+        continue;
+      }
+      if (latitude > south && latitude < north && limitWest < limitEast) {
+        builder.addBoundary(latitude, limitWest, latitude, limitEast);
+      }
+    }
+    return builder.toLines();
+  }
+
+  //
+  // Gets the western longitudes of the zones of a row, and, last, the
+  // eastern longitude of the last zone.
+  //
+
+  private static double[] getZoneLimits(char band) {
+    double[] special = band == 'V' ? V_LIMITS : band == 'X' ? X_LIMITS : null;
+    int count = special == null ? 0 : special.length - 1;
+    int standard = special == null ? 0 : (int) (special[count] / 6.0);
+    double[] limits = new double[61 - standard + count];
+    int i = 0;
+    for (int zone = 1; zone <= 30; zone++) {
+      limits[i++] = (zone - 1) * 6.0 - 180.0;
+    }
+    for (int j = 0; j < count; j++) {
+      limits[i++] = special[j];
+    }
+    for (int zone = 31 + standard; zone <= 61; zone++) {
+      limits[i++] = (zone - 1) * 6.0 - 180.0;
+    }
+    return limits;
+  }
+
+  //
+  // Gets the zone numbers of a row, west to east.
+  //
+
+  private static int[] getZones(char band) {
+    int[] special = band == 'V' ? V_ZONES : band == 'X' ? X_ZONES : null;
+    double[] limits = band == 'V' ? V_LIMITS : X_LIMITS;
+    int count = special == null ? 0 : special.length;
+    int standard = special == null ? 0 : (int) (limits[count] / 6.0);
+    int[] zones = new int[60 - standard + count];
+    int i = 0;
+    for (int zone = 1; zone <= 30; zone++) {
+      zones[i++] = zone;
+    }
+    for (int j = 0; j < count; j++) {
+      zones[i++] = special[j];
+    }
+    for (int zone = 31 + standard; zone <= 60; zone++) {
+      zones[i++] = zone;
+    }
+    return zones;
+  }
+
+  //
+  // Adds the grid lines of a zone within a box.
+  //
+
+  private boolean addZone(Builder builder, int zone, double south,
+      double west, double north, double east, double spacing) {
+    if (west >= east) {
+      return true;
+    }
+    int gridZone = CoordinateUtil.packGridZone(zone, builder.band);
+    GeometryProjector forward = new GeometryProjector(
+      CoordinateFileConverter.LATLON_TO_UTM, datum, gridZone, UTM_TOLERANCE);
+    if (forward.projectBox(south, west, north, east) < 0) {
+      return false;
+    }
+    double[] bounds = new double[4];
+    forward.getBounds(bounds);
+    double firstEasting = Math.ceil(bounds[0] / spacing) * spacing;
+    double firstNorthing = Math.ceil(bounds[1] / spacing) * spacing;
+    if ((bounds[2] - firstEasting) / spacing +
+        (bounds[3] - firstNorthing) / spacing > MAX_LINES) {
+      System.out.println("Spacing too fine for the viewport: " + spacing +
+        ".");
+      return false;
+    }
+    GeometryProjector inverse = new GeometryProjector(
+      CoordinateFileConverter.UTM_TO_LATLON, datum, gridZone,
+      builder.tolerance);
+    double[] eastings = new double[2];
+    double[] northings = new double[2];
+    builder.setClip(south, west, north, east);
+    for (int type = EASTING; type <= NORTHING; type++) {
+      double first = type == EASTING ? firstEasting : firstNorthing;
+      double last = type == EASTING ? bounds[2] : bounds[3];
+      for (double value = first; value <= last; value += spacing) {
+        if (type == EASTING) {
+          eastings[0] = eastings[1] = value;
+          northings[0] = bounds[1];
+          northings[1] = bounds[3];
+        }
+        else {
+          eastings[0] = bounds[0];
+          eastings[1] = bounds[2];
+          northings[0] = northings[1] = value;
+        }
+        int n = inverse.project(eastings, northings, 0, 2, false);
+        if (n < 0) {
+          return false;
+        }
+        builder.addClipped(inverse.getFirst(), inverse.getSecond(), n, type,
+          value, gridZone);
+      }
+    }
+    return true;
+  }
+
+  /**
+  * <p>Runs the generator as a command-line utility, printing the lines of
+  * a viewport:</p>
+  * <ul>
+  * <li><code>GridLineGenerator 31 -108 33 -105 10000</code> (south, west,
+  * north, east, spacing)
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    if (args.length != 5) {
+      System.out.println("Usage:  java " + GridLineGenerator.class.getName() +
+        " <south> <west> <north> <east> <spacing>");
+      return;
+    }
+    double[] values = new double[5];
+    try {
+      for (int i = 0; i < 5; i++) {
+        values[i] = Double.parseDouble(args[i]);
+      }
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Invalid number: " + e.getMessage());
+      return;
+    }
+    GridLineGenerator generator =
+      new GridLineGenerator(CoordinateUtil.WGS_84_DATUM);
+    Lines lines = generator.generate(values[0], values[1], values[2],
+      values[3], values[4]);
+    if (lines == null) {
+      return;
+    }
+    String[] types = {"easting", "northing", "zone boundary"};
+    for (int i = 0; i < lines.getLineCount(); i++) {
+      StringBuilder line = new StringBuilder();
+      line.append(types[lines.getType(i)]);
+      if (lines.getType(i) != ZONE_BOUNDARY) {
+        line.append(' ').append(
+          CoordinateUtil.unpackGridZone(lines.getGridZone(i)));
+        line.append(' ').append(lines.getValue(i));
+      }
+      line.append(':');
+      for (int j = lines.getStart(i); j < lines.getEnd(i); j++) {
+        line.append(' ').append(lines.getLatitudes()[j]).append(',');
+        line.append(lines.getLongitudes()[j]);
+      }
+      System.out.println(line);
+    }
+  }
+
+  /**
+  * <p>The lines of a viewport:  polylines, with their vertices held in two
+  * columns, latitudes and longitudes, and, for each line, its type, its
+  * easting or northing, and its grid zone.  The lines are
+  * immutable.</p>
+  */
+
+  public static final class Lines {
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] starts;
+    private int[] types;
+    private double[] values;
+    private int[] gridZones;
+
+    private Lines(double[] latitudes, double[] longitudes, int[] starts,
+        int[] types, double[] values, int[] gridZones) {
+      this.latitudes = latitudes;
+      this.longitudes = longitudes;
+      this.starts = starts;
+      this.types = types;
+      this.values = values;
+      this.gridZones = gridZones;
+    }
+
+    /**
+    * <p>Gets the number of lines.</p>
+    * @return The number of lines.
+    */
+
+    public int getLineCount() {
+      return types.length;
+    }
+
+    /**
+    * <p>Gets the index of the first vertex of a line.</p>
+    * @param line The line.
+    * @return The index.
+    */
+
+    public int getStart(int line) {
+      return starts[line];
+    }
+
+    /**
+    * <p>Gets the index following the last vertex of a line.</p>
+    * @param line The line.
+    * @return The index.
+    */
+
+    public int getEnd(int line) {
+      return starts[line + 1];
+    }
+
+    /**
+    * <p>Gets the type of a line.</p>
+    * @param line The line.
+    * @return <code>EASTING</code>, <code>NORTHING</code>, or
+    * <code>ZONE_BOUNDARY</code>.
+    */
+
+    public int getType(int line) {
+      return types[line];
+    }
+
+    /**
+    * <p>Gets the easting or northing of a grid line.</p>
+    * @param line The line.
+    * @return The easting or northing; <code>NaN</code> for a zone
+    * boundary.
+    */
+
+    public double getValue(int line) {
+      return values[line];
+    }
+
+    /**
+    * <p>Gets the grid zone of a grid line.</p>
+    * @param line The line.
+    * @return The packed grid zone; -1 for a zone boundary.
+    */
+
+    public int getGridZone(int line) {
+      return gridZones[line];
+    }
+
+    /**
+    * <p>Gets the latitudes of the vertices (not to be modified).</p>
+    * @return The latitudes.
+    */
+
+    public double[] getLatitudes() {
+      return latitudes;
+    }
+
+    /**
+    * <p>Gets the longitudes of the vertices (not to be modified).</p>
+    * @return The longitudes.
+    */
+
+    public double[] getLongitudes() {
+      return longitudes;
+    }
+  }
+
+  //
+  // Accumulates the lines of a viewport, clipping the grid lines to the
+  // part of the viewport in their zone.
+  //
+
+  private static final class Builder {
+    private double tolerance;
+    private char band;
+    private double clipSouth, clipWest, clipNorth, clipEast;
+    private double[] latitudes = new double[256];
+    private double[] longitudes = new double[256];
+    private int vertices = 0;
+    private int[] starts = new int[64];
+    private int[] types = new int[64];
+    private double[] values = new double[64];
+    private int[] gridZones = new int[64];
+    private int lines = 0;
+    private boolean open = false;
+
+    Builder(double tolerance) {
+      this.tolerance = tolerance;
+    }
+
+    void setClip(double south, double west, double north, double east) {
+      clipSouth = south;
+      clipWest = west;
+      clipNorth = north;
+      clipEast = east;
+    }
+
+    void addBoundary(double latitude1, double longitude1, double latitude2,
+        double longitude2) {
+      startLine(ZONE_BOUNDARY, Double.NaN, -1);
+      addVertex(latitude1, longitude1);
+      addVertex(latitude2, longitude2);
+      open = false;
+    }
+
+    //
+    // Adds the pieces of a polyline within the clipping box, clipping each
+    // segment (Liang-Barsky).
+    //
+
+    void addClipped(double[] lat, double[] lon, int n, int type,
+        double value, int gridZone) {
+      open = false;
+      for (int i = 0; i < n - 1; i++) {
+        double dLat = lat[i + 1] - lat[i];
+        double dLon = lon[i + 1] - lon[i];
+        double[] t = {0.0, 1.0};
+        if (!clip(-dLat, lat[i] - clipSouth, t) ||
+            !clip(dLat, clipNorth - lat[i], t) ||
+            !clip(-dLon, lon[i] - clipWest, t) ||
+            !clip(dLon, clipEast - lon[i], t)) {
+          open = false;
+          continue;
+        }
+        if (!open || t[0] > 0.0) {
+          startLine(type, value, gridZone);
+          addVertex(lat[i] + t[0] * dLat, lon[i] + t[0] * dLon);
+          open = true;
+        }
+        addVertex(lat[i] + t[1] * dLat, lon[i] + t[1] * dLon);
+        if (t[1] < 1.0) {
+          open = false;
+        }
+      }
+      open = false;
+    }
+
+    private static boolean clip(double p, double q, double[] t) {
+      if (p == 0.0) {
+        return q >= 0.0;
+      }
+      double r = q / p;
+      if (p < 0.0) {
+        if (r > t[1]) {
+          return false;
+        }
+        t[0] = Math.max(t[0], r);
+      }
+      else {
+        if (r < t[0]) {
+          return false;
+        }
+        t[1] = Math.min(t[1], r);
+      }
+      return true;
+    }
+
+    private void startLine(int type, double value, int gridZone) {
+      if (lines + 1 >= starts.length) {
+        starts = Arrays.copyOf(starts, 2 * starts.length);
+        types = Arrays.copyOf(types, 2 * types.length);
+        values = Arrays.copyOf(values, 2 * values.length);
+        gridZones = Arrays.copyOf(gridZones, 2 * gridZones.length);
+      }
+      starts[lines] = vertices;
+      types[lines] = type;
+      values[lines] = value;
+      gridZones[lines] = gridZone;
+      lines++;
+      starts[lines] = vertices;
+    }
+
+    private void addVertex(double latitude, double longitude) {
+      if (vertices == latitudes.length) {
+        latitudes = Arrays.copyOf(latitudes, 2 * latitudes.length);
+        longitudes = Arrays.copyOf(longitudes, 2 * longitudes.length);
+      }
+      latitudes[vertices] = latitude;
+      longitudes[vertices] = longitude;
+      vertices++;
+      starts[lines] = vertices;
+    }
+
+    Lines toLines() {
+      return new Lines(Arrays.copyOf(latitudes, vertices),
+        Arrays.copyOf(longitudes, vertices), Arrays.copyOf(starts, lines + 1),
+        Arrays.copyOf(types, lines), Arrays.copyOf(values, lines),
+        Arrays.copyOf(gridZones, lines));
+    }
+  }
+
+  //
+  // The cache key:  a tile and a spacing.
+  //
+
+  private static final class TileKey {
+    private int zoom, x, y;
+    private double spacing;
+
+    TileKey(int zoom, int x, int y, double spacing) {
+      this.zoom = zoom;
+      this.x = x;
+      this.y = y;
+      this.spacing = spacing;
+    }
+
+    public boolean equals(Object object) {
+      if (!(object instanceof TileKey)) {
+        return false;
+      }
+      TileKey key = (TileKey) object;
+      return zoom == key.zoom && x == key.x && y == key.y &&
+        Double.compare(spacing, key.spacing) == 0;
+    }
+
+    public int hashCode() {
+      long bits = Double.doubleToLongBits(spacing);
+      return ((zoom * 31 + x) * 31 + y) * 31 + (int) (bits ^ (bits >>> 32));
+    }
+  }
+}
@@ -0,0 +1,542 @@
+package geo;
+
+
+/**
+* <p><code>GridMeasure</code> provides class-level convenience methods for
+* measuring with UTM (and UPS) coordinates:  distances, bearings, and
+* polygon areas, computed in the grid but corrected to the ellipsoid with
+* the scale factor of the projection, so that, e.g., a distance is that on
+* the ground, not the (up to 0.04% shorter or 0.1% longer) distance in the
+* grid.</p>
+* <p>The distance between two points is their grid distance divided by the
+* scale factor of the line between them (Simpson's rule over the point
+* scale factors), which is accurate to better than a part per million for
+* lines of up to 50 km.  The point scale factors may be those computed by
+* {@link CoordinateBatch#latLonToUTM(double[], double[], int[], double[],
+* double[], double[], double[], int, int, int)}; otherwise, they are
+* computed from the coordinates.  The area of a polygon is the integral
+* over the polygon in the grid of the inverse square of the point scale
+* factor (Green's theorem, with Gaussian quadrature along each edge).</p>
+* <p>Points in different grid zones, or in zones with different central
+* meridians or hemispheres, are measured in one zone, re-projecting the
+* others into it:  the zone of the first point, or, between UTM and UPS,
+* the UTM zone.  A measurement that cannot be made is <code>NaN</code>.</p>
+* @author Jerry Smith
+* @version $Id: GridMeasure.java $
+*/
+
+public final class GridMeasure {
+  private static final double UTM_K0 = 0.9996;
+  private static final double UPS_K0 = 0.994;
+  private static final double UTM_FALSE_EASTING = 500000.0;
+  private static final double UPS_FALSE_ORIGIN = 2000000.0;
+  private static final double FALSE_NORTHING = 10000000.0;
+  //
+  // Three-point Gauss-Legendre quadrature on [0, 1]:
+  //
+  private static final double[] GAUSS_NODES = {
+    0.5 - Math.sqrt(0.15), 0.5, 0.5 + Math.sqrt(0.15)
+  };
+  private static final double[] GAUSS_WEIGHTS = {
+    5.0 / 18.0, 8.0 / 18.0, 5.0 / 18.0
+  };
+
+
+  private GridMeasure() {
+  }
+
+  /**
+  * <p>Computes the distances along a range of points, e.g., the segments
+  * of a track:  the distance from each point to the next, in meters; the
+  * distance of the last point is 0.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param scales The point scale factors, or <code>null</code>.
+  * @param distances The distances (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every distance was computed.
+  */
+
+  public static boolean getDistances(int[] gridZones, double[] eastings,
+      double[] northings, double[] scales, double[] distances, int offset,
+      int length, int datum) {
+    Frame frame = Frame.forDatum(datum);
+    if (frame == null || length <= 0) {
+      return frame != null;
+    }
+    boolean ok = true;
+    int last = offset + length - 1;
+    for (int i = offset; i < last; i++) {
+      distances[i] = frame.getDistance(gridZones[i], eastings[i],
+        northings[i], scales == null ? Double.NaN : scales[i],
+        gridZones[i + 1], eastings[i + 1], northings[i + 1],
+        scales == null ? Double.NaN : scales[i + 1]);
+      if (Double.isNaN(distances[i])) {
+        ok = false;
+      }
+    }
+    distances[last] = 0.0;
+    return ok;
+  }
+
+  /**
+  * <p>Computes the distances between pairs of points, in meters.</p>
+  * @param gridZones1 The packed grid zones of the first points.
+  * @param eastings1 The eastings of the first points.
+  * @param northings1 The northings of the first points.
+  * @param gridZones2 The packed grid zones of the second points.
+  * @param eastings2 The eastings of the second points.
+  * @param northings2 The northings of the second points.
+  * @param distances The distances (modified).
+  * @param offset The index of the first pair.
+  * @param length The number of pairs.
+  * @param datum The datum.
+  * @return Whether or not every distance was computed.
+  */
+
+  public static boolean getDistances(int[] gridZones1, double[] eastings1,
+      double[] northings1, int[] gridZones2, double[] eastings2,
+      double[] northings2, double[] distances, int offset, int length,
+      int datum) {
+    Frame frame = Frame.forDatum(datum);
+    if (frame == null) {
+      return false;
+    }
+    boolean ok = true;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      distances[i] = frame.getDistance(gridZones1[i], eastings1[i],
+        northings1[i], Double.NaN, gridZones2[i], eastings2[i],
+        northings2[i], Double.NaN);
+      if (Double.isNaN(distances[i])) {
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Computes the bearings along a range of points:  the bearing from each
+  * point to the next, in degrees clockwise from north, 0 through 360; the
+  * bearing of the last point is <code>NaN</code>.  With the grid
+  * convergences computed by
+  * {@link CoordinateBatch#latLonToUTM(double[], double[], int[], double[],
+  * double[], double[], double[], int, int, int)}, the bearings are the
+  * azimuths of the geodesics, from true north (with the arc-to-chord
+  * correction); otherwise, they are the grid bearings, from
+  * grid north.  A bearing from a UPS point to a point outside the polar
+  * regions is <code>NaN</code>.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param convergences The grid convergences, in degrees, or
+  * <code>null</code>.
+  * @param bearings The bearings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every bearing was computed.
+  */
+
+  public static boolean getBearings(int[] gridZones, double[] eastings,
+      double[] northings, double[] convergences, double[] bearings,
+      int offset, int length, int datum) {
+    Frame frame = Frame.forDatum(datum);
+    if (frame == null || length <= 0) {
+      return frame != null;
+    }
+    boolean ok = true;
+    int last = offset + length - 1;
+    for (int i = offset; i < last; i++) {
+      double easting = eastings[i + 1], northing = northings[i + 1];
+      if (!frame.isSameProjection(gridZones[i], gridZones[i + 1])) {
+        if (!frame.reproject(gridZones[i + 1], easting, northing,
+            gridZones[i])) {
+          bearings[i] = Double.NaN;
+          ok = false;
+          continue;
+        }
+        easting = frame.easting;
+        northing = frame.northing;
+      }
+      double bearing = Math.toDegrees(Math.atan2(easting - eastings[i],
+        northing - northings[i]));
+      if (convergences != null) {
+        bearing += convergences[i] +
+          frame.getArcToChord(gridZones[i], eastings[i], northings[i],
+          easting, northing);
+      }
+      if (bearing < 0.0) {
+        bearing += 360.0;
+      }
+      else if (bearing >= 360.0) {
+        bearing -= 360.0;
+      }
+      bearings[i] = bearing;
+      if (Double.isNaN(bearing)) {
+        ok = false;
+      }
+    }
+    bearings[last] = Double.NaN;
+    return ok;
+  }
+
+  /**
+  * <p>Computes the area of a polygon, in square meters.  The polygon is a
+  * ring of points, which need not be closed, i.e., repeat the first
+  * point; it should not intersect itself.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param offset The index of the first point.
+  * @param length The number of points.
+  * @param datum The datum.
+  * @return The area, or <code>NaN</code> if the operation is not
+  * successful.
+  */
+
+  public static double getArea(int[] gridZones, double[] eastings,
+      double[] northings, int offset, int length, int datum) {
+    Frame frame = Frame.forDatum(datum);
+    if (frame == null) {
+      return Double.NaN;
+    }
+    return frame.getArea(gridZones, eastings, northings, offset, length);
+  }
+
+  /**
+  * <p>Computes the areas of a range of polygons, in square meters.  The
+  * points of the polygons follow one another in the columns:  polygon
+  * <code>i</code> ends at <code>ends[i]</code>, and begins at
+  * <code>ends[i - 1]</code>, or at 0 for the first polygon.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param ends The end of each polygon in the columns.
+  * @param offset The index of the first polygon.
+  * @param length The number of polygons.
+  * @param areas The areas (modified), <code>NaN</code> for a polygon whose
+  * area cannot be computed.
+  * @param datum The datum.
+  * @return Whether or not every area was computed.
+  */
+
+  public static boolean getAreas(int[] gridZones, double[] eastings,
+      double[] northings, int[] ends, int offset, int length,
+      double[] areas, int datum) {
+    Frame frame = Frame.forDatum(datum);
+    if (frame == null) {
+      return false;
+    }
+    boolean ok = true;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int start = i == 0 ? 0 : ends[i - 1];
+      areas[i] = frame.getArea(gridZones, eastings, northings, start,
+        ends[i] - start);
+      if (Double.isNaN(areas[i])) {
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  //
+  // The ellipsoid of a measurement, and work areas for re-projecting a
+  // point into another zone.
+  //
+
+  private static final class Frame {
+    private int datum;
+    private Ellipsoid c;
+    private double polarRadius2;
+    private Lambda0 lambda01 = new Lambda0();
+    private Lambda0 lambda02 = new Lambda0();
+    private int[] gridZone = new int[1];
+    private double[] latitude = new double[1];
+    private double[] longitude = new double[1];
+    private double[] eastings = new double[1];
+    private double[] northings = new double[1];
+    //
+    // The last re-projected point:
+    //
+    double easting, northing;
+
+    private Frame(int datum, Ellipsoid c) {
+      this.datum = datum;
+      this.c = c;
+      polarRadius2 = c.a * c.a / (1 - c.e2);
+    }
+
+    static Frame forDatum(int datum) {
+      Ellipsoid c = Ellipsoid.forDatum(datum);
+      if (c == null) {
+        System.out.println("Unknown datum: " + datum + ".");
+        return null;
+      }
+      return new Frame(datum, c);
+    }
+
+    static boolean isUPS(int gridZone) {
+      char band = CoordinateUtil.getZoneBand(gridZone);
+      return band == 'A' || band == 'B' || band == 'Y' || band == 'Z';
+    }
+
+    static boolean isNorthUPS(int gridZone) {
+      char band = CoordinateUtil.getZoneBand(gridZone);
+      return band == 'Y' || band == 'Z';
+    }
+
+    //
+    // Whether or not two grid zones have the same projection:  the same
+    // UPS aspect, or the same central meridian and hemisphere.
+    //
+
+    boolean isSameProjection(int gridZone1, int gridZone2) {
+      if (gridZone1 == gridZone2) {
+        return true;
+      }
+      if (isUPS(gridZone1) || isUPS(gridZone2)) {
+        return isUPS(gridZone1) && isUPS(gridZone2) &&
+          isNorthUPS(gridZone1) == isNorthUPS(gridZone2);
+      }
+      return CoordinateUtil.getLambda0(gridZone1, lambda01) >= 0 &&
+        CoordinateUtil.getLambda0(gridZone2, lambda02) >= 0 &&
+        lambda01.lambda0 == lambda02.lambda0 &&
+        CoordinateUtil.isSouthernBand(CoordinateUtil.getZoneBand(gridZone1))
+        == CoordinateUtil.isSouthernBand(
+          CoordinateUtil.getZoneBand(gridZone2));
+    }
+
+    //
+    // Re-projects a point into another zone, setting easting and northing.
+    //
+
+    boolean reproject(int fromZone, double fromEasting, double fromNorthing,
+        int toZone) {
+      gridZone[0] = fromZone;
+      eastings[0] = fromEasting;
+      northings[0] = fromNorthing;
+      if (fromZone < 0 || toZone < 0 ||
+          !CoordinateBatch.utmToLatLon(gridZone, eastings, northings,
+          latitude, longitude, 0, 1, datum)) {
+        return false;
+      }
+      if (isUPS(toZone)) {
+        if (!CoordinateBatch.latLonToUPS(latitude, longitude, gridZone,
+            eastings, northings, 0, 1, datum) ||
+            isNorthUPS(gridZone[0]) != isNorthUPS(toZone)) {
+          return false;
+        }
+      }
+      else if (!CoordinateBatch.latLonToUTMInZone(latitude, longitude,
+          toZone, eastings, northings, 0, 1, datum)) {
+        return false;
+      }
+      easting = eastings[0];
+      northing = northings[0];
+      return true;
+    }
+
+    //
+    // The square of the radius of curvature (rho nu) about a point, from its
+    // northing, for the scale factor.
+    //
+
+    double getRadius2(int gridZone, double northing) {
+      if (isUPS(gridZone)) {
+        return polarRadius2;
+      }
+      if (CoordinateUtil.isSouthernBand(CoordinateUtil.getZoneBand(
+          gridZone))) {
+        northing -= FALSE_NORTHING;
+      }
+      double sinPhi = Math.sin(northing / (UTM_K0 * c.a * c.m1));
+      double w = 1 - c.e2 * sinPhi * sinPhi;
+      return c.a * c.a * (1 - c.e2) / (w * w);
+    }
+
+    //
+    // The point scale factor:  k0 cosh(x / k0 R) for UTM, and
+    // k0 (1 + r^2 / 4 k0^2 R^2) for UPS.
+    //
+
+    double getPointScale(int gridZone, double easting, double northing) {
+      double radius2 = getRadius2(gridZone, northing);
+      if (isUPS(gridZone)) {
+        double x = easting - UPS_FALSE_ORIGIN;
+        double y = northing - UPS_FALSE_ORIGIN;
+        return UPS_K0 *
+          (1 + (x * x + y * y) / (4 * UPS_K0 * UPS_K0 * radius2));
+      }
+      return UTM_K0 * Math.cosh((easting - UTM_FALSE_EASTING) /
+        (UTM_K0 * Math.sqrt(radius2)));
+    }
+
+    //
+    // The arc-to-chord correction (t - T) of a line, in degrees:  the angle
+    // from the projected geodesic to the straight grid line, at the first
+    // point.  The projected geodesic curves with the gradient of the log of
+    // the scale factor, across the line:  x / k0^2 R^2 for UTM, and
+    // (x, y) / (2 k0^2 R^2 + r^2 / 2) for UPS.
+    //
+
+    double getArcToChord(int gridZone, double easting1, double northing1,
+        double easting2, double northing2) {
+      if (isUPS(gridZone)) {
+        double b = 2 * UPS_K0 * UPS_K0 * getRadius2(gridZone, northing1);
+        double x1 = easting1 - UPS_FALSE_ORIGIN;
+        double y1 = northing1 - UPS_FALSE_ORIGIN;
+        double x2 = easting2 - UPS_FALSE_ORIGIN;
+        double y2 = northing2 - UPS_FALSE_ORIGIN;
+        double s1 = 1 / (b + (x1 * x1 + y1 * y1) / 2);
+        double s2 = 1 / (b + (x2 * x2 + y2 * y2) / 2);
+        return Math.toDegrees(((2 * s1 * x1 + s2 * x2) *
+          (northing2 - northing1) - (2 * s1 * y1 + s2 * y2) *
+          (easting2 - easting1)) / 6);
+      }
+      double x1 = easting1 - UTM_FALSE_EASTING;
+      double x2 = easting2 - UTM_FALSE_EASTING;
+      return Math.toDegrees((northing2 - northing1) * (2 * x1 + x2) /
+        (6 * UTM_K0 * UTM_K0 * getRadius2(gridZone, northing1)));
+    }
+
+    double getDistance(int gridZone1, double easting1, double northing1,
+        double scale1, int gridZone2, double easting2, double northing2,
+        double scale2) {
+      int gridZone = gridZone1;
+      if (gridZone1 < 0 || gridZone2 < 0) {
+        return Double.NaN;
+      }
+
+      /* Re-project into one zone, the UTM zone between UTM and UPS */
+
+      if (!isSameProjection(gridZone1, gridZone2)) {
+        if (isUPS(gridZone1) && !isUPS(gridZone2)) {
+          if (!reproject(gridZone1, easting1, northing1, gridZone2)) {
+            return Double.NaN;
+          }
+          easting1 = easting;
+          northing1 = northing;
+          scale1 = Double.NaN;
+          gridZone = gridZone2;
+        }
+        else {
+          if (!reproject(gridZone2, easting2, northing2, gridZone1)) {
+            return Double.NaN;
+          }
+          easting2 = easting;
+          northing2 = northing;
+          scale2 = Double.NaN;
+        }
+      }
+      if (Double.isNaN(scale1)) {
+        scale1 = getPointScale(gridZone, easting1, northing1);
+      }
+      if (Double.isNaN(scale2)) {
+        scale2 = getPointScale(gridZone, easting2, northing2);
+      }
+
+      /* Simpson's rule, with the scale factor at the midpoint from the */
+      /* (quadratic) variation of the scale factor */
+
+      double dx = easting2 - easting1;
+      double dy = northing2 - northing1;
+      double grid2 = dx * dx + dy * dy;
+      double lineScale;
+      if (isUPS(gridZone)) {
+        lineScale = 0.5 * (scale1 + scale2) -
+          grid2 / (24 * UPS_K0 * getRadius2(gridZone, northing1));
+      }
+      else {
+        lineScale = 0.5 * (scale1 + scale2) -
+          dx * dx / (12 * UTM_K0 * getRadius2(gridZone, northing1));
+      }
+      return Math.sqrt(grid2) / lineScale;
+    }
+
+    double getArea(int[] gridZones, double[] eastings, double[] northings,
+        int offset, int length) {
+      if (length < 3) {
+        return length >= 0 ? 0.0 : Double.NaN;
+      }
+
+      /* Measure in the zone of the first point, or of the first UTM point */
+
+      int gridZone = gridZones[offset];
+      for (int i = offset, end = offset + length; i < end; i++) {
+        if (gridZones[i] >= 0 && !isUPS(gridZones[i])) {
+          gridZone = gridZones[i];
+          break;
+        }
+      }
+      if (gridZone < 0) {
+        return Double.NaN;
+      }
+      boolean ups = isUPS(gridZone);
+      double radius2 = Double.NaN;
+      double xPrevious = 0, yPrevious = 0, area = 0;
+      for (int j = 0; j <= length; j++) {
+        int i = offset + (j == length ? 0 : j);
+        double x = eastings[i], y = northings[i];
+        if (!isSameProjection(gridZones[i], gridZone)) {
+          if (!reproject(gridZones[i], x, y, gridZone)) {
+            return Double.NaN;
+          }
+          x = easting;
+          y = northing;
+        }
+        if (Double.isNaN(radius2)) {
+          radius2 = getRadius2(gridZone, y);
+        }
+        x -= ups ? UPS_FALSE_ORIGIN : UTM_FALSE_EASTING;
+        y -= ups ? UPS_FALSE_ORIGIN : 0.0;
+        if (j > 0) {
+          area += getEdgeIntegral(xPrevious, yPrevious, x, y, radius2, ups);
+        }
+        xPrevious = x;
+        yPrevious = y;
+      }
+      return Double.isNaN(area) ? area : Math.abs(area);
+    }
+
+    //
+    // The integral along an edge of P dy, where dP/dx is the inverse square
+    // of the point scale factor, so that the integral about the polygon is
+    // its area (Green's theorem).  For UTM, P = (R / k0) tanh(x / k0 R);
+    // for UPS, with b = 4 k0^2 R^2 and c^2 = b + y^2,
+    // P = (b^2 / k0^2) (x / (2 c^2 (c^2 + x^2)) + atan(x / c) / 2 c^3).
+    //
+
+    private static double getEdgeIntegral(double x1, double y1, double x2,
+        double y2, double radius2, boolean ups) {
+      double dy = y2 - y1;
+      if (dy == 0.0) {
+        return 0.0;
+      }
+      double sum = 0;
+      if (ups) {
+        double b = 4 * UPS_K0 * UPS_K0 * radius2;
+        for (int g = 0; g < GAUSS_NODES.length; g++) {
+          double x = x1 + GAUSS_NODES[g] * (x2 - x1);
+          double y = y1 + GAUSS_NODES[g] * dy;
+          double c2 = b + y * y;
+          double cc = Math.sqrt(c2);
+          sum += GAUSS_WEIGHTS[g] * (x / (2 * c2 * (c2 + x * x)) +
+            Math.atan(x / cc) / (2 * c2 * cc));
+        }
+        sum *= b * b / (UPS_K0 * UPS_K0);
+      }
+      else {
+        double kr = UTM_K0 * Math.sqrt(radius2);
+        for (int g = 0; g < GAUSS_NODES.length; g++) {
+          sum += GAUSS_WEIGHTS[g] *
+            Math.tanh((x1 + GAUSS_NODES[g] * (x2 - x1)) / kr);
+        }
+        sum *= kr / (UTM_K0 * UTM_K0);
+      }
+      return sum * dy;
+    }
+  }
+}
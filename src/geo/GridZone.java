@@ -0,0 +1,13 @@
+package geo;
+
+
+/**
+* <p>This class simply wraps a <code>String</code> to allow a
+* call-by-reference operation.</p>
+* @author Jerry Smith
+* @version $Id: GridZone.java $
+*/
+
+class GridZone {
+  String gridZone = "";
+}
@@ -1,15 +1,43 @@
 package geo;
 
 import java.awt.*;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.*;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
 * <p><code>JConvertCoordinates</code> is a simple lat/lon-UTM conversion
 * tool.</p>
+* <p>The three panels, DMS, decimal degrees, and UTM, are kept in sync as
+* the user types:  an edit restarts a short timer, and when the typing
+* pauses, the edited panel is converted on a background thread and the
+* other panels are updated.  Edits made while a conversion is in progress
+* supersede it.  The "Convert" buttons convert immediately.</p>
+* <p>A CSV file of coordinates can also be converted in bulk, by dropping it
+* onto the window or choosing it with the "Convert File" button; see
+* {@link CoordinateFileConverter}.  The conversion runs in the background,
+* with a progress bar and a "Cancel" button, and the first rows of the
+* output are shown when it completes.  The output file is written next to
+* the input file, e.g., <code>points-utm.csv</code> for
+* <code>points.csv</code>.</p>
 * @author Jerry Smith
 * @version $Id: JConvertCoordinates.java 255 2006-01-18 16:40:51Z jsmith $
 */
@@ -26,6 +54,16 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
   private static final int NORTHING_WIDTH = 8;
   private static final String LINEFEED = "\n";
   private static final String NULL_SYMBOL = "(null)";
+  private static final int PREVIEW_ROWS = 100;
+  private static final int PROGRESS_INTERVAL = 100;
+  private static final Dimension PREVIEW_SIZE = new Dimension(600, 160);
+  private static final int DEBOUNCE_DELAY = 300;
+  private static final int DMS_DECIMALS = 2;    /* as dmsFormat shows */
+  private static final int DMS_PANEL = 0;
+  private static final int DECIMAL_PANEL = 1;
+  private static final int UTM_PANEL = 2;
+  private static final String TRAINING_PROPERTY = "geo.training";
+  private static final int TRAINING_DELAY = 2000;
   //
   // Instance variables:
   //
@@ -37,6 +75,32 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
   private JTextField gridZone, easting, northing;
   private JComboBox ns = new JComboBox(new String[] {"N", "S"});
   private JComboBox ew = new JComboBox(new String[] {"E", "W"});
+  private JButton convertFile, cancelFile;
+  private JComboBox<String> fileDirection = new JComboBox<String>(
+    new String[] {"Lat/Lon to UTM", "UTM to Lat/Lon"});
+  private JProgressBar progress = new JProgressBar(0, 100);
+  private JLabel status = new JLabel("Drop a CSV file here to convert it.");
+  private DefaultTableModel previewModel = new DefaultTableModel();
+  private JTable preview = new JTable(previewModel);
+  private Timer progressTimer = new Timer(PROGRESS_INTERVAL, this);
+  private FileConversion conversion = null;
+  //
+  // Live conversion:  the edited panel, the edit generation, and whether
+  // the fields are being updated with a result (EDT only).
+  //
+  private Timer debounceTimer = new Timer(DEBOUNCE_DELAY, this);
+  private int editedPanel = DMS_PANEL;
+  private int generation = 0;
+  private boolean updating = false;
+  private ExecutorService evaluator = Executors.newSingleThreadExecutor();
+  private AtomicReference<Evaluation> pending =
+    new AtomicReference<Evaluation>();
+  //
+  // DecimalFormat is not thread-safe; these are used only by the evaluator.
+  //
+  private DecimalFormat latLonFormat = new DecimalFormat("###.######");
+  private DecimalFormat utmFormat = new DecimalFormat("#######.#");
+  private DecimalFormat dmsFormat = new DecimalFormat("###.##");
  
 
   /**
@@ -110,6 +174,43 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
     bottomPanel.add(clear = new JButton("Clear"));
     clear.addActionListener(this);
 
+    JPanel filePanel = new JPanel();
+    filePanel.setLayout(new BorderLayout(5, 5));
+    outerPanel.add(filePanel, BorderLayout.SOUTH);
+    JPanel fileControlPanel = new JPanel();
+    filePanel.add(fileControlPanel, BorderLayout.NORTH);
+    fileControlPanel.add(convertFile = new JButton("Convert File..."));
+    convertFile.addActionListener(this);
+    fileControlPanel.add(fileDirection);
+    fileControlPanel.add(progress);
+    progress.setStringPainted(true);
+    fileControlPanel.add(cancelFile = new JButton("Cancel"));
+    cancelFile.addActionListener(this);
+    cancelFile.setEnabled(false);
+    preview.setEnabled(false);
+    JScrollPane previewPane = new JScrollPane(preview);
+    previewPane.setPreferredSize(PREVIEW_SIZE);
+    filePanel.add(previewPane, BorderLayout.CENTER);
+    filePanel.add(status, BorderLayout.SOUTH);
+    FileDropHandler dropHandler = new FileDropHandler();
+    getRootPane().setTransferHandler(dropHandler);
+    preview.setTransferHandler(dropHandler);
+
+    debounceTimer.setRepeats(false);
+    listen(degreesLat, DMS_PANEL);
+    listen(minutesLat, DMS_PANEL);
+    listen(secondsLat, DMS_PANEL);
+    listen(degreesLon, DMS_PANEL);
+    listen(minutesLon, DMS_PANEL);
+    listen(secondsLon, DMS_PANEL);
+    ns.addActionListener(this);
+    ew.addActionListener(this);
+    listen(decimalDegreesLat, DECIMAL_PANEL);
+    listen(decimalDegreesLon, DECIMAL_PANEL);
+    listen(gridZone, UTM_PANEL);
+    listen(easting, UTM_PANEL);
+    listen(northing, UTM_PANEL);
+
     setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
     pack();
     setSize(getPreferredSize());
@@ -127,7 +228,31 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
       System.out.println("Usage: java " + JConvertCoordinates.class.getName());
       return;
     }
-    new JConvertCoordinates(TITLE);
+    JConvertCoordinates frame = new JConvertCoordinates(TITLE);
+    if (Boolean.getBoolean(TRAINING_PROPERTY)) {
+      frame.train();
+    }
+  }
+
+  //
+  // A training run, for the class-data sharing archive (see build.xml):
+  // converts a coordinate, then exits.
+  //
+
+  private void train() {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        decimalDegreesLat.setText("32.28305");
+        decimalDegreesLon.setText("-106.80035");
+        Timer exit = new Timer(TRAINING_DELAY, new ActionListener() {
+          public void actionPerformed(ActionEvent event) {
+            System.exit(0);
+          }
+        });
+        exit.setRepeats(false);
+        exit.start();
+      }
+    });
   }
 
   /**
@@ -138,28 +263,119 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
 
   public void actionPerformed(ActionEvent event) {
     Object source = event.getSource();
-    if (source == convertDegrees) {
-      convertLatLonToUTM();
+    if (source == debounceTimer) {
+      evaluate(editedPanel);
+    }
+    else if (source == ns || source == ew) {
+      edited(DMS_PANEL);
+    }
+    else if (source == progressTimer) {
+      if (conversion != null) {
+        progress.setValue((int) (conversion.converter.getProgress() * 100));
+      }
+    }
+    else if (source == convertFile) {
+      chooseFile();
+    }
+    else if (source == cancelFile) {
+      if (conversion != null) {
+        conversion.converter.cancel();
+        cancelFile.setEnabled(false);
+        status.setText("Cancelling...");
+      }
+    }
+    else if (source == convertDegrees) {
+      evaluate(DMS_PANEL);
     }
     else if (source == convertDecimalDegrees) {
-      convertDecimalLatLonToUTM();
+      evaluate(DECIMAL_PANEL);
     }
     else if (source == convertUTM) {
-      convertUTMToLatLon();
+      evaluate(UTM_PANEL);
     }
     else if (source == clearDMS) {
-      clearDMSData();
+      clear(true, false, false);
     }
     else if (source == clearDecimal) {
-      clearDecimalData();
+      clear(false, true, false);
     }
     else if (source == clearUTM) {
-      clearUTMData();
+      clear(false, false, true);
     }
     else if (source == clear) {
-      clearDMSData();
-      clearDecimalData();
-      clearUTMData();
+      clear(true, true, true);
+    }
+  }
+
+  private void listen(JTextField field, final int panel) {
+    field.getDocument().addDocumentListener(new DocumentListener() {
+      public void insertUpdate(DocumentEvent event) {
+        edited(panel);
+      }
+
+      public void removeUpdate(DocumentEvent event) {
+        edited(panel);
+      }
+
+      public void changedUpdate(DocumentEvent event) {
+      }
+    });
+  }
+
+  //
+  // An edit supersedes any conversion in progress, and (re)starts the
+  // timer; edits made by a result, or by clearing, are ignored.
+  //
+
+  private void edited(int panel) {
+    if (updating) {
+      return;
+    }
+    generation++;
+    editedPanel = panel;
+    debounceTimer.restart();
+  }
+
+  //
+  // Converts a panel on the evaluator thread.  Evaluations are coalesced:
+  // if one is already waiting, it is replaced, and only the latest runs.
+  //
+
+  private void evaluate(int panel) {
+    debounceTimer.stop();
+    Evaluation evaluation = new Evaluation(panel, generation);
+    if (!evaluation.isComplete()) {
+      return;
+    }
+    if (pending.getAndSet(evaluation) == null) {
+      evaluator.execute(new Runnable() {
+        public void run() {
+          Evaluation next = pending.getAndSet(null);
+          if (next != null && next.convert()) {
+            SwingUtilities.invokeLater(next);
+          }
+        }
+      });
+    }
+  }
+
+  private void clear(boolean dms, boolean decimal, boolean utm) {
+    debounceTimer.stop();
+    generation++;
+    updating = true;
+    try {
+      if (dms) {
+        clearDMSData();
+      }
+      if (decimal) {
+        clearDecimalData();
+      }
+      if (utm) {
+        clearUTMData();
+      }
+    }
+    finally {
+      updating = false;
     }
   }
 
@@ -185,80 +401,370 @@ public class JConvertCoordinates extends JFrame implements ActionListener {
     northing.setText("");
   }
 
-  private void convertLatLonToUTM() {
-    int multiplier = ns.getSelectedIndex() == 0 ? 1 : -1;
-    double latitude = multiplier *
-      (getDouble(degreesLat) + getDouble(minutesLat) / 60.0 +
-        getDouble(secondsLat) / 3600.0);
-    multiplier = ew.getSelectedIndex() == 0 ? 1 : -1;
-    double longitude = multiplier * 
-      (getDouble(degreesLon) + getDouble(minutesLon) / 60.0 +
-          getDouble(secondsLon) / 3600.0);
-    LatLon latLon = new LatLon(latitude, longitude);
-    UTM utm = new UTM("", 0, 0);
-    if (!CoordinateUtil.latLonToUTM(latLon, utm, CoordinateUtil.WGS_84_DATUM)) {
-      return;
+  private void chooseFile() {
+    JFileChooser chooser = new JFileChooser();
+    if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+      startConversion(chooser.getSelectedFile());
     }
-    DecimalFormat ldf = new DecimalFormat("###.######");
-    decimalDegreesLat.setText(ldf.format(latitude));
-    decimalDegreesLon.setText(ldf.format(longitude));
-    DecimalFormat udf = new DecimalFormat("#######.#");
-    gridZone.setText(utm.getGridZone());
-    easting.setText(udf.format(utm.getX()));
-    northing.setText(udf.format(utm.getY()));
   }
 
-  private void convertDecimalLatLonToUTM() {
-    LatLon latLon =
-      new LatLon(getDouble(decimalDegreesLat), getDouble(decimalDegreesLon));
-    UTM utm = new UTM("", 0, 0);
-    if (!CoordinateUtil.latLonToUTM(latLon, utm, CoordinateUtil.WGS_84_DATUM)) {
+  private void startConversion(File input) {
+    if (conversion != null) {
       return;
     }
-    handleSexagesimal(latLon.getLatitude(), latLon.getLongitude());
-    DecimalFormat udf = new DecimalFormat("#######.#");
-    gridZone.setText(utm.getGridZone());
-    easting.setText(udf.format(utm.getX()));
-    northing.setText(udf.format(utm.getY()));
-  }
+    int direction = fileDirection.getSelectedIndex() == 0 ?
+      CoordinateFileConverter.LATLON_TO_UTM :
+      CoordinateFileConverter.UTM_TO_LATLON;
+    File output = getOutputFile(input, direction);
 
-  private void convertUTMToLatLon() {
-    UTM utm = new UTM(gridZone.getText().toUpperCase(),
-      getDouble(easting), getDouble(northing));
-    LatLon latLon = new LatLon();
-    if (!CoordinateUtil.utmToLatLon(utm, latLon, CoordinateUtil.WGS_84_DATUM)) {
+    /* A cancelled conversion left its output and checkpoint:  resume it, */
+    /* or start afresh */
+
+    boolean resume = false;
+    if (new File(output.getPath() +
+        CoordinateFileConverter.CHECKPOINT_SUFFIX).exists()) {
+      int choice = JOptionPane.showConfirmDialog(this,
+        "Resume the cancelled conversion to " + output.getName() + "?",
+        TITLE, JOptionPane.YES_NO_CANCEL_OPTION);
+      if (choice != JOptionPane.YES_OPTION &&
+          choice != JOptionPane.NO_OPTION) {
+        return;
+      }
+      resume = choice == JOptionPane.YES_OPTION;
+    }
+    if (!resume && output.exists() && JOptionPane.showConfirmDialog(this,
+        "Replace " + output.getName() + "?", TITLE,
+        JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
       return;
     }
-    DecimalFormat ldf = new DecimalFormat("###.######");
-    double latitude = latLon.getLatitude();
-    double longitude = latLon.getLongitude();
-    decimalDegreesLat.setText(ldf.format(latitude));
-    decimalDegreesLon.setText(ldf.format(longitude));
-    handleSexagesimal(latitude, longitude);
+    conversion = new FileConversion(input, output, direction, resume);
+    setFileControls(true);
+    progress.setValue(0);
+    previewModel.setDataVector(new Object[0][], new Object[0]);
+    status.setText((resume ? "Resuming " : "Converting ") + input.getName() +
+      "...");
+    progressTimer.start();
+    conversion.execute();
+  }
+
+  private void setFileControls(boolean converting) {
+    convertFile.setEnabled(!converting);
+    fileDirection.setEnabled(!converting);
+    cancelFile.setEnabled(converting);
+  }
+
+  private static File getOutputFile(File input, int direction) {
+    String name = input.getName();
+    int dot = name.lastIndexOf('.');
+    String suffix =
+      direction == CoordinateFileConverter.LATLON_TO_UTM ? "-utm" : "-latlon";
+    name = dot > 0 ?
+      name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
+    return new File(input.getParentFile(), name);
+  }
+
+  //
+  // Reads the first rows of the output, split into fields, off the EDT.
+  //
+
+  private static List<String[]> readPreview(File file) throws IOException {
+    List<String[]> rows = new ArrayList<String[]>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while (rows.size() < PREVIEW_ROWS &&
+          (line = reader.readLine()) != null) {
+        rows.add(line.split("[,;\t]", -1));
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  private void showPreview(List<String[]> rows) {
+    int columns = 0;
+    for (int i = 0; i < rows.size(); i++) {
+      columns = Math.max(columns, rows.get(i).length);
+    }
+    Object[] names = new Object[columns];
+    for (int i = 0; i < columns; i++) {
+      names[i] = String.valueOf(i + 1);
+    }
+    Object[][] data = new Object[rows.size()][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = rows.get(i);
+    }
+    previewModel.setDataVector(data, names);
+  }
+
+  private static boolean isEmpty(String str) {
+    return str == null || str.trim().length() == 0;
   }
 
-  private void handleSexagesimal(double latitude, double longitude) {
-    DecimalFormat ldf = new DecimalFormat("###.##");
-    ns.setSelectedIndex(latitude > 0 ? 0 : 1);
-    latitude = Math.abs(latitude);
-    DMS dms = CoordinateUtil.convertDecimalToDMS(Math.abs(latitude));
-    degreesLat.setText(ldf.format(dms.getDegrees()));
-    minutesLat.setText(ldf.format(dms.getMinutes()));
-    secondsLat.setText(ldf.format(dms.getSeconds()));
-    ew.setSelectedIndex(longitude > 0 ? 0 : 1);
-    longitude = Math.abs(longitude);
-    dms = CoordinateUtil.convertDecimalToDMS(Math.abs(longitude));
-    degreesLon.setText(ldf.format(dms.getDegrees()));
-    minutesLon.setText(ldf.format(dms.getMinutes()));
-    secondsLon.setText(ldf.format(dms.getSeconds()));
+  private static double getDouble(String str) {
+    return isEmpty(str) ? 0.0 : Double.parseDouble(str.trim());
+  }
+
+  /**
+  * <p>A conversion of one panel:  its fields are read on the EDT, converted
+  * on the evaluator thread, and the results are shown on the EDT, unless
+  * the fields have been edited in the meantime.</p>
+  */
+
+  class Evaluation implements Runnable {
+    private int panel;
+    private int generation;
+    private String[] fields;
+    private int nsIndex, ewIndex;
+    private String latitudeText, longitudeText;
+    private String zoneText, eastingText, northingText;
+    private String[] dmsText = new String[6];
+
+    Evaluation(int panel, int generation) {
+      this.panel = panel;
+      this.generation = generation;
+      nsIndex = ns.getSelectedIndex();
+      ewIndex = ew.getSelectedIndex();
+      if (panel == DMS_PANEL) {
+        fields = new String[] {
+          degreesLat.getText(), minutesLat.getText(), secondsLat.getText(),
+          degreesLon.getText(), minutesLon.getText(), secondsLon.getText()
+        };
+      }
+      else if (panel == DECIMAL_PANEL) {
+        fields = new String[] {
+          decimalDegreesLat.getText(), decimalDegreesLon.getText()
+        };
+      }
+      else {
+        fields = new String[] {
+          gridZone.getText(), easting.getText(), northing.getText()
+        };
+      }
+    }
+
+    //
+    // Whether the required fields, i.e., not the DMS minutes and seconds,
+    // have been entered.
+    //
+
+    boolean isComplete() {
+      if (panel == DMS_PANEL) {
+        return !isEmpty(fields[0]) && !isEmpty(fields[3]);
+      }
+      for (int i = 0; i < fields.length; i++) {
+        if (isEmpty(fields[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    //
+    // Runs on the evaluator thread; returns whether there are results.
+    //
+
+    boolean convert() {
+      try {
+        if (panel == DMS_PANEL) {
+          double latitude = (nsIndex == 0 ? 1 : -1) *
+            (getDouble(fields[0]) + getDouble(fields[1]) / 60.0 +
+              getDouble(fields[2]) / 3600.0);
+          double longitude = (ewIndex == 0 ? 1 : -1) *
+            (getDouble(fields[3]) + getDouble(fields[4]) / 60.0 +
+              getDouble(fields[5]) / 3600.0);
+          return convertLatLon(latitude, longitude);
+        }
+        else if (panel == DECIMAL_PANEL) {
+          return convertLatLon(getDouble(fields[0]), getDouble(fields[1]));
+        }
+        else {
+          return convertUTM();
+        }
+      }
+      catch (NumberFormatException e) {
+        return false;
+      }
+    }
+
+    private boolean convertLatLon(double latitude, double longitude) {
+      LatLon latLon = new LatLon(latitude, longitude);
+      UTM utm = new UTM("", 0, 0);
+      if (!CoordinateUtil.latLonToUTM(latLon, utm,
+          CoordinateUtil.WGS_84_DATUM)) {
+        return false;
+      }
+      formatLatLon(latitude, longitude);
+      zoneText = utm.getGridZone();
+      eastingText = utmFormat.format(utm.getX());
+      northingText = utmFormat.format(utm.getY());
+      return true;
+    }
+
+    private boolean convertUTM() {
+      String zone = fields[0].trim().toUpperCase();
+      if (CoordinateUtil.packGridZone(zone) < 0) {
+        return false;
+      }
+      UTM utm = new UTM(CoordinateUtil.unpackGridZone(
+        CoordinateUtil.packGridZone(zone)),
+        getDouble(fields[1]), getDouble(fields[2]));
+      LatLon latLon = new LatLon();
+      if (!CoordinateUtil.utmToLatLon(utm, latLon,
+          CoordinateUtil.WGS_84_DATUM)) {
+        return false;
+      }
+      formatLatLon(latLon.getLatitude(), latLon.getLongitude());
+      return true;
+    }
+
+    private void formatLatLon(double latitude, double longitude) {
+      latitudeText = latLonFormat.format(latitude);
+      longitudeText = latLonFormat.format(longitude);
+      nsIndex = latitude > 0 ? 0 : 1;
+      ewIndex = longitude > 0 ? 0 : 1;
+
+      /* Rounded as shown, so that the seconds carry rather than read 60 */
+
+      double[] coordinates = {Math.abs(latitude), Math.abs(longitude)};
+      int[] degrees = new int[2];
+      int[] minutes = new int[2];
+      double[] seconds = new double[2];
+      CoordinateBatch.convertDecimalToDMS(coordinates, degrees, minutes,
+        seconds, 0, 2, DMS_DECIMALS);
+      for (int i = 0; i < 2; i++) {
+        dmsText[3 * i] = dmsFormat.format(degrees[i]);
+        dmsText[3 * i + 1] = dmsFormat.format(minutes[i]);
+        dmsText[3 * i + 2] = dmsFormat.format(seconds[i]);
+      }
+    }
+
+    //
+    // Runs on the EDT:  shows the results in the other panels.
+    //
+
+    public void run() {
+      if (generation != JConvertCoordinates.this.generation) {
+        return;
+      }
+      updating = true;
+      try {
+        if (panel != DMS_PANEL) {
+          ns.setSelectedIndex(nsIndex);
+          degreesLat.setText(dmsText[0]);
+          minutesLat.setText(dmsText[1]);
+          secondsLat.setText(dmsText[2]);
+          ew.setSelectedIndex(ewIndex);
+          degreesLon.setText(dmsText[3]);
+          minutesLon.setText(dmsText[4]);
+          secondsLon.setText(dmsText[5]);
+        }
+        if (panel != DECIMAL_PANEL) {
+          decimalDegreesLat.setText(latitudeText);
+          decimalDegreesLon.setText(longitudeText);
+        }
+        if (panel != UTM_PANEL) {
+          gridZone.setText(zoneText);
+          easting.setText(eastingText);
+          northing.setText(northingText);
+        }
+      }
+      finally {
+        updating = false;
+      }
+    }
   }
 
-  private double getDouble(JTextField tf) {
-    return Double.parseDouble(checkValue(tf.getText(), "0.0"));
+  /**
+  * <p>Converts a file in the background, and reads the preview.</p>
+  */
+
+  class FileConversion extends SwingWorker<List<String[]>, Object> {
+    private CoordinateFileConverter converter;
+    private File input, output;
+    private boolean resume;
+
+    FileConversion(File input, File output, int direction, boolean resume) {
+      this.input = input;
+      this.output = output;
+      this.resume = resume;
+      converter =
+        new CoordinateFileConverter(direction, CoordinateUtil.WGS_84_DATUM);
+    }
+
+    protected List<String[]> doInBackground() throws IOException {
+      if (resume) {
+        converter.resume(input, output);
+      }
+      else {
+        converter.convert(input, output);
+      }
+      return readPreview(output);
+    }
+
+    protected void done() {
+      progressTimer.stop();
+      conversion = null;
+      setFileControls(false);
+      try {
+        showPreview(get());
+        progress.setValue(100);
+        status.setText("Converted " + converter.getPointCount() +
+          (resume ? " more" : "") + " coordinate(s) in " +
+          converter.getLineCount() + " line(s) to " + output.getName() +
+          ".");
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof InterruptedIOException) {
+          status.setText("Conversion of " + input.getName() +
+            " cancelled; convert it again to resume.");
+        }
+        else {
+          status.setText("Conversion of " + input.getName() + " failed: " +
+            cause.getMessage());
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
-  private String checkValue(String str, String altStr) {
-    return (str == null || str.length() == 0) ? altStr : str;
+  /**
+  * <p>Starts a conversion of a file dropped onto the window.</p>
+  */
+
+  class FileDropHandler extends TransferHandler {
+    private static final long serialVersionUID = 1L;
+
+    public boolean canImport(TransferHandler.TransferSupport support) {
+      return conversion == null &&
+        support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+    }
+
+    public boolean importData(TransferHandler.TransferSupport support) {
+      if (!canImport(support)) {
+        return false;
+      }
+      try {
+        List<?> files = (List<?>) support.getTransferable().getTransferData(
+          DataFlavor.javaFileListFlavor);
+        if (files.isEmpty()) {
+          return false;
+        }
+        startConversion((File) files.get(0));
+        return true;
+      }
+      catch (UnsupportedFlavorException e) {
+        return false;
+      }
+      catch (IOException e) {
+        return false;
+      }
+    }
   }
 
   class JInsetsPanel extends JPanel {
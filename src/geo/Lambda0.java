@@ -0,0 +1,13 @@
+package geo;
+
+
+/**
+* <p>This class simply wraps a <code>double</code> to allow a
+* call-by-reference operation.</p>
+* @author Jerry Smith
+* @version $Id: Lambda0.java $
+*/
+
+class Lambda0 {
+  double lambda0 = 0;
+}
@@ -0,0 +1,614 @@
+package geo;
+
+import java.util.Arrays;
+
+
+/**
+* <p><code>MGRS</code> provides class-level convenience methods for Military
+* Grid Reference System (MGRS) coordinates.  An MGRS coordinate is a UTM
+* (or UPS) coordinate written as the grid zone, a two-letter 100 km square
+* identifier, and the easting and northing within the square, e.g.,
+* <code>"13SCR3045973233"</code>.  The operations are layered on the UTM
+* operations of {@link CoordinateUtil} and {@link CoordinateBatch}, so a
+* coordinate is projected only once.</p>
+* <p>The precision is the number of digits in each of the easting and
+* northing:  5 digits for 1 m, 4 for 10 m, and so on down to 1 digit for
+* 10 km, and 0 digits for the 100 km square alone.  As is the MGRS
+* convention, the easting and northing are truncated, not rounded, so that
+* the coordinate names the square that contains the point.  A decoded
+* coordinate is the southwest corner of its square.</p>
+* <p>The zone number is written with two digits, like the UTM grid zones
+* of <code>CoordinateUtil</code>; a one-digit zone number is accepted when
+* decoding.  In the polar regions, the UPS coordinates are written with the
+* band letter alone (A, B, Y, or Z), and decode to the grid zones used by
+* <code>CoordinateUtil</code>, e.g., <code>"31Z"</code>.  The Clarke 1866
+* and Bessel 1841 datums use the older "AL" row lettering; the other
+* datums use the standard "AA" lettering.</p>
+* @author Jerry Smith
+* @version $Id: MGRS.java $
+*/
+
+public final class MGRS {
+  /**
+  * <p>The maximum precision:  five digits each, or 1 m.</p>
+  */
+
+  public static final int MAX_PRECISION = 5;
+  /**
+  * <p>The maximum length of an MGRS coordinate.</p>
+  */
+
+  public static final int MAX_LENGTH = 5 + 2 * MAX_PRECISION;
+  private static final double SQUARE_SIZE = 100000.0;
+  private static final double ROW_CYCLE = 2000000.0;
+  private static final int[] DIVISORS = {100000, 10000, 1000, 100, 10, 1};
+  //
+  // UTM 100 km square letters:  the column letters repeat every three
+  // zones; the row letters repeat every 2,000 km of northing.
+  //
+  private static final char[][] UTM_COLUMNS = {
+    "ABCDEFGH".toCharArray(),
+    "JKLMNPQR".toCharArray(),
+    "STUVWXYZ".toCharArray()
+  };
+  private static final char[] UTM_ROWS = "ABCDEFGHJKLMNPQRSTUV".toCharArray();
+  //
+  // UPS 100 km square letters, with the easting/northing of the first
+  // letter.  The western (A, Y) and eastern (B, Z) halves have separate
+  // column letters; the northern and southern aspects have separate rows.
+  //
+  private static final char[] UPS_WEST_COLUMNS =
+    "JKLPQRSTUXYZ".toCharArray();
+  private static final char[] UPS_EAST_COLUMNS =
+    "ABCFGHJKLPQR".toCharArray();
+  private static final char[] UPS_NORTH_ROWS =
+    "ABCDEFGHJKLMNP".toCharArray();
+  private static final char[] UPS_SOUTH_ROWS =
+    "ABCDEFGHJKLMNPQRSTUVWXYZ".toCharArray();
+  private static final double UPS_WEST_EASTING = 800000.0;
+  private static final double UPS_EAST_EASTING = 2000000.0;
+  private static final double UPS_NORTH_NORTHING = 1300000.0;
+  private static final double UPS_SOUTH_NORTHING = 800000.0;
+  //
+  // Decoding tables, indexed by letter - 'A':  the position of the letter
+  // in each table above, or -1.
+  //
+  private static final int[][] UTM_COLUMN_INDEX = new int[3][];
+  private static final int[] UTM_ROW_INDEX = indexOf(UTM_ROWS);
+  private static final int[] UPS_WEST_COLUMN_INDEX =
+    indexOf(UPS_WEST_COLUMNS);
+  private static final int[] UPS_EAST_COLUMN_INDEX =
+    indexOf(UPS_EAST_COLUMNS);
+  //
+  // The northern aspect is narrower:  its western half (Y) starts at R, and
+  // its eastern half (Z) ends at J.
+  //
+  private static final int[] UPS_NORTH_WEST_COLUMN_INDEX =
+    indexOf(UPS_WEST_COLUMNS, 5, UPS_WEST_COLUMNS.length);
+  private static final int[] UPS_NORTH_EAST_COLUMN_INDEX =
+    indexOf(UPS_EAST_COLUMNS, 0, 7);
+  private static final int[] UPS_NORTH_ROW_INDEX = indexOf(UPS_NORTH_ROWS);
+  private static final int[] UPS_SOUTH_ROW_INDEX = indexOf(UPS_SOUTH_ROWS);
+  //
+  // The smallest northing of each latitude band, indexed by letter - 'A',
+  // which resolves the 2,000 km row letter cycle; -1 for non-UTM letters.
+  //
+  private static final double[] BAND_MIN_NORTHING = new double[26];
+
+  static {
+    for (int i = 0; i < UTM_COLUMNS.length; i++) {
+      UTM_COLUMN_INDEX[i] = indexOf(UTM_COLUMNS[i]);
+    }
+    String bands = "CDEFGHJKLMNPQRSTUVWX";
+    double[] northings = {
+      1100000, 2000000, 2800000, 3700000, 4600000, 5500000, 6400000,
+      7300000, 8200000, 9100000, 0, 800000, 1700000, 2600000, 3500000,
+      4400000, 5300000, 6200000, 7000000, 7900000
+    };
+    Arrays.fill(BAND_MIN_NORTHING, -1);
+    for (int i = 0; i < bands.length(); i++) {
+      BAND_MIN_NORTHING[bands.charAt(i) - 'A'] = northings[i];
+    }
+  }
+
+
+  private MGRS() {
+  }
+
+  /**
+  * <p>Converts a lat/lon coordinate to an MGRS coordinate.</p>
+  * @param latLon The lat/lon coordinate object.
+  * @param precision The precision, 0 through 5 digits.
+  * @param datum The datum.
+  * @return The MGRS coordinate, or <code>null</code> if the operation was
+  * unsuccessful.
+  */
+
+  public static String latLonToMGRS(LatLon latLon, int precision, int datum) {
+    UTM utm = new UTM();
+    if (!CoordinateUtil.latLonToUTM(latLon, utm, datum)) {
+      return null;
+    }
+    return utmToMGRS(utm, precision, datum);
+  }
+
+  /**
+  * <p>Converts a UTM coordinate to an MGRS coordinate.</p>
+  * @param utm The UTM coordinate object.
+  * @param precision The precision, 0 through 5 digits.
+  * @param datum The datum.
+  * @return The MGRS coordinate, or <code>null</code> if the operation was
+  * unsuccessful.
+  */
+
+  public static String utmToMGRS(UTM utm, int precision, int datum) {
+    char[] buffer = new char[MAX_LENGTH];
+    int length = encode(CoordinateUtil.packGridZone(utm.getGridZone()),
+      utm.getX(), utm.getY(), precision, datum, buffer, 0);
+    return length < 0 ? null : new String(buffer, 0, length);
+  }
+
+  /**
+  * <p>Converts an MGRS coordinate to a UTM coordinate, the southwest corner
+  * of the square named by the coordinate.</p>
+  * @param mgrs The MGRS coordinate.
+  * @param utm The UTM coordinate object (modified call-by-reference).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean mgrsToUTM(String mgrs, UTM utm, int datum) {
+    int[] zone = new int[1];
+    double[] easting = new double[1];
+    double[] northing = new double[1];
+    if (!decode(mgrs, 0, mgrs.length(), datum, zone, easting, northing, 0)) {
+      System.out.println("Invalid MGRS coordinate: " + mgrs + ".");
+      return false;
+    }
+    utm.setGridZone(CoordinateUtil.unpackGridZone(zone[0]));
+    utm.setX(easting[0]);
+    utm.setY(northing[0]);
+    return true;
+  }
+
+  /**
+  * <p>Converts an MGRS coordinate to a lat/lon coordinate, the southwest
+  * corner of the square named by the coordinate.</p>
+  * @param mgrs The MGRS coordinate.
+  * @param latLon The lat/lon coordinate object (modified call-by-reference).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean mgrsToLatLon(String mgrs, LatLon latLon, int datum) {
+    UTM utm = new UTM();
+    return mgrsToUTM(mgrs, utm, datum) &&
+      CoordinateUtil.utmToLatLon(utm, latLon, datum);
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to MGRS coordinates, filling
+  * in the UTM coordinates along the way.  The MGRS coordinates are written
+  * one after another into the buffer, which must hold
+  * <code>length * MAX_LENGTH</code> characters; the end of each coordinate
+  * in the buffer is written to <code>ends</code>, so that the first
+  * coordinate occupies 0 through <code>ends[offset] - 1</code>, and each
+  * following coordinate <code>i</code> occupies <code>ends[i - 1]</code>
+  * through <code>ends[i] - 1</code>.  An invalid coordinate is written as
+  * an empty string.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param precision The precision, 0 through 5 digits.
+  * @param datum The datum.
+  * @param buffer The MGRS coordinates (modified).
+  * @param ends The end of each MGRS coordinate in the buffer (modified),
+  * indexed from <code>offset</code>.
+  * @return Whether or not the operation was successful.
+  */
+
+  public static boolean latLonToMGRS(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings,
+      int offset, int length, int precision, int datum,
+      char[] buffer, int[] ends) {
+    return CoordinateBatch.latLonToUTM(latitudes, longitudes, gridZones,
+        eastings, northings, offset, length, datum) &&
+      utmToMGRS(gridZones, eastings, northings, offset, length, precision,
+        datum, buffer, ends);
+  }
+
+  /**
+  * <p>Converts a range of UTM coordinates to MGRS coordinates.  The buffer
+  * is filled as described for
+  * {@link #latLonToMGRS(double[], double[], int[], double[], double[], int,
+  * int, int, int, char[], int[])}.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param precision The precision, 0 through 5 digits.
+  * @param datum The datum.
+  * @param buffer The MGRS coordinates (modified).
+  * @param ends The end of each MGRS coordinate in the buffer (modified),
+  * indexed from <code>offset</code>.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean utmToMGRS(int[] gridZones, double[] eastings,
+      double[] northings, int offset, int length, int precision, int datum,
+      char[] buffer, int[] ends) {
+    boolean ok = true;
+    int position = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      int count = encode(gridZones[i], eastings[i], northings[i], precision,
+        datum, buffer, position);
+      if (count < 0) {
+        ok = false;
+      }
+      else {
+        position += count;
+      }
+      ends[i] = position;
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of MGRS coordinates, laid out in a buffer as
+  * described for
+  * {@link #utmToMGRS(int[], double[], double[], int, int, int, int, char[],
+  * int[])}, to UTM coordinates.  An invalid MGRS coordinate yields a grid
+  * zone of -1 and <code>NaN</code> for its easting and northing.</p>
+  * @param buffer The MGRS coordinates.
+  * @param ends The end of each MGRS coordinate in the buffer, indexed from
+  * <code>offset</code>.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean mgrsToUTM(char[] buffer, int[] ends, int offset,
+      int length, int datum, int[] gridZones, double[] eastings,
+      double[] northings) {
+    boolean ok = true;
+    int start = 0;
+    CharArray text = new CharArray(buffer);
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (!decode(text, start, ends[i], datum, gridZones, eastings,
+          northings, i)) {
+        gridZones[i] = -1;
+        eastings[i] = Double.NaN;
+        northings[i] = Double.NaN;
+        ok = false;
+      }
+      start = ends[i];
+    }
+    return ok;
+  }
+
+  //
+  // Encodes one coordinate into the buffer; returns the number of
+  // characters written, or -1 if the coordinate is invalid.
+  //
+
+  static int encode(int gridZone, double easting, double northing,
+      int precision, int datum, char[] buffer, int position) {
+    if (gridZone < 0 || precision < 0 || precision > MAX_PRECISION ||
+        !(easting >= 0) || !(northing >= 0)) {
+      return -1;
+    }
+    int zoneLong = CoordinateUtil.getZoneNumber(gridZone);
+    char zoneLat = CoordinateUtil.getZoneBand(gridZone);
+    int start = position;
+    int column, row;
+    char[] columns, rows;
+
+    switch (zoneLat) {
+    case 'A': case 'Y':
+      columns = UPS_WEST_COLUMNS;
+      column = (int) ((easting - UPS_WEST_EASTING) / SQUARE_SIZE);
+      break;
+    case 'B': case 'Z':
+      columns = UPS_EAST_COLUMNS;
+      column = (int) ((easting - UPS_EAST_EASTING) / SQUARE_SIZE);
+      break;
+    default:
+      if (zoneLong < 1 || zoneLong > 60 ||
+          BAND_MIN_NORTHING[zoneLat - 'A'] < 0) {
+        return -1;
+      }
+      columns = UTM_COLUMNS[(zoneLong - 1) % 3];
+      column = (int) (easting / SQUARE_SIZE) - 1;
+      break;
+    }
+    switch (zoneLat) {
+    case 'A': case 'B':
+      rows = UPS_SOUTH_ROWS;
+      row = (int) ((northing - UPS_SOUTH_NORTHING) / SQUARE_SIZE);
+      break;
+    case 'Y': case 'Z':
+      rows = UPS_NORTH_ROWS;
+      row = (int) ((northing - UPS_NORTH_NORTHING) / SQUARE_SIZE);
+      break;
+    default:
+      rows = UTM_ROWS;
+      row = ((int) (northing / SQUARE_SIZE) + getRowOffset(zoneLong, datum)) %
+        UTM_ROWS.length;
+      break;
+    }
+    if (column < 0 || column >= columns.length || row < 0 ||
+        row >= rows.length) {
+      return -1;
+    }
+
+    /* Grid zone and 100 km square */
+
+    if (rows == UTM_ROWS) {
+      buffer[position++] = (char) ('0' + zoneLong / 10);
+      buffer[position++] = (char) ('0' + zoneLong % 10);
+    }
+    buffer[position++] = zoneLat;
+    buffer[position++] = columns[column];
+    buffer[position++] = rows[row];
+
+    /* Easting and northing within the square, truncated */
+
+    int divisor = DIVISORS[precision];
+    position = appendDigits(
+      (int) (easting % SQUARE_SIZE) / divisor, precision, buffer, position);
+    position = appendDigits(
+      (int) (northing % SQUARE_SIZE) / divisor, precision, buffer, position);
+    return position - start;
+  }
+
+  private static int appendDigits(int value, int digits, char[] buffer,
+      int position) {
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return position + digits;
+  }
+
+  //
+  // Decodes the coordinate in [start, end) into element i of the arrays;
+  // spaces between the parts of the coordinate are ignored.
+  //
+
+  private static boolean decode(CharSequence text, int start, int end,
+      int datum, int[] gridZones, double[] eastings, double[] northings,
+      int i) {
+    int position = skipSpaces(text, start, end);
+    int zoneLong = 0;
+    int digits = 0;
+    while (position < end && digits < 2 && isDigit(text.charAt(position))) {
+      zoneLong = zoneLong * 10 + (text.charAt(position++) - '0');
+      digits++;
+    }
+    position = skipSpaces(text, position, end);
+    if (end - position < 3) {
+      return false;
+    }
+    int zoneLat = toLetterIndex(text.charAt(position++));
+    position = skipSpaces(text, position, end);
+    if (end - position < 2) {
+      return false;
+    }
+    int columnLetter = toLetterIndex(text.charAt(position++));
+    int rowLetter = toLetterIndex(text.charAt(position++));
+    if (zoneLat < 0 || columnLetter < 0 || rowLetter < 0) {
+      return false;
+    }
+
+    /* Easting and northing digits, in two equal halves */
+
+    position = skipSpaces(text, position, end);
+    int count = 0;
+    long eastDigits = 0, northDigits = 0;
+    int mark = position;
+    while (position < end) {
+      char ch = text.charAt(position++);
+      if (isDigit(ch)) {
+        count++;
+      }
+      else if (ch != ' ') {
+        return false;
+      }
+    }
+    if (count % 2 != 0 || count > 2 * MAX_PRECISION) {
+      return false;
+    }
+    int precision = count / 2;
+    int seen = 0;
+    for (position = mark; position < end; position++) {
+      char ch = text.charAt(position);
+      if (isDigit(ch)) {
+        if (seen++ < precision) {
+          eastDigits = eastDigits * 10 + (ch - '0');
+        }
+        else {
+          northDigits = northDigits * 10 + (ch - '0');
+        }
+      }
+    }
+    double eastWithin = eastDigits * DIVISORS[precision];
+    double northWithin = northDigits * DIVISORS[precision];
+    int column, row;
+    double easting, northing;
+    char band = (char) ('A' + zoneLat);
+
+    switch (band) {
+    case 'A': case 'B': case 'Y': case 'Z':
+      if (digits != 0) {
+        return false;
+      }
+      boolean west = band == 'A' || band == 'Y';
+      boolean north = band == 'Y' || band == 'Z';
+      if (north) {
+        column = west ? UPS_NORTH_WEST_COLUMN_INDEX[columnLetter] :
+          UPS_NORTH_EAST_COLUMN_INDEX[columnLetter];
+      }
+      else {
+        column = west ? UPS_WEST_COLUMN_INDEX[columnLetter] :
+          UPS_EAST_COLUMN_INDEX[columnLetter];
+      }
+      row = north ? UPS_NORTH_ROW_INDEX[rowLetter] :
+        UPS_SOUTH_ROW_INDEX[rowLetter];
+      if (column < 0 || row < 0) {
+        return false;
+      }
+      easting = (west ? UPS_WEST_EASTING : UPS_EAST_EASTING) +
+        column * SQUARE_SIZE + eastWithin;
+      northing = (north ? UPS_NORTH_NORTHING : UPS_SOUTH_NORTHING) +
+        row * SQUARE_SIZE + northWithin;
+      gridZones[i] = CoordinateUtil.packGridZone(west ? 30 : 31, band);
+      break;
+    default:
+      if (digits == 0 || zoneLong < 1 || zoneLong > 60 ||
+          BAND_MIN_NORTHING[zoneLat] < 0) {
+        return false;
+      }
+      column = UTM_COLUMN_INDEX[(zoneLong - 1) % 3][columnLetter];
+      row = UTM_ROW_INDEX[rowLetter];
+      if (column < 0 || row < 0) {
+        return false;
+      }
+      easting = (column + 1) * SQUARE_SIZE + eastWithin;
+      row = (row - getRowOffset(zoneLong, datum) + 2 * UTM_ROWS.length) %
+        UTM_ROWS.length;
+      northing = row * SQUARE_SIZE + northWithin;
+
+      /* Resolve the 2,000 km cycle from the latitude band */
+
+      double minNorthing = BAND_MIN_NORTHING[zoneLat];
+      while (northing < minNorthing) {
+        northing += ROW_CYCLE;
+      }
+      gridZones[i] = CoordinateUtil.packGridZone(zoneLong, band);
+      break;
+    }
+    eastings[i] = easting;
+    northings[i] = northing;
+    return true;
+  }
+
+  //
+  // The row letters of even zones start at F ("AA") or R ("AL"); those of
+  // odd zones at A or L.
+  //
+
+  private static int getRowOffset(int zoneLong, int datum) {
+    int offset = zoneLong % 2 == 0 ? 5 : 0;
+    if (datum == CoordinateUtil.CLARKE_1866_DATUM ||
+        datum == CoordinateUtil.BESSEL_1841_DATUM) {
+      offset += 10;
+    }
+    return offset;
+  }
+
+  private static int skipSpaces(CharSequence text, int position, int end) {
+    while (position < end && text.charAt(position) == ' ') {
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isDigit(char ch) {
+    return ch >= '0' && ch <= '9';
+  }
+
+  private static int toLetterIndex(char ch) {
+    if (ch >= 'a' && ch <= 'z') {
+      return ch - 'a';
+    }
+    return ch >= 'A' && ch <= 'Z' ? ch - 'A' : -1;
+  }
+
+  private static int[] indexOf(char[] letters) {
+    return indexOf(letters, 0, letters.length);
+  }
+
+  private static int[] indexOf(char[] letters, int from, int to) {
+    int[] index = new int[26];
+    Arrays.fill(index, -1);
+    for (int i = from; i < to; i++) {
+      index[letters[i] - 'A'] = i;
+    }
+    return index;
+  }
+
+  /**
+  * <p>Runs the MGRS converter as a command-line utility:</p>
+  * <ul>
+  * <li><code>MGRS -latlon 32.28305 -106.80035 [precision]</code>
+  * <li><code>MGRS -mgrs 13SCR3045973233</code>
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    if (args.length >= 3 && args[0].equals("-latlon")) {
+      int precision = args.length > 3 ?
+        Integer.parseInt(args[3]) : MAX_PRECISION;
+      LatLon latLon = new LatLon(Double.parseDouble(args[1]),
+        Double.parseDouble(args[2]));
+      System.out.println("Lat/lon: " + args[1] + " " + args[2] + " MGRS: " +
+        latLonToMGRS(latLon, precision, CoordinateUtil.WGS_84_DATUM));
+    }
+    else if (args.length == 2 && args[0].equals("-mgrs")) {
+      UTM utm = new UTM();
+      LatLon latLon = new LatLon();
+      if (mgrsToUTM(args[1], utm, CoordinateUtil.WGS_84_DATUM) &&
+          CoordinateUtil.utmToLatLon(utm, latLon,
+            CoordinateUtil.WGS_84_DATUM)) {
+        System.out.println("MGRS: " + args[1] + " UTM: " +
+          utm.getGridZone() + " " + utm.getX() + "," + utm.getY() +
+          " Lat/lon: " + latLon.getLatitude() + " " + latLon.getLongitude());
+      }
+    }
+    else {
+      System.out.println("Usage:  java " + MGRS.class.getName() +
+        " -latlon 32.28305 -106.80035 [precision]");
+      System.out.println("Usage:  java " + MGRS.class.getName() +
+        " -mgrs 13SCR3045973233");
+    }
+  }
+
+  /**
+  * <p>This class simply wraps a <code>char[]</code> as a
+  * <code>CharSequence</code> for the batch operations.</p>
+  */
+
+  private static final class CharArray implements CharSequence {
+    private char[] chars;
+
+    CharArray(char[] chars) {
+      this.chars = chars;
+    }
+
+    public int length() {
+      return chars.length;
+    }
+
+    public char charAt(int index) {
+      return chars[index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, start, end - start);
+    }
+
+    public String toString() {
+      return new String(chars);
+    }
+  }
+}
@@ -0,0 +1,643 @@
+package geo;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+* <p><code>NMEAReader</code> reads position fixes from a stream of NMEA 0183
+* sentences, e.g., a GPS receiver log.  The GGA and RMC sentences, from any
+* talker (GP, GN, GL, etc.), are parsed straight from the input bytes into
+* primitive columns:  the UTC time of day, and the latitude and longitude,
+* converted from <code>ddmm.mmmm</code> and the hemisphere to decimal
+* degrees.  No strings are created per sentence.</p>
+* <p>Each sentence is on a line of its own, optionally preceded by other
+* text, e.g., a receiver or vehicle identifier, which is ignored.  A
+* sentence whose checksum does not match is rejected, as is one without a
+* checksum unless checksums are optional (see
+* {@link #setChecksumRequired(boolean)}).  GGA sentences with a fix quality
+* of 0, RMC sentences with a status of V (void), other sentences, and
+* malformed sentences are skipped, and counted.</p>
+* <p>The fixes are read a block at a time, which suits the batch converter,
+* {@link CoordinateBatch}; run as a command-line utility, the reader converts
+* a log to UTM records.</p>
+* @author Jerry Smith
+* @version $Id: NMEAReader.java $
+*/
+
+public class NMEAReader {
+  //
+  // Constants:
+  //
+  /**
+  * <p>The time of a fix that has none.</p>
+  */
+
+  public static final int NO_TIME = -1;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int BLOCK_SIZE = 4096;
+  private static final int MAX_FRACTION_DIGITS = 9;
+  private static final int UTM_DECIMALS = 1;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9
+  };
+  //
+  // Instance variables:
+  //
+  private InputStream in;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+  private boolean eof = false;
+  private boolean discarding = false;
+  private boolean checksumRequired = true;
+  private long sentenceCount = 0;
+  private long fixCount = 0;
+  private long checksumErrorCount = 0;
+  private long skipCount = 0;
+  private long failedFixCount = 0;
+  //
+  // The sentence being parsed, and its fix:
+  //
+  private int field;
+  private int fieldsEnd;
+  private int time;
+  private double latitude;
+  private double longitude;
+
+
+  /**
+  * <p>Constructs a reader.</p>
+  * @param in The stream of sentences (not closed by the reader).
+  */
+
+  public NMEAReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+  * <p>Sets whether or not a sentence must have a checksum; the default is
+  * <code>true</code>.  A checksum that is present is always checked.</p>
+  * @param checksumRequired Whether or not a checksum is required.
+  */
+
+  public void setChecksumRequired(boolean checksumRequired) {
+    this.checksumRequired = checksumRequired;
+  }
+
+  /**
+  * <p>Gets whether or not a sentence must have a checksum.</p>
+  * @return Whether or not a checksum is required.
+  */
+
+  public boolean isChecksumRequired() {
+    return checksumRequired;
+  }
+
+  /**
+  * <p>Gets the number of sentences read, i.e., lines containing a
+  * <code>$</code>.</p>
+  * @return The sentence count.
+  */
+
+  public long getSentenceCount() {
+    return sentenceCount;
+  }
+
+  /**
+  * <p>Gets the number of fixes read.</p>
+  * @return The fix count.
+  */
+
+  public long getFixCount() {
+    return fixCount;
+  }
+
+  /**
+  * <p>Gets the number of sentences rejected for a missing or mismatched
+  * checksum.</p>
+  * @return The checksum error count.
+  */
+
+  public long getChecksumErrorCount() {
+    return checksumErrorCount;
+  }
+
+  /**
+  * <p>Gets the number of lines skipped:  sentences other than GGA and RMC,
+  * sentences without a valid fix, malformed sentences, and other
+  * lines.</p>
+  * @return The skip count.
+  */
+
+  public long getSkipCount() {
+    return skipCount;
+  }
+
+  /**
+  * <p>Reads the next fixes into columns.</p>
+  * @param times The UTC times of day, in milliseconds, or
+  * <code>NO_TIME</code> (modified); may be <code>null</code>.
+  * @param latitudes The latitudes (modified).
+  * @param longitudes The longitudes (modified).
+  * @param offset The index at which to store the first fix.
+  * @param length The maximum number of fixes.
+  * @return The number of fixes read, or -1 at the end of the stream.
+  * @throws IOException If the stream cannot be read.
+  */
+
+  public int read(int[] times, double[] latitudes, double[] longitudes,
+      int offset, int length) throws IOException {
+    int count = 0;
+    while (count < length) {
+      int eol = nextLineEnd();
+      if (eol < 0) {
+        break;
+      }
+      int from = position;
+      position = eol < limit ? eol + 1 : limit;
+      if (discarding) {
+
+        /* The tail of a line too long for the buffer */
+
+        discarding = false;
+        skipCount++;
+        continue;
+      }
+      if (parseLine(from, eol)) {
+        if (times != null) {
+          times[offset + count] = time;
+        }
+        latitudes[offset + count] = latitude;
+        longitudes[offset + count] = longitude;
+        count++;
+      }
+    }
+    fixCount += count;
+    return count == 0 && length > 0 ? -1 : count;
+  }
+
+  //
+  // Finds the end of the line at position, reading more input as needed:
+  // the index of its newline, or the limit if the stream ends without
+  // one; -1 at the end of the stream.
+  //
+
+  private int nextLineEnd() throws IOException {
+    int scan = position;
+    while (true) {
+      while (scan < limit) {
+        if (buffer[scan] == '\n') {
+          return scan;
+        }
+        scan++;
+      }
+      if (eof) {
+        return position < limit ? limit : -1;
+      }
+      if (position > 0) {
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        scan -= position;
+        limit -= position;
+        position = 0;
+      }
+      else if (limit == buffer.length) {
+        discarding = true;
+        scan = limit = 0;
+      }
+      int n = in.read(buffer, limit, buffer.length - limit);
+      if (n < 0) {
+        eof = true;
+      }
+      else {
+        limit += n;
+      }
+    }
+  }
+
+  //
+  // Parses the sentence on the line [from, to) into time, latitude, and
+  // longitude; returns whether or not it holds a valid fix.
+  //
+
+  private boolean parseLine(int from, int to) {
+    while (to > from && (buffer[to - 1] == '\r' || buffer[to - 1] == ' ')) {
+      to--;
+    }
+    int start = from;
+    while (start < to && buffer[start] != '$') {
+      start++;
+    }
+    if (start == to) {
+      skipCount++;
+      return false;
+    }
+    sentenceCount++;
+    if (!checkChecksum(start, to)) {
+      checksumErrorCount++;
+      return false;
+    }
+
+    /* $ttGGA or $ttRMC:  any talker */
+
+    if (fieldsEnd - start < 7 || buffer[start + 6] != ',') {
+      skipCount++;
+      return false;
+    }
+    byte a = buffer[start + 3], b = buffer[start + 4], c = buffer[start + 5];
+    field = start + 7;
+    boolean fix;
+    if (a == 'G' && b == 'G' && c == 'A') {
+      fix = parseGGA();
+    }
+    else if (a == 'R' && b == 'M' && c == 'C') {
+      fix = parseRMC();
+    }
+    else {
+      fix = false;
+    }
+    if (!fix) {
+      skipCount++;
+    }
+    return fix;
+  }
+
+  //
+  // Checks the checksum, the exclusive or of the characters between the $
+  // and the *, and sets the end of the fields, at the * or the line end.
+  //
+
+  private boolean checkChecksum(int start, int to) {
+    int sum = 0;
+    int i = start + 1;
+    while (i < to && buffer[i] != '*') {
+      sum ^= buffer[i];
+      i++;
+    }
+    fieldsEnd = i;
+    if (i == to) {
+      return !checksumRequired;
+    }
+    if (to - i != 3) {
+      return false;
+    }
+    int high = getHexValue(buffer[i + 1]);
+    int low = getHexValue(buffer[i + 2]);
+    return high >= 0 && low >= 0 && (high << 4 | low) == (sum & 0xff);
+  }
+
+  private static int getHexValue(byte b) {
+    if (b >= '0' && b <= '9') {
+      return b - '0';
+    }
+    if (b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    }
+    if (b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    }
+    return -1;
+  }
+
+  //
+  // $ttGGA,hhmmss.ss,ddmm.mmmm,N,dddmm.mmmm,W,q,...:  q 0 is no fix.
+  //
+
+  private boolean parseGGA() {
+    time = parseTime();
+    if (!nextField() || !parseLatitude() || !nextField() ||
+        !parseLongitude() || !nextField()) {
+      return false;
+    }
+    byte quality = field < fieldsEnd ? buffer[field] : (byte) '0';
+    return quality >= '1' && quality <= '9';
+  }
+
+  //
+  // $ttRMC,hhmmss.ss,A,ddmm.mmmm,N,dddmm.mmmm,W,...:  V is void.
+  //
+
+  private boolean parseRMC() {
+    time = parseTime();
+    if (!nextField() || field >= fieldsEnd || buffer[field] != 'A' ||
+        !nextField()) {
+      return false;
+    }
+    return parseLatitude() && nextField() && parseLongitude();
+  }
+
+  //
+  // Advances past the next comma; false if there is none.
+  //
+
+  private boolean nextField() {
+    while (field < fieldsEnd && buffer[field] != ',') {
+      field++;
+    }
+    if (field == fieldsEnd) {
+      return false;
+    }
+    field++;
+    return true;
+  }
+
+  private boolean parseLatitude() {
+    latitude = parseAngle(90.0);
+    if (Double.isNaN(latitude) || !nextField() || field >= fieldsEnd) {
+      return false;
+    }
+    if (buffer[field] == 'S') {
+      latitude = -latitude;
+    }
+    else if (buffer[field] != 'N') {
+      return false;
+    }
+    return true;
+  }
+
+  private boolean parseLongitude() {
+    longitude = parseAngle(180.0);
+    if (Double.isNaN(longitude) || !nextField() || field >= fieldsEnd) {
+      return false;
+    }
+    if (buffer[field] == 'W') {
+      longitude = -longitude;
+    }
+    else if (buffer[field] != 'E') {
+      return false;
+    }
+    return true;
+  }
+
+  //
+  // Parses [d]ddmm.mmmm to decimal degrees, at most max; NaN if the field
+  // is empty or invalid.
+  //
+
+  private double parseAngle(double max) {
+    long whole = 0;
+    int digits = 0;
+    while (field < fieldsEnd && isDigit(buffer[field]) && digits < 6) {
+      whole = whole * 10 + (buffer[field++] - '0');
+      digits++;
+    }
+    if (digits < 3) {
+      return Double.NaN;
+    }
+    long fraction = 0;
+    int scale = 0;
+    if (field < fieldsEnd && buffer[field] == '.') {
+      field++;
+      while (field < fieldsEnd && isDigit(buffer[field])) {
+        if (scale < MAX_FRACTION_DIGITS) {
+          fraction = fraction * 10 + (buffer[field] - '0');
+          scale++;
+        }
+        field++;
+      }
+    }
+    if (field < fieldsEnd && buffer[field] != ',') {
+      return Double.NaN;
+    }
+    double minutes = whole % 100 + fraction / POWERS_OF_TEN[scale];
+    double degrees = whole / 100 + minutes / 60.0;
+    return minutes < 60.0 && degrees <= max ? degrees : Double.NaN;
+  }
+
+  //
+  // Parses hhmmss[.sss] to milliseconds; NO_TIME if the field is empty or
+  // invalid.
+  //
+
+  private int parseTime() {
+    int value = 0;
+    int digits = 0;
+    while (field < fieldsEnd && isDigit(buffer[field]) && digits < 6) {
+      value = value * 10 + (buffer[field++] - '0');
+      digits++;
+    }
+    if (digits != 6) {
+      return NO_TIME;
+    }
+    int millis = 0;
+    if (field < fieldsEnd && buffer[field] == '.') {
+      field++;
+      for (int scale = 100; field < fieldsEnd && isDigit(buffer[field]);
+          scale /= 10) {
+        millis += (buffer[field++] - '0') * scale;
+      }
+    }
+    int hours = value / 10000, minutes = value / 100 % 100;
+    int seconds = value % 100;
+    if (hours > 23 || minutes > 59 || seconds > 60) {
+      return NO_TIME;
+    }
+    return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+  * <p>Converts the remaining sentences to UTM records, one per fix:  the UTC
+  * time (<code>hhmmss.sss</code>, or empty), grid zone, easting, and
+  * northing, separated by commas.  The fixes are converted in blocks, using
+  * {@link CoordinateBatch}.</p>
+  * @param out The stream of records (flushed, not closed).
+  * @param datum The datum.
+  * @return Whether or not the operation was successful.
+  * @throws IOException If the streams cannot be read or written.
+  */
+
+  public boolean convertToUTM(OutputStream out, int datum)
+      throws IOException {
+    ConversionStageEvent event = new ConversionStageEvent();
+    event.begin();
+    long fixes = fixCount;
+    long errors = checksumErrorCount + failedFixCount;
+    long skips = skipCount;
+    boolean ok = false;
+    try {
+      ok = convertFixes(out, datum);
+    }
+    finally {
+      event.end("nmea.convertToUTM", CoordinateFileConverter.LATLON_TO_UTM,
+        datum, fixCount - fixes,
+        checksumErrorCount + failedFixCount - errors, skipCount - skips,
+        !ok);
+    }
+    return ok;
+  }
+
+  private boolean convertFixes(OutputStream out, int datum)
+      throws IOException {
+    int[] times = new int[BLOCK_SIZE];
+    double[] latitudes = new double[BLOCK_SIZE];
+    double[] longitudes = new double[BLOCK_SIZE];
+    int[] gridZones = new int[BLOCK_SIZE];
+    double[] eastings = new double[BLOCK_SIZE];
+    double[] northings = new double[BLOCK_SIZE];
+    byte[] record = new byte[64 * BLOCK_SIZE];
+    int n;
+    while ((n = read(times, latitudes, longitudes, 0, BLOCK_SIZE)) >= 0) {
+      if (!CoordinateBatch.latLonToUTM(latitudes, longitudes, gridZones,
+          eastings, northings, 0, n, datum)) {
+
+        /* A fix fails with a NaN result, or the block with no result */
+
+        int failed = 0;
+        for (int i = 0; i < n; i++) {
+          if (gridZones[i] < 0 || Double.isNaN(eastings[i])) {
+            failed++;
+          }
+        }
+        failedFixCount += failed > 0 ? failed : n;
+        return false;
+      }
+      int size = 0;
+      for (int i = 0; i < n; i++) {
+        size = appendTime(record, size, times[i]);
+        record[size++] = ',';
+        int zone = gridZones[i];
+        int zoneLong = CoordinateUtil.getZoneNumber(zone);
+        record[size++] = (byte) ('0' + zoneLong / 10);
+        record[size++] = (byte) ('0' + zoneLong % 10);
+        record[size++] = (byte) CoordinateUtil.getZoneBand(zone);
+        record[size++] = ',';
+        size = appendFixed(record, size, eastings[i], UTM_DECIMALS);
+        record[size++] = ',';
+        size = appendFixed(record, size, northings[i], UTM_DECIMALS);
+        record[size++] = '\n';
+      }
+      out.write(record, 0, size);
+    }
+    out.flush();
+    return true;
+  }
+
+  private static int appendTime(byte[] record, int size, int time) {
+    if (time == NO_TIME) {
+      return size;
+    }
+    int millis = time % 1000;
+    int seconds = time / 1000;
+    int[] parts = {seconds / 3600, seconds / 60 % 60, seconds % 60};
+    for (int i = 0; i < parts.length; i++) {
+      record[size++] = (byte) ('0' + parts[i] / 10);
+      record[size++] = (byte) ('0' + parts[i] % 10);
+    }
+    record[size++] = '.';
+    record[size++] = (byte) ('0' + millis / 100);
+    record[size++] = (byte) ('0' + millis / 10 % 10);
+    record[size++] = (byte) ('0' + millis % 10);
+    return size;
+  }
+
+  //
+  // Appends a non-negative value with a fixed number of decimals, rounding
+  // half up; eastings and northings are never negative.
+  //
+
+  private static int appendFixed(byte[] record, int size, double value,
+      int decimals) {
+    if (!(value >= 0) || Double.isInfinite(value)) {
+      record[size++] = 'N';
+      record[size++] = 'a';
+      record[size++] = 'N';
+      return size;
+    }
+    long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+    long whole = scaled / (long) POWERS_OF_TEN[decimals];
+    long fraction = scaled % (long) POWERS_OF_TEN[decimals];
+    int mark = size;
+    do {
+      record[size++] = (byte) ('0' + whole % 10);
+      whole /= 10;
+    } while (whole > 0);
+    for (int i = mark, j = size - 1; i < j; i++, j--) {
+      byte b = record[i];
+      record[i] = record[j];
+      record[j] = b;
+    }
+    record[size++] = '.';
+    for (int i = decimals - 1; i >= 0; i--) {
+      record[size + i] = (byte) ('0' + fraction % 10);
+      fraction /= 10;
+    }
+    return size + decimals;
+  }
+
+  /**
+  * <p>Runs the reader as a command-line utility, converting NMEA logs to
+  * UTM records:</p>
+  * <ul>
+  * <li><code>NMEAReader vehicle12.nmea vehicle12.csv</code>
+  * <li><code>NMEAReader -lenient -datum INTERNATIONAL_1924 ed50.nmea
+  * utm.csv</code> (sentences without checksums are accepted)
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    int datum = CoordinateUtil.WGS_84_DATUM;
+    boolean checksumRequired = true;
+    int first = 0;
+    while (first < args.length - 2) {
+      if (args[first].equals("-lenient")) {
+        checksumRequired = false;
+        first++;
+      }
+      else if (args[first].equals("-datum")) {
+        Ellipsoid ellipsoid = Ellipsoid.forName(args[first + 1]);
+        if (ellipsoid == null) {
+          System.out.println("Unknown datum: " + args[first + 1] + ".");
+          return;
+        }
+        datum = ellipsoid.getDatum();
+        first += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length != first + 2) {
+      System.out.println("Usage:  java " + NMEAReader.class.getName() +
+        " [-lenient] [-datum <name>] <input> <output>");
+      return;
+    }
+    try {
+      long start = System.currentTimeMillis();
+      InputStream in = new FileInputStream(args[first]);
+      OutputStream out = null;
+      NMEAReader reader = new NMEAReader(in);
+      reader.setChecksumRequired(checksumRequired);
+      try {
+        out = new BufferedOutputStream(new FileOutputStream(args[first + 1]),
+          BUFFER_SIZE);
+        if (!reader.convertToUTM(out, datum)) {
+          return;
+        }
+      }
+      finally {
+        in.close();
+        if (out != null) {
+          out.close();
+        }
+      }
+      System.out.println("Converted " + reader.getFixCount() +
+        " fix(es) from " + reader.getSentenceCount() + " sentence(s), " +
+        reader.getChecksumErrorCount() + " checksum error(s), " +
+        reader.getSkipCount() + " line(s) skipped, in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    }
+    catch (IOException e) {
+      System.out.println("Unable to convert " + args[first] + ": " +
+        e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,330 @@
+package geo;
+
+
+/**
+* <p><code>SpatialKeys</code> provides class-level convenience methods for
+* the keys by which points are indexed:  geohashes of lat/lon coordinates,
+* and Morton (Z-order) keys of UTM coordinates.  Both are computed with
+* integer bit interleaving rather than by bisection, and are held as
+* <code>long</code> values; text is created only when geohash text is
+* requested, and then in a caller's buffer.</p>
+* <p>A geohash of precision <i>p</i> (1 through 12 characters) is held in
+* its low 5<i>p</i> bits, longitude first, as in the text form.  A Morton
+* key interleaves the easting and northing, each divided by a resolution
+* (e.g., 1 m) and truncated, with the easting in the even bits; the key is
+* within the grid zone of the point, so is paired with its grid zone.  An
+* invalid coordinate yields a key of -1.</p>
+* <p>The batch conversion computes the keys in the same pass as the UTM
+* projection, a block at a time, while the coordinates of the block are
+* in the cache.</p>
+* @author Jerry Smith
+* @version $Id: SpatialKeys.java $
+*/
+
+public final class SpatialKeys {
+  /**
+  * <p>The maximum geohash precision:  12 characters, or 60 bits.</p>
+  */
+
+  public static final int MAX_GEOHASH_PRECISION = 12;
+  private static final char[] BASE32 =
+    "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+  private static final int GEOHASH_BITS = 30;
+  private static final double GEOHASH_CELLS = 1 << GEOHASH_BITS;
+  private static final double MORTON_CELLS = 4294967296.0;
+  private static final int BLOCK = 1024;
+
+
+  private SpatialKeys() {
+  }
+
+  /**
+  * <p>Encodes a lat/lon coordinate as a geohash.</p>
+  * @param latitude The latitude.
+  * @param longitude The longitude.
+  * @param precision The precision, 1 through 12 characters.
+  * @return The geohash, or -1 if the coordinate or precision is invalid.
+  */
+
+  public static long geohash(double latitude, double longitude,
+      int precision) {
+    if (precision < 1 || precision > MAX_GEOHASH_PRECISION ||
+        !(latitude >= -90.0 && latitude <= 90.0) ||
+        !(longitude >= -180.0 && longitude <= 180.0)) {
+      return -1;
+    }
+
+    /* Quantize each to 30 bits, the last cell taking its upper limit */
+
+    long y = (long) ((latitude + 90.0) / 180.0 * GEOHASH_CELLS);
+    long x = (long) ((longitude + 180.0) / 360.0 * GEOHASH_CELLS);
+    if (y == (long) GEOHASH_CELLS) {
+      y--;
+    }
+    if (x == (long) GEOHASH_CELLS) {
+      x--;
+    }
+    return (spread(x) << 1 | spread(y)) >>>
+      (2 * GEOHASH_BITS - 5 * precision);
+  }
+
+  /**
+  * <p>Converts a geohash to text.</p>
+  * @param geohash The geohash.
+  * @param precision The precision, 1 through 12 characters.
+  * @return The text, or <code>null</code> if the geohash is invalid.
+  */
+
+  public static String geohashToString(long geohash, int precision) {
+    char[] buffer = new char[MAX_GEOHASH_PRECISION];
+    if (formatGeohash(geohash, precision, buffer, 0) < 0) {
+      return null;
+    }
+    return new String(buffer, 0, precision);
+  }
+
+  //
+  // Writes the text of a geohash into a buffer; returns the number of
+  // characters written, or -1 if the geohash is invalid.
+  //
+
+  private static int formatGeohash(long geohash, int precision,
+      char[] buffer, int position) {
+    if (geohash < 0 || precision < 1 || precision > MAX_GEOHASH_PRECISION) {
+      return -1;
+    }
+    for (int i = precision - 1; i >= 0; i--) {
+      buffer[position + i] = BASE32[(int) geohash & 31];
+      geohash >>>= 5;
+    }
+    return precision;
+  }
+
+  /**
+  * <p>Encodes a UTM easting and northing as a Morton key.</p>
+  * @param easting The easting.
+  * @param northing The northing.
+  * @param resolution The resolution, in meters.
+  * @return The key, or -1 if the coordinate is invalid.
+  */
+
+  public static long morton(double easting, double northing,
+      double resolution) {
+    double x = easting / resolution;
+    double y = northing / resolution;
+    if (!(x >= 0.0 && x < MORTON_CELLS && y >= 0.0 && y < MORTON_CELLS)) {
+      return -1;
+    }
+    return spread((long) x) | spread((long) y) << 1;
+  }
+
+  /**
+  * <p>Gets the easting of the southwest corner of the cell of a Morton
+  * key.</p>
+  * @param key The key.
+  * @param resolution The resolution, in meters.
+  * @return The easting.
+  */
+
+  public static double getMortonEasting(long key, double resolution) {
+    return compact(key) * resolution;
+  }
+
+  /**
+  * <p>Gets the northing of the southwest corner of the cell of a Morton
+  * key.</p>
+  * @param key The key.
+  * @param resolution The resolution, in meters.
+  * @return The northing.
+  */
+
+  public static double getMortonNorthing(long key, double resolution) {
+    return compact(key >>> 1) * resolution;
+  }
+
+  //
+  // Spreads the low 32 bits of a value into the even bits of a long.
+  //
+
+  private static long spread(long x) {
+    x &= 0x00000000FFFFFFFFL;
+    x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+    x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+    x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | x << 2) & 0x3333333333333333L;
+    return (x | x << 1) & 0x5555555555555555L;
+  }
+
+  //
+  // Compacts the even bits of a long into its low 32 bits.
+  //
+
+  private static long compact(long x) {
+    x &= 0x5555555555555555L;
+    x = (x | x >>> 1) & 0x3333333333333333L;
+    x = (x | x >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | x >>> 4) & 0x00FF00FF00FF00FFL;
+    x = (x | x >>> 8) & 0x0000FFFF0000FFFFL;
+    return (x | x >>> 16) & 0x00000000FFFFFFFFL;
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to geohashes.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param geohashes The geohashes (modified).
+  * @param precision The precision, 1 through 12 characters.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean latLonToGeohash(double[] latitudes,
+      double[] longitudes, long[] geohashes, int precision, int offset,
+      int length) {
+    boolean ok = true;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      geohashes[i] = geohash(latitudes[i], longitudes[i], precision);
+      if (geohashes[i] < 0) {
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of UTM coordinates to Morton keys.</p>
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param keys The Morton keys (modified).
+  * @param resolution The resolution, in meters.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean utmToMorton(double[] eastings, double[] northings,
+      long[] keys, double resolution, int offset, int length) {
+    boolean ok = true;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      keys[i] = morton(eastings[i], northings[i], resolution);
+      if (keys[i] < 0) {
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Converts a range of lat/lon coordinates to UTM coordinates, along
+  * with their geohashes and the Morton keys of their UTM coordinates, in
+  * one pass.  Either key column may be <code>null</code>, if it is not
+  * wanted.</p>
+  * @param latitudes The latitudes.
+  * @param longitudes The longitudes.
+  * @param gridZones The packed grid zones (modified).
+  * @param eastings The eastings (modified).
+  * @param northings The northings (modified).
+  * @param geohashes The geohashes (modified), or <code>null</code>.
+  * @param precision The geohash precision, 1 through 12 characters.
+  * @param mortonKeys The Morton keys (modified), or <code>null</code>.
+  * @param resolution The Morton key resolution, in meters.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param datum The datum.
+  * @return Whether or not every coordinate was converted.
+  */
+
+  public static boolean latLonToUTM(double[] latitudes, double[] longitudes,
+      int[] gridZones, double[] eastings, double[] northings,
+      long[] geohashes, int precision, long[] mortonKeys, double resolution,
+      int offset, int length, int datum) {
+    boolean ok = true;
+    for (int start = offset, end = offset + length; start < end;
+        start += BLOCK) {
+      int count = Math.min(BLOCK, end - start);
+      if (!CoordinateBatch.latLonToUTM(latitudes, longitudes, gridZones,
+          eastings, northings, start, count, datum)) {
+        return false;
+      }
+      if (geohashes != null && !latLonToGeohash(latitudes, longitudes,
+          geohashes, precision, start, count)) {
+        ok = false;
+      }
+      if (mortonKeys != null && !utmToMorton(eastings, northings,
+          mortonKeys, resolution, start, count)) {
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Writes the text of a range of geohashes into a buffer, each
+  * <code>precision</code> characters long, the first at the start of the
+  * buffer.  An invalid geohash is written as spaces.</p>
+  * @param geohashes The geohashes.
+  * @param precision The precision, 1 through 12 characters.
+  * @param offset The index of the first geohash.
+  * @param length The number of geohashes.
+  * @param buffer The text (modified).
+  * @return Whether or not every geohash was written.
+  */
+
+  public static boolean formatGeohashes(long[] geohashes, int precision,
+      int offset, int length, char[] buffer) {
+    boolean ok = true;
+    for (int i = 0; i < length; i++) {
+      if (formatGeohash(geohashes[offset + i], precision, buffer,
+          i * precision) < 0) {
+        for (int j = 0; j < precision; j++) {
+          buffer[i * precision + j] = ' ';
+        }
+        ok = false;
+      }
+    }
+    return ok;
+  }
+
+  /**
+  * <p>Runs the conversions as a command-line utility:</p>
+  * <ul>
+  * <li><code>SpatialKeys 32.4 -106.3</code> (latitude, longitude)
+  * </ul>
+  * @param args The command-line arguments.
+  */
+
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.out.println("Usage:  java " + SpatialKeys.class.getName() +
+        " <latitude> <longitude>");
+      return;
+    }
+    double[] latitude = new double[1];
+    double[] longitude = new double[1];
+    try {
+      latitude[0] = Double.parseDouble(args[0]);
+      longitude[0] = Double.parseDouble(args[1]);
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Invalid number: " + e.getMessage());
+      return;
+    }
+    int[] gridZone = new int[1];
+    double[] easting = new double[1];
+    double[] northing = new double[1];
+    long[] geohash = new long[1];
+    long[] key = new long[1];
+    if (!latLonToUTM(latitude, longitude, gridZone, easting, northing,
+        geohash, MAX_GEOHASH_PRECISION, key, 1.0, 0, 1,
+        CoordinateUtil.WGS_84_DATUM)) {
+      System.out.println("Invalid coordinate.");
+      return;
+    }
+    System.out.println("geohash: " +
+      geohashToString(geohash[0], MAX_GEOHASH_PRECISION));
+    System.out.println("UTM: " + CoordinateUtil.unpackGridZone(gridZone[0]) +
+      " " + easting[0] + " " + northing[0]);
+    System.out.println("Morton key (1 m): " + key[0]);
+  }
+}
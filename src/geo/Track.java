@@ -0,0 +1,401 @@
+package geo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+* <p><code>Track</code> is a compressed sequence of points, e.g., a vehicle
+* track, either lat/lon or UTM.  The points are held in the fixed-point
+* units of {@link CompactCoordinates}, microdegrees or centimeters, and
+* each is stored as the differences from the previous point, written as
+* zig-zag variable-length integers:  consecutive points that are close
+* together, in the same grid zone, take a few bytes each rather than the 16
+* to 20 bytes of the compact columns.</p>
+* <p>A track is appended to, and read back sequentially by a
+* {@link Track.Cursor}, a block of points at a time.  The conversions
+* between lat/lon and UTM tracks work the same way, decoding a block,
+* converting it, and encoding the results, so that neither track is ever
+* fully decoded.</p>
+* <p>Tracks are written to and read from streams in a simple binary form:
+* the type, point count, and byte count, followed by the encoded
+* points.</p>
+* @author Jerry Smith
+* @version $Id: Track.java $
+*/
+
+public final class Track {
+  //
+  // Constants:
+  //
+  /**
+  * <p>A track of lat/lon points (latitude and longitude, in
+  * microdegrees).</p>
+  */
+
+  public static final int LAT_LON = 0;
+  /**
+  * <p>A track of UTM points (packed grid zone, and easting and northing,
+  * in centimeters).</p>
+  */
+
+  public static final int UTM = 1;
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int BLOCK = 256;
+  //
+  // Instance variables:
+  //
+  private int type;
+  private int columns;
+  private byte[] data = new byte[INITIAL_CAPACITY];
+  private int size = 0;
+  private int count = 0;
+  private int[] last;
+
+
+  /**
+  * <p>Constructs an empty track.</p>
+  * @param type The type, <code>LAT_LON</code> or <code>UTM</code>.
+  */
+
+  public Track(int type) {
+    if (type != LAT_LON && type != UTM) {
+      throw new IllegalArgumentException("Invalid track type: " + type + ".");
+    }
+    this.type = type;
+    columns = type == UTM ? 3 : 2;
+    last = new int[columns];
+  }
+
+  /**
+  * <p>Gets the type.</p>
+  * @return The type, <code>LAT_LON</code> or <code>UTM</code>.
+  */
+
+  public int getType() {
+    return type;
+  }
+
+  /**
+  * <p>Gets the number of points.</p>
+  * @return The number of points.
+  */
+
+  public int getPointCount() {
+    return count;
+  }
+
+  /**
+  * <p>Gets the size of the encoded points.</p>
+  * @return The size, in bytes.
+  */
+
+  public int getByteCount() {
+    return size;
+  }
+
+  /**
+  * <p>Appends a lat/lon point to a <code>LAT_LON</code> track.</p>
+  * @param latitude The latitude.
+  * @param longitude The longitude.
+  */
+
+  public void addLatLon(double latitude, double longitude) {
+    addLatLon(
+      CompactCoordinates.round(latitude * CompactCoordinates.MICRODEGREES),
+      CompactCoordinates.round(longitude * CompactCoordinates.MICRODEGREES));
+  }
+
+  /**
+  * <p>Appends a lat/lon point to a <code>LAT_LON</code> track.</p>
+  * @param latitude The latitude, in microdegrees.
+  * @param longitude The longitude, in microdegrees.
+  */
+
+  public void addLatLon(int latitude, int longitude) {
+    checkType(LAT_LON);
+    ensureCapacity(2 * 5);
+    write(latitude, 0);
+    write(longitude, 1);
+    count++;
+  }
+
+  /**
+  * <p>Appends a UTM point to a <code>UTM</code> track.</p>
+  * @param gridZone The packed grid zone.
+  * @param easting The easting.
+  * @param northing The northing.
+  */
+
+  public void addUTM(int gridZone, double easting, double northing) {
+    addUTM(gridZone,
+      CompactCoordinates.round(easting * CompactCoordinates.CENTIMETERS),
+      CompactCoordinates.round(northing * CompactCoordinates.CENTIMETERS));
+  }
+
+  /**
+  * <p>Appends a UTM point to a <code>UTM</code> track.</p>
+  * @param gridZone The packed grid zone.
+  * @param easting The easting, in centimeters.
+  * @param northing The northing, in centimeters.
+  */
+
+  public void addUTM(int gridZone, int easting, int northing) {
+    checkType(UTM);
+    ensureCapacity(3 * 5);
+    write(gridZone, 0);
+    write(easting, 1);
+    write(northing, 2);
+    count++;
+  }
+
+  /**
+  * <p>Appends a range of compact points, of this track's type.  For a
+  * <code>LAT_LON</code> track, the third column is ignored, and may be
+  * <code>null</code>.</p>
+  * @param first The latitudes, or the packed grid zones.
+  * @param second The longitudes, or the eastings.
+  * @param third The northings.
+  * @param offset The index of the first point.
+  * @param length The number of points.
+  */
+
+  public void add(int[] first, int[] second, int[] third, int offset,
+      int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (type == LAT_LON) {
+        addLatLon(first[i], second[i]);
+      }
+      else {
+        addUTM(first[i], second[i], third[i]);
+      }
+    }
+  }
+
+  /**
+  * <p>Gets a cursor positioned at the first point.</p>
+  * @return The cursor.
+  */
+
+  public Cursor getCursor() {
+    return new Cursor();
+  }
+
+  /**
+  * <p>Converts a <code>LAT_LON</code> track to a <code>UTM</code> track,
+  * a block at a time, as
+  * {@link CompactCoordinates#latLonToUTM(int[], int[], int[], int[], int[],
+  * int, int, int)} does.</p>
+  * @param datum The datum.
+  * @return The UTM track, or <code>null</code> if the operation is not
+  * successful.
+  */
+
+  public Track toUTM(int datum) {
+    checkType(LAT_LON);
+    Track utm = new Track(UTM);
+    Cursor cursor = getCursor();
+    int[] latitudes = new int[BLOCK];
+    int[] longitudes = new int[BLOCK];
+    int[] gridZones = new int[BLOCK];
+    int[] eastings = new int[BLOCK];
+    int[] northings = new int[BLOCK];
+    int n;
+    while ((n = cursor.next(latitudes, longitudes, null, 0, BLOCK)) > 0) {
+      if (!CompactCoordinates.latLonToUTM(latitudes, longitudes, gridZones,
+          eastings, northings, 0, n, datum)) {
+        return null;
+      }
+      utm.add(gridZones, eastings, northings, 0, n);
+    }
+    return utm;
+  }
+
+  /**
+  * <p>Converts a <code>UTM</code> track to a <code>LAT_LON</code> track,
+  * a block at a time, as
+  * {@link CompactCoordinates#utmToLatLon(int[], int[], int[], int[], int[],
+  * int, int, int)} does; a point with an invalid grid zone is converted to
+  * <code>INVALID</code> values.</p>
+  * @param datum The datum.
+  * @return The lat/lon track, or <code>null</code> if the datum is
+  * unknown.
+  */
+
+  public Track toLatLon(int datum) {
+    checkType(UTM);
+    if (Ellipsoid.forDatum(datum) == null) {
+      System.out.println("Unknown datum: " + datum + ".");
+      return null;
+    }
+    Track latLon = new Track(LAT_LON);
+    Cursor cursor = getCursor();
+    int[] gridZones = new int[BLOCK];
+    int[] eastings = new int[BLOCK];
+    int[] northings = new int[BLOCK];
+    int[] latitudes = new int[BLOCK];
+    int[] longitudes = new int[BLOCK];
+    int n;
+    while ((n = cursor.next(gridZones, eastings, northings, 0, BLOCK)) > 0) {
+      CompactCoordinates.utmToLatLon(gridZones, eastings, northings,
+        latitudes, longitudes, 0, n, datum);
+      latLon.add(latitudes, longitudes, null, 0, n);
+    }
+    return latLon;
+  }
+
+  /**
+  * <p>Writes the track to a stream.</p>
+  * @param out The stream (not closed).
+  * @throws IOException If the stream cannot be written.
+  */
+
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(type);
+    data.writeInt(count);
+    data.writeInt(size);
+    data.write(this.data, 0, size);
+    data.flush();
+  }
+
+  /**
+  * <p>Reads a track from a stream.</p>
+  * @param in The stream (not closed).
+  * @return The track.
+  * @throws IOException If the stream cannot be read, or does not hold a
+  * track.
+  */
+
+  public static Track read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int type = data.readInt();
+    int count = data.readInt();
+    int size = data.readInt();
+    if ((type != LAT_LON && type != UTM) || count < 0 || size < 0) {
+      throw new IOException("Not a track.");
+    }
+    Track track = new Track(type);
+    track.data = new byte[Math.max(size, INITIAL_CAPACITY)];
+    data.readFully(track.data, 0, size);
+    track.size = size;
+    track.count = count;
+
+    /* Recover the last point, so that the track can be appended to */
+
+    Cursor cursor = track.getCursor();
+    try {
+      while (cursor.skip()) {
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      throw new IOException("Corrupt track.");
+    }
+    if (cursor.position != size) {
+      throw new IOException("Corrupt track.");
+    }
+    track.last = cursor.last;
+    return track;
+  }
+
+  private void checkType(int expected) {
+    if (type != expected) {
+      throw new IllegalStateException("Not a " +
+        (expected == UTM ? "UTM" : "lat/lon") + " track.");
+    }
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > data.length) {
+      data = Arrays.copyOf(data, Math.max(2 * data.length, size + extra));
+    }
+  }
+
+  //
+  // Writes the zig-zag varint difference of a value from the previous
+  // value of its column; the int arithmetic wraps, so every difference,
+  // even from or to INVALID, fits in 5 bytes.
+  //
+
+  private void write(int value, int column) {
+    int delta = value - last[column];
+    last[column] = value;
+    int zigZag = (delta << 1) ^ (delta >> 31);
+    while ((zigZag & ~0x7f) != 0) {
+      data[size++] = (byte) ((zigZag & 0x7f) | 0x80);
+      zigZag >>>= 7;
+    }
+    data[size++] = (byte) zigZag;
+  }
+
+  /**
+  * <p>A cursor reads the points of a track in order, a block at a time.
+  * A cursor sees the points that were in the track when it was
+  * created.</p>
+  */
+
+  public final class Cursor {
+    private int position = 0;
+    private int index = 0;
+    private int end = count;
+    private int[] last = new int[columns];
+
+    private Cursor() {
+    }
+
+    /**
+    * <p>Reads the next points into columns.  For a <code>LAT_LON</code>
+    * track, the third column is not used, and may be
+    * <code>null</code>.</p>
+    * @param first The latitudes, or the packed grid zones (modified).
+    * @param second The longitudes, or the eastings (modified).
+    * @param third The northings (modified).
+    * @param offset The index at which to store the first point.
+    * @param length The maximum number of points.
+    * @return The number of points read, 0 at the end of the track.
+    */
+
+    public int next(int[] first, int[] second, int[] third, int offset,
+        int length) {
+      int n = Math.min(length, end - index);
+      for (int i = offset; i < offset + n; i++) {
+        first[i] = read(0);
+        second[i] = read(1);
+        if (type == UTM) {
+          third[i] = read(2);
+        }
+      }
+      index += n;
+      return n;
+    }
+
+    private boolean skip() {
+      if (index == end) {
+        return false;
+      }
+      for (int column = 0; column < columns; column++) {
+        read(column);
+      }
+      index++;
+      return true;
+    }
+
+    private int read(int column) {
+      int zigZag = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        zigZag |= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      int value = last[column] + ((zigZag >>> 1) ^ -(zigZag & 1));
+      last[column] = value;
+      return value;
+    }
+  }
+}
@@ -3,26 +3,46 @@ package geo;
 /**
 * <p><code>UnsignedChar</code> provides class-level convenience methods for
 * ASCII-like operations typically performed in the C language with
-* <code>unsigned char</code>.</p>
+* <code>unsigned char</code>.  The valid characters are the ASCII letters,
+* which are classified by table lookup.</p>
 * @author Jerry Smith
 * @version $Id: UnsignedChar.java 231 2006-01-15 01:57:48Z jsmith $
 */
 
 public final class UnsignedChar {
-  private static String lowerChars = "abcdefghijklmnopqrstuvwxyz";
-  private static String upperChars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  //
+  // Character classes, indexed by ASCII value; anything else is invalid.
+  //
+  private static final byte INVALID = 0;
+  private static final byte LOWER = 1;
+  private static final byte UPPER = 2;
+  private static final byte[] classes = new byte[128];
+
+  static {
+    for (char ch = 'a'; ch <= 'z'; ch++) {
+      classes[ch] = LOWER;
+    }
+    for (char ch = 'A'; ch <= 'Z'; ch++) {
+      classes[ch] = UPPER;
+    }
+  }
 
   private UnsignedChar() {
   }
 
+  private static byte getClass(char ch) {
+    return ch < classes.length ? classes[ch] : INVALID;
+  }
+
   /**
-  * <p>Tests the validity of a character for ASCII-like operations.</p>
+  * <p>Tests the validity of a character for ASCII-like operations, i.e.,
+  * whether it is an ASCII letter.</p>
   * @param ch The character.
   * @return Whether or not it is valid.
   */
 
   public static boolean isValid(char ch) {
-    return Character.isLowerCase(ch) || Character.isUpperCase(ch);
+    return getClass(ch) != INVALID;
   }
 
   /**
@@ -32,7 +52,7 @@ public final class UnsignedChar {
   */
 
   public static boolean isLower(char ch) {
-    return Character.isLowerCase(ch);
+    return getClass(ch) == LOWER;
   }
 
   /**
@@ -42,7 +62,7 @@ public final class UnsignedChar {
   */
 
   public static boolean isUpper(char ch) {
-    return Character.isUpperCase(ch);
+    return getClass(ch) == UPPER;
   }
 
   /**
@@ -53,16 +73,17 @@ public final class UnsignedChar {
   */
 
   public static char getCharPlusOffset(char startChar, int offset) {
-    if (!isValid(startChar)) {
+    byte charClass = getClass(startChar);
+    if (charClass == INVALID) {
       throw new RuntimeException("Character must be [a..b] or [A..B].");
     }
-    String base = Character.isLowerCase(startChar) ? lowerChars : upperChars;
-    int pos = base.indexOf(startChar) + offset;
+    char base = charClass == LOWER ? 'a' : 'A';
+    int pos = startChar - base + offset;
     if (pos < 0 || pos > 25) {
       throw new IndexOutOfBoundsException(
         "Character plus offset must be [a..b] or [A..B].");
     }
-    return base.charAt(pos);
+    return (char) (base + pos);
   }
 
   /**
@@ -86,7 +107,7 @@ public final class UnsignedChar {
   }
 
   /**
-  * <p>Gets the character at a particular offset from a start character.</p>
+  * <p>Gets the ASCII value of a character.</p>
   * @param ch The character.
   * @return The ASCII value.
   */
@@ -95,8 +116,7 @@ public final class UnsignedChar {
     if (!isValid(ch)) {
       throw new RuntimeException("Character must be [a..b] or [A..B].");
     }
-    int offset = lowerChars.indexOf(Character.toLowerCase(ch));
-    return offset + (Character.isLowerCase(ch) ? 97 : 65);
+    return ch;
   }
 
   public static void main(String[] args) {
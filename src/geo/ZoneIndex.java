@@ -0,0 +1,393 @@
+package geo;
+
+import java.util.Arrays;
+
+
+/**
+* <p><code>ZoneIndex</code> is an in-memory spatial index of UTM (or UPS)
+* coordinates, e.g., the output of
+* {@link CoordinateBatch#latLonToUTM(double[], double[], int[], double[],
+* double[], int, int, int)}, for nearest-neighbor and rectangle queries in
+* meters.  The points of each grid zone are held in a flat grid of square
+* cells over their eastings and northings:  the points are copied into
+* primitive columns in cell order, with the start of each cell, so that a
+* query reads only the cells that it covers.</p>
+* <p>A query is made within one grid zone, in the meters of that zone;
+* points of other zones, even near a zone boundary, are not found.  The
+* results are the indices of the points in the columns from which the
+* index was built.  Points with a grid zone of -1 or without an easting or
+* northing are not indexed.  The index is immutable once built, so may be
+* shared among threads.</p>
+* @author Jerry Smith
+* @version $Id: ZoneIndex.java $
+*/
+
+public class ZoneIndex {
+  //
+  // Constants:  a zone's cells are enlarged, if need be, so that there are
+  // at most about two cells per point.
+  //
+  private static final int CELLS_PER_POINT = 2;
+  private static final int MIN_CELLS = 64;
+  //
+  // Instance variables:
+  //
+  private int[] gridZones;
+  private Zone[] zones;
+  private int pointCount = 0;
+
+
+  /**
+  * <p>Constructs an index of a range of UTM coordinates.</p>
+  * @param gridZones The packed grid zones.
+  * @param eastings The eastings.
+  * @param northings The northings.
+  * @param offset The index of the first coordinate.
+  * @param length The number of coordinates.
+  * @param cellSize The size of the grid cells, in meters, e.g., about the
+  * radius of the usual query.
+  */
+
+  public ZoneIndex(int[] gridZones, double[] eastings, double[] northings,
+      int offset, int length, double cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Invalid cell size: " + cellSize);
+    }
+
+    /* Find the distinct grid zones */
+
+    int[] sorted = new int[length];
+    int count = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (isIndexed(gridZones[i], eastings[i], northings[i])) {
+        sorted[count++] = gridZones[i];
+      }
+    }
+    Arrays.sort(sorted, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    this.gridZones = Arrays.copyOf(sorted, distinct);
+    zones = new Zone[distinct];
+    pointCount = count;
+
+    /* Count the points of each zone, and find their extent */
+
+    int[] counts = new int[distinct];
+    double[] bounds = new double[4 * distinct];
+    for (int z = 0; z < distinct; z++) {
+      bounds[4 * z] = bounds[4 * z + 1] = Double.POSITIVE_INFINITY;
+      bounds[4 * z + 2] = bounds[4 * z + 3] = Double.NEGATIVE_INFINITY;
+    }
+    int[] slots = new int[length];
+    int lastZone = -1, z = -1;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (!isIndexed(gridZones[i], eastings[i], northings[i])) {
+        slots[i - offset] = -1;
+        continue;
+      }
+      if (gridZones[i] != lastZone) {
+        lastZone = gridZones[i];
+        z = Arrays.binarySearch(this.gridZones, lastZone);
+      }
+      slots[i - offset] = z;
+      counts[z]++;
+      bounds[4 * z] = Math.min(bounds[4 * z], eastings[i]);
+      bounds[4 * z + 1] = Math.min(bounds[4 * z + 1], northings[i]);
+      bounds[4 * z + 2] = Math.max(bounds[4 * z + 2], eastings[i]);
+      bounds[4 * z + 3] = Math.max(bounds[4 * z + 3], northings[i]);
+    }
+    for (z = 0; z < distinct; z++) {
+      zones[z] = new Zone(counts[z], bounds[4 * z], bounds[4 * z + 1],
+        bounds[4 * z + 2], bounds[4 * z + 3], cellSize);
+    }
+
+    /* Count the points of each cell, then place them (a counting sort) */
+
+    int[] cells = new int[length];
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (slots[i - offset] < 0) {
+        continue;
+      }
+      Zone zone = zones[slots[i - offset]];
+      int cell = zone.getCell(eastings[i], northings[i]);
+      cells[i - offset] = cell;
+      zone.cellStarts[cell + 1]++;
+    }
+    for (z = 0; z < distinct; z++) {
+      int[] starts = zones[z].cellStarts;
+      for (int c = 1; c < starts.length; c++) {
+        starts[c] += starts[c - 1];
+      }
+      zones[z].next = starts.clone();
+    }
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (slots[i - offset] < 0) {
+        continue;
+      }
+      Zone zone = zones[slots[i - offset]];
+      int j = zone.next[cells[i - offset]]++;
+      zone.eastings[j] = eastings[i];
+      zone.northings[j] = northings[i];
+      zone.indices[j] = i;
+    }
+    for (z = 0; z < distinct; z++) {
+      zones[z].next = null;
+    }
+  }
+
+  private static boolean isIndexed(int gridZone, double easting,
+      double northing) {
+    return gridZone >= 0 && !Double.isNaN(easting) &&
+      !Double.isNaN(northing) && !Double.isInfinite(easting) &&
+      !Double.isInfinite(northing);
+  }
+
+  /**
+  * <p>Gets the number of points indexed.</p>
+  * @return The number of points.
+  */
+
+  public int getPointCount() {
+    return pointCount;
+  }
+
+  /**
+  * <p>Gets the grid zones of the points indexed.</p>
+  * @return The packed grid zones, in increasing order.
+  */
+
+  public int[] getGridZones() {
+    return gridZones.clone();
+  }
+
+  /**
+  * <p>Finds the points within a rectangle.  If there are more points than
+  * results, only the first are stored, in no particular order.</p>
+  * @param gridZone The packed grid zone.
+  * @param minEasting The minimum easting.
+  * @param minNorthing The minimum northing.
+  * @param maxEasting The maximum easting.
+  * @param maxNorthing The maximum northing.
+  * @param results The indices of the points (modified).
+  * @return The number of points within the rectangle.
+  */
+
+  public int findInRectangle(int gridZone, double minEasting,
+      double minNorthing, double maxEasting, double maxNorthing,
+      int[] results) {
+    int z = Arrays.binarySearch(gridZones, gridZone);
+    if (z < 0 || !(minEasting <= maxEasting && minNorthing <= maxNorthing)) {
+      return 0;
+    }
+    Zone zone = zones[z];
+    int col0 = Math.max(0, zone.getColumn(minEasting));
+    int col1 = Math.min(zone.columns - 1, zone.getColumn(maxEasting));
+    int row0 = Math.max(0, zone.getRow(minNorthing));
+    int row1 = Math.min(zone.rows - 1, zone.getRow(maxNorthing));
+    int count = 0;
+    for (int row = row0; row <= row1; row++) {
+      int start = zone.cellStarts[row * zone.columns + col0];
+      int end = zone.cellStarts[row * zone.columns + col1 + 1];
+      for (int j = start; j < end; j++) {
+        double e = zone.eastings[j], n = zone.northings[j];
+        if (e >= minEasting && e <= maxEasting && n >= minNorthing &&
+            n <= maxNorthing) {
+          if (count < results.length) {
+            results[count] = zone.indices[j];
+          }
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+  * <p>Finds the nearest points to a coordinate, nearest first.</p>
+  * @param gridZone The packed grid zone.
+  * @param easting The easting.
+  * @param northing The northing.
+  * @param k The maximum number of points.
+  * @param results The indices of the points (modified).
+  * @param distances The distances of the points, in meters (modified), or
+  * <code>null</code>.
+  * @return The number of points found:  <code>k</code>, unless the zone
+  * has fewer points.
+  */
+
+  public int findNearest(int gridZone, double easting, double northing,
+      int k, int[] results, double[] distances) {
+    int z = Arrays.binarySearch(gridZones, gridZone);
+    if (z < 0 || k <= 0 || Double.isNaN(easting) || Double.isNaN(northing)) {
+      return 0;
+    }
+    Zone zone = zones[z];
+
+    /* Search rings of cells about the coordinate's cell (which may be */
+    /* outside the grid), keeping the k nearest in a max-heap */
+
+    long col = (long) Math.floor((easting - zone.minEasting) / zone.cellSize);
+    long row = (long) Math.floor((northing - zone.minNorthing) /
+      zone.cellSize);
+    long firstRing = Math.max(0, Math.max(Math.max(-col, col - zone.columns +
+      1), Math.max(-row, row - zone.rows + 1)));
+    long lastRing = Math.max(Math.max(col, zone.columns - 1 - col),
+      Math.max(row, zone.rows - 1 - row));
+    double[] heap = new double[k];
+    int[] heapIndices = new int[k];
+    int size = 0;
+    for (long ring = firstRing; ring <= lastRing; ring++) {
+      double bound = (ring - 1) * zone.cellSize;
+      if (size == k && ring > 0 && bound * bound > heap[0]) {
+        break;
+      }
+      long r0 = Math.max(0, row - ring);
+      long r1 = Math.min(zone.rows - 1, row + ring);
+      long c0 = Math.max(0, col - ring);
+      long c1 = Math.min(zone.columns - 1, col + ring);
+      for (long r = r0; r <= r1; r++) {
+
+        /* The top and bottom rows of the ring are whole; the others have */
+        /* only their first and last cells */
+
+        boolean whole = r == row - ring || r == row + ring;
+        for (long c = c0; c <= c1; c++) {
+          if (!whole && c != col - ring && c != col + ring) {
+            if (c < col + ring) {
+              c = col + ring - 1;
+            }
+            continue;
+          }
+          int cell = (int) (r * zone.columns + c);
+          for (int j = zone.cellStarts[cell], end = zone.cellStarts[cell + 1];
+              j < end; j++) {
+            double de = zone.eastings[j] - easting;
+            double dn = zone.northings[j] - northing;
+            double d2 = de * de + dn * dn;
+            if (size < k) {
+              siftUp(heap, heapIndices, size++, d2, zone.indices[j]);
+            }
+            else if (d2 < heap[0]) {
+              siftDown(heap, heapIndices, size, d2, zone.indices[j]);
+            }
+          }
+        }
+      }
+    }
+
+    /* Empty the heap, farthest first */
+
+    int found = size;
+    while (size > 0) {
+      double d2 = heap[0];
+      int index = heapIndices[0];
+      size--;
+      if (size > 0) {
+        siftDown(heap, heapIndices, size, heap[size], heapIndices[size]);
+      }
+      results[size] = index;
+      if (distances != null) {
+        distances[size] = Math.sqrt(d2);
+      }
+    }
+    return found;
+  }
+
+  //
+  // Adds an entry at the end of a max-heap.
+  //
+
+  private static void siftUp(double[] heap, int[] indices, int i, double d2,
+      int index) {
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (heap[parent] >= d2) {
+        break;
+      }
+      heap[i] = heap[parent];
+      indices[i] = indices[parent];
+      i = parent;
+    }
+    heap[i] = d2;
+    indices[i] = index;
+  }
+
+  //
+  // Replaces the root of a max-heap of the given size.
+  //
+
+  private static void siftDown(double[] heap, int[] indices, int size,
+      double d2, int index) {
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1] > heap[child]) {
+        child++;
+      }
+      if (heap[child] <= d2) {
+        break;
+      }
+      heap[i] = heap[child];
+      indices[i] = indices[child];
+      i = child;
+    }
+    heap[i] = d2;
+    indices[i] = index;
+  }
+
+  //
+  // The grid of one zone:  the points in cell order (row by row), with the
+  // start of each cell.
+  //
+
+  private static final class Zone {
+    private double minEasting, minNorthing, cellSize;
+    private int columns, rows;
+    private int[] cellStarts;
+    private int[] next;
+    private double[] eastings;
+    private double[] northings;
+    private int[] indices;
+
+    Zone(int count, double minEasting, double minNorthing,
+        double maxEasting, double maxNorthing, double cellSize) {
+      this.minEasting = minEasting;
+      this.minNorthing = minNorthing;
+      double width = maxEasting - minEasting;
+      double height = maxNorthing - minNorthing;
+      long maxCells = (long) CELLS_PER_POINT * count + MIN_CELLS;
+      while (((long) (width / cellSize) + 1) *
+          ((long) (height / cellSize) + 1) > maxCells) {
+        cellSize *= 2;
+      }
+      this.cellSize = cellSize;
+      columns = (int) (width / cellSize) + 1;
+      rows = (int) (height / cellSize) + 1;
+      cellStarts = new int[columns * rows + 1];
+      eastings = new double[count];
+      northings = new double[count];
+      indices = new int[count];
+    }
+
+    int getColumn(double easting) {
+      return (int) Math.max(-1, Math.min(columns,
+        Math.floor((easting - minEasting) / cellSize)));
+    }
+
+    int getRow(double northing) {
+      return (int) Math.max(-1, Math.min(rows,
+        Math.floor((northing - minNorthing) / cellSize)));
+    }
+
+    int getCell(double easting, double northing) {
+      return getRow(northing) * columns + getColumn(easting);
+    }
+  }
+}